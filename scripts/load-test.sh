@@ -0,0 +1,60 @@
+#!/usr/bin/env bash
+#
+# Load test of ConversionServer: POST the same book many times, several at a time,
+# then print the status codes and the latency.
+#
+# Usage: scripts/load-test.sh <bookinfo.yaml> [requests] [concurrency] [server url]
+#
+# Each request gets its own bookTitle and an output folder under a temp folder,
+# so the books do not overwrite each other. 503 responses are counted, not retried.
+#
+# Start the server first, such as:
+#   $ mvn -q compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+#   $ java -cp target/classes:$(cat target/cp.txt) com.quanqinle.epub.server.ConversionServer 8574 4 16
+
+set -euo pipefail
+
+if [ $# -lt 1 ]; then
+  echo "Usage: $0 <bookinfo.yaml> [requests] [concurrency] [server url]" >&2
+  exit 2
+fi
+
+YAML=$1
+REQUESTS=${2:-50}
+CONCURRENCY=${3:-8}
+SERVER=${4:-http://127.0.0.1:8574}
+
+BASE=$(cd "$(dirname "$YAML")" && pwd)
+WORK=$(mktemp -d)
+trap 'rm -rf "$WORK"' EXIT
+
+curl -sf "$SERVER/health" > /dev/null || { echo "Server is not running at $SERVER" >&2; exit 1; }
+
+# one bookinfo.yaml per request
+for i in $(seq 1 "$REQUESTS"); do
+  grep -v -E '^(bookTitle|outputDir):' "$YAML" > "$WORK/book-$i.yaml"
+  printf 'bookTitle: "load-%d"\noutputDir: "%s/out"\n' "$i" "$WORK" >> "$WORK/book-$i.yaml"
+done
+
+export SERVER BASE WORK
+START=$(date +%s%N)
+seq 1 "$REQUESTS" | xargs -P "$CONCURRENCY" -I{} sh -c '
+  curl -s -o /dev/null -w "%{http_code} %{time_total}\n" \
+    -H "Content-Type: application/yaml" --data-binary "@$WORK/book-{}.yaml" \
+    "$SERVER/convert?base=$(printf %s "$BASE" | sed "s/ /%20/g")"
+' > "$WORK/results.txt"
+END=$(date +%s%N)
+
+echo "requests: $REQUESTS, concurrency: $CONCURRENCY, total: $(( (END - START) / 1000000 )) ms"
+echo "status codes:"
+awk '{ print "  " $1 }' "$WORK/results.txt" | sort | uniq -c
+echo "latency of 200 (ms):"
+awk '$1 == 200 { print $2 * 1000 }' "$WORK/results.txt" | sort -n | awk '
+  { v[NR] = $1; sum += $1 }
+  END {
+    if (NR == 0) { print "  none"; exit }
+    printf "  avg %.0f, p50 %.0f, p95 %.0f, max %.0f\n",
+      sum / NR, v[int(NR * 0.5 + 0.5)], v[int(NR * 0.95 + 0.5)], v[NR]
+  }'
+curl -s "$SERVER/health"
+echo
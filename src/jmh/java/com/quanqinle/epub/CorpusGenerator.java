@@ -0,0 +1,212 @@
+package com.quanqinle.epub;
+
+import com.quanqinle.epub.entity.BookInfo;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Generate a synthetic plain text book for benchmarks.
+ *
+ * <p>The book has some front matter lines, then the chapters, which are spread evenly into the
+ * volumes if there are any. The body is CJK or Latin text, and the same seed always generates the
+ * same book.
+ *
+ * <p>Write a book to a file by:
+ *
+ * <pre>
+ * java -cp &lt;classpath&gt; com.quanqinle.epub.CorpusGenerator book.txt [chapters] [linesPerChapter] [volumes] [cjk]
+ * </pre>
+ *
+ * @author quanqinle
+ */
+public class CorpusGenerator {
+  private static final String CJK_CHARS =
+      "的一是在不了有和人这中大为上个国我以要他时来用们生到作地于出就分对成会可也你"
+          + "说年着过去之家多方后自学么心天而能好都然没日于起还发成事只作当想看文无开手十"
+          + "用主行方又如前所本见经头面公同三已老从动两长知民样现分将外但身些与高意进把法此实回";
+  private static final String[] LATIN_WORDS = {
+    "the", "of", "and", "a", "to", "in", "is", "you", "that", "it", "he", "was", "for", "on",
+    "are", "as", "with", "his", "they", "at", "be", "this", "have", "from", "or", "one", "had",
+    "by", "word", "but", "not", "what", "all", "were", "we", "when", "your", "can", "said",
+    "there", "use", "each", "which", "she", "do", "how", "their", "if", "will", "up", "other",
+    "about", "out", "many", "then", "them", "these", "so", "some", "her", "would", "make", "like"
+  };
+  private static final int FRONT_MATTER_LINES = 5;
+
+  /** the number of volumes, 0 for a single book */
+  private final int volumes;
+  /** the total number of chapters */
+  private final int chapters;
+  private final int linesPerChapter;
+  /** CJK or Latin text */
+  private final boolean cjk;
+  private final long seed;
+
+  /**
+   * Constructor
+   *
+   * @param volumes the number of volumes, 0 for a single book
+   * @param chapters the total number of chapters
+   * @param linesPerChapter body lines of each chapter
+   * @param cjk CJK text if true, otherwise Latin text
+   */
+  public CorpusGenerator(int volumes, int chapters, int linesPerChapter, boolean cjk) {
+    this(volumes, chapters, linesPerChapter, cjk, 42);
+  }
+
+  public CorpusGenerator(int volumes, int chapters, int linesPerChapter, boolean cjk, long seed) {
+    this.volumes = volumes;
+    this.chapters = chapters;
+    this.linesPerChapter = linesPerChapter;
+    this.cjk = cjk;
+    this.seed = seed;
+  }
+
+  /**
+   * @return all lines of the book
+   */
+  public List<String> lines() {
+    Random random = new Random(seed);
+    List<String> lines = new ArrayList<>(FRONT_MATTER_LINES + volumes + chapters * (linesPerChapter + 1));
+
+    lines.addAll(bodyLines(random, FRONT_MATTER_LINES));
+    int chaptersPerVolume = volumes > 0 ? Math.max(1, (chapters + volumes - 1) / volumes) : chapters;
+    for (int chapter = 0; chapter < chapters; chapter++) {
+      if (volumes > 0 && chapter % chaptersPerVolume == 0) {
+        lines.add(volumeTitle(chapter / chaptersPerVolume + 1));
+      }
+      lines.add(chapterTitle(chapter + 1));
+      lines.addAll(bodyLines(random, linesPerChapter));
+    }
+    return lines;
+  }
+
+  /**
+   * Generate body lines, no one matches a title.
+   *
+   * @param count the number of lines
+   * @return lines
+   */
+  public List<String> bodyLines(int count) {
+    return bodyLines(new Random(seed), count);
+  }
+
+  private List<String> bodyLines(Random random, int count) {
+    List<String> lines = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      lines.add(cjk ? cjkLine(random) : latinLine(random));
+    }
+    return lines;
+  }
+
+  /**
+   * Write the book to a file in UTF-8.
+   *
+   * @param file the .txt file
+   * @return the file
+   * @throws IOException -
+   */
+  public Path write(Path file) throws IOException {
+    return Files.write(file, lines(), StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Create a book info which can parse the generated book.
+   *
+   * @param srcTxtPath the generated .txt file
+   * @param outputDir the directory for output
+   * @return book info
+   */
+  public BookInfo newBookInfo(Path srcTxtPath, Path outputDir) {
+    BookInfo book = new BookInfo();
+    book.setSrcTxtPath(srcTxtPath);
+    book.setOutputDir(outputDir);
+    book.setCharset(StandardCharsets.UTF_8.name());
+    book.setHasManyBooks(volumes > 0);
+    book.setBookTitle("corpus");
+    book.setUuid("00000000-0000-0000-0000-000000000000");
+    book.setAuthor("MakeEpub");
+    book.setLanguage(cjk ? "zh" : "en");
+    book.setCreateDate("2023-01-01");
+    if (!cjk) {
+      book.setBookTitleRegexList(List.of("^Volume \\d+ .+"));
+      book.setChapterTitleRegexList(List.of("^Chapter \\d+ .+"));
+    }
+    return book;
+  }
+
+  /**
+   * Delete a temp folder of a benchmark.
+   *
+   * @param folder folder
+   * @throws IOException -
+   */
+  static void deleteFolder(Path folder) throws IOException {
+    if (!Files.exists(folder)) {
+      return;
+    }
+    try (Stream<Path> paths = Files.walk(folder)) {
+      paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+    }
+  }
+
+  private String volumeTitle(int number) {
+    return cjk ? "第" + number + "卷 卷名" + number : "Volume " + number + " The Volume";
+  }
+
+  private String chapterTitle(int number) {
+    return cjk ? "第" + number + "章 章节名" + number : "Chapter " + number + " The Chapter";
+  }
+
+  private static String cjkLine(Random random) {
+    int length = 40 + random.nextInt(160);
+    StringBuilder sb = new StringBuilder(length + 4).append("　　");
+    for (int i = 1; i <= length; i++) {
+      sb.append(i % 20 == 0 ? '，' : CJK_CHARS.charAt(random.nextInt(CJK_CHARS.length())));
+    }
+    return sb.append('。').toString();
+  }
+
+  private static String latinLine(Random random) {
+    int words = 15 + random.nextInt(60);
+    StringBuilder sb = new StringBuilder(words * 6).append("  ");
+    for (int i = 0; i < words; i++) {
+      String word = LATIN_WORDS[random.nextInt(LATIN_WORDS.length)];
+      if (i == 0) {
+        sb.append(Character.toUpperCase(word.charAt(0))).append(word, 1, word.length());
+      } else {
+        sb.append(' ').append(word);
+      }
+    }
+    return sb.append('.').toString();
+  }
+
+  /**
+   * Write a book to a file.
+   *
+   * @param args file [chapters] [linesPerChapter] [volumes] [cjk]
+   * @throws IOException -
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length < 1) {
+      System.err.println("Usage: CorpusGenerator <file> [chapters] [linesPerChapter] [volumes] [cjk]");
+      System.exit(1);
+    }
+    int chapters = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+    int linesPerChapter = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+    int volumes = args.length > 3 ? Integer.parseInt(args[3]) : 0;
+    boolean cjk = args.length <= 4 || Boolean.parseBoolean(args[4]);
+
+    Path file = new CorpusGenerator(volumes, chapters, linesPerChapter, cjk).write(Path.of(args[0]));
+    System.out.println("Generated " + file + ", " + Files.size(file) + " bytes");
+  }
+}
@@ -0,0 +1,26 @@
+package com.quanqinle.epub;
+
+import com.quanqinle.epub.util.EpubSink;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A sink which only counts the bytes, so that a benchmark does not measure the disk.
+ *
+ * @author quanqinle
+ */
+public class DiscardingSink implements EpubSink {
+  private final AtomicLong bytes = new AtomicLong();
+
+  @Override
+  public void write(String entryName, byte[] content) {
+    bytes.addAndGet(content.length);
+  }
+
+  public long getBytes() {
+    return bytes.get();
+  }
+
+  @Override
+  public void close() {}
+}
@@ -0,0 +1,87 @@
+package com.quanqinle.epub;
+
+import com.quanqinle.epub.entity.BookInfo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parse a book into chapters, in single-book and many-books mode.
+ *
+ * <ul>
+ *   <li>{@link #parse()}: parse lines in memory only;
+ *   <li>{@link #convert()}: read the .txt file, parse and render the .xhtml files, without disk
+ *       writing.
+ * </ul>
+ *
+ * @author quanqinle
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParseBenchmark {
+
+  /** 0 for single-book mode, otherwise many-books mode */
+  @Param({"0", "10"})
+  int volumes;
+
+  @Param({"1000"})
+  int chapters;
+
+  @Param({"50"})
+  int linesPerChapter;
+
+  @Param({"true", "false"})
+  boolean cjk;
+
+  private CorpusGenerator corpus;
+  private List<String> lines;
+  private Path tempDir;
+  private Path srcTxtPath;
+
+  @Setup
+  public void setup() throws IOException {
+    corpus = new CorpusGenerator(volumes, chapters, linesPerChapter, cjk);
+    lines = corpus.lines();
+    tempDir = Files.createTempDirectory("parse-benchmark");
+    srcTxtPath = corpus.write(tempDir.resolve("corpus.txt"));
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    CorpusGenerator.deleteFolder(tempDir);
+  }
+
+  @Benchmark
+  public BookInfo parse() {
+    BookInfo book = corpus.newBookInfo(srcTxtPath, tempDir);
+    new ConvertTxtToHtmls(book, new DiscardingSink()).parse(lines);
+    return book;
+  }
+
+  @Benchmark
+  public long convert() {
+    BookInfo book = corpus.newBookInfo(srcTxtPath, tempDir);
+    DiscardingSink sink = new DiscardingSink();
+    new ConvertTxtToHtmls(book, sink).convert();
+    return sink.getBytes();
+  }
+}
@@ -0,0 +1,95 @@
+package com.quanqinle.epub;
+
+import com.quanqinle.epub.entity.BookInfo;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Measure the heap used to convert a large synthetic book, in non-streaming and streaming mode.
+ *
+ * <p>For each mode, it prints the peak heap during {@link ConvertTxtToHtmls#convert()}, and the heap
+ * still used after it while the book info is reachable, which is what the later stages, such as the
+ * TOC and the zip, run on. Both are over the heap used before converting.
+ *
+ * <p>GC threads make the peak noisy, run it with a fixed heap and a serial GC:
+ *
+ * <pre>
+ * java -Xmx2g -XX:+UseSerialGC -cp &lt;classpath&gt; com.quanqinle.epub.PeakHeap [chapters] [linesPerChapter] [cjk]
+ * </pre>
+ *
+ * @author quanqinle
+ */
+public class PeakHeap {
+  private static final long MB = 1024 * 1024;
+
+  public static void main(String[] args) throws IOException {
+    int chapters = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+    int linesPerChapter = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+    boolean cjk = args.length <= 2 || Boolean.parseBoolean(args[2]);
+
+    CorpusGenerator corpus = new CorpusGenerator(0, chapters, linesPerChapter, cjk);
+    Path tempDir = Files.createTempDirectory("peak-heap");
+    try {
+      Path srcTxtPath = corpus.write(tempDir.resolve("corpus.txt"));
+      System.out.printf("%d chapters, %d MB of text%n", chapters, Files.size(srcTxtPath) / MB);
+      // load and compile the classes, not measured
+      Path warmUpTxtPath = new CorpusGenerator(0, 100, 10, cjk).write(tempDir.resolve("warm-up.txt"));
+      new ConvertTxtToHtmls(corpus.newBookInfo(warmUpTxtPath, tempDir), new DiscardingSink()).convert();
+
+      for (boolean streaming : new boolean[] {false, true}) {
+        measure(corpus.newBookInfo(srcTxtPath, tempDir), streaming);
+      }
+    } finally {
+      CorpusGenerator.deleteFolder(tempDir);
+    }
+  }
+
+  private static void measure(BookInfo book, boolean streaming) {
+    book.setStreaming(streaming);
+    long before = usedAfterGc();
+    resetPeaks();
+
+    DiscardingSink sink = new DiscardingSink();
+    new ConvertTxtToHtmls(book, sink).convert();
+
+    long peak = peak() - before;
+    long retained = usedAfterGc() - before;
+    System.out.printf("streaming=%-5s peak %5d MB, retained %5d MB, %d files, %d MB written%n",
+        streaming, peak / MB, retained / MB, book.getChapterTable().size(), sink.getBytes() / MB);
+  }
+
+  private static long usedAfterGc() {
+    System.gc();
+    System.gc();
+    long used = 0;
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP) {
+        used += pool.getUsage().getUsed();
+      }
+    }
+    return used;
+  }
+
+  private static void resetPeaks() {
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP) {
+        pool.resetPeakUsage();
+      }
+    }
+  }
+
+  private static long peak() {
+    long peak = 0;
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP) {
+        peak += pool.getPeakUsage().getUsed();
+      }
+    }
+    return peak;
+  }
+}
@@ -0,0 +1,73 @@
+package com.quanqinle.epub;
+
+import com.quanqinle.epub.util.EpubUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Render the .xhtml file of one chapter.
+ *
+ * <ul>
+ *   <li>{@link #renderHtml()}: render into bytes in memory;
+ *   <li>{@link #writeHtmlFile()}: render and write the file by {@link EpubUtils#writeHtmlFile}.
+ * </ul>
+ *
+ * @author quanqinle
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RenderBenchmark {
+
+  @Param({"50", "500"})
+  int linesPerChapter;
+
+  @Param({"true", "false"})
+  boolean cjk;
+
+  private List<String> lines;
+  private Path tempDir;
+  private Path htmlPath;
+
+  @Setup
+  public void setup() throws IOException {
+    lines = new CorpusGenerator(0, 1, linesPerChapter, cjk).bodyLines(linesPerChapter);
+    tempDir = Files.createTempDirectory("render-benchmark");
+    htmlPath = tempDir.resolve("chapter-001.xhtml");
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    CorpusGenerator.deleteFolder(tempDir);
+  }
+
+  @Benchmark
+  public byte[] renderHtml() {
+    return EpubUtils.renderHtml("第1章 章节名", lines);
+  }
+
+  @Benchmark
+  public Path writeHtmlFile() {
+    EpubUtils.writeHtmlFile("第1章 章节名", lines, htmlPath);
+    return htmlPath;
+  }
+}
@@ -0,0 +1,65 @@
+package com.quanqinle.epub;
+
+import com.quanqinle.epub.entity.BookInfo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Organize the navigation lists of toc.ncx, content.opf and toc.xhtml from a parsed book, by
+ * {@link MakeEpubFromTemplate#makeContentForTocNcxAndContentOpf()}, and render them into the
+ * template files by {@link MakeEpubFromTemplate#writeTemplate}.
+ *
+ * @author quanqinle
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TocBenchmark {
+
+  /** 0 for single-book mode, otherwise many-books mode */
+  @Param({"0", "10"})
+  int volumes;
+
+  @Param({"1000", "10000"})
+  int chapters;
+
+  private MakeEpubFromTemplate maker;
+
+  @Setup
+  public void setup() {
+    CorpusGenerator corpus = new CorpusGenerator(volumes, chapters, 1, true);
+    BookInfo book = corpus.newBookInfo(Path.of("corpus.txt"), Path.of("out"));
+    new ConvertTxtToHtmls(book, new DiscardingSink()).parse(corpus.lines());
+    maker = new MakeEpubFromTemplate(book);
+    maker.makeContentForTocNcxAndContentOpf();
+  }
+
+  @Benchmark
+  public MakeEpubFromTemplate makeContentForTocNcxAndContentOpf() {
+    maker.makeContentForTocNcxAndContentOpf();
+    return maker;
+  }
+
+  @Benchmark
+  public DiscardingSink writeTemplate() throws IOException {
+    DiscardingSink sink = new DiscardingSink();
+    maker.writeTemplate(sink);
+    return sink;
+  }
+}
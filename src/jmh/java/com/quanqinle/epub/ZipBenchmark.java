@@ -0,0 +1,78 @@
+package com.quanqinle.epub;
+
+import com.quanqinle.epub.entity.BookInfo;
+import com.quanqinle.epub.util.CompressionPolicy;
+import com.quanqinle.epub.util.EpubUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Zip the epub folder of a converted book into a .epub file by {@link EpubUtils#zipEpub}, by one or
+ * more compressing threads.
+ *
+ * @author quanqinle
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ZipBenchmark {
+
+  @Param({"1000"})
+  int chapters;
+
+  @Param({"50"})
+  int linesPerChapter;
+
+  @Param({"true", "false"})
+  boolean cjk;
+
+  /** compressing threads, 1 for the calling thread only */
+  @Param({"1", "4"})
+  int threads;
+
+  private Path tempDir;
+  private Path epubFolder;
+  private Path epubPath;
+
+  @Setup
+  public void setup() throws IOException {
+    tempDir = Files.createTempDirectory("zip-benchmark");
+    CorpusGenerator corpus = new CorpusGenerator(0, chapters, linesPerChapter, cjk);
+    Path srcTxtPath = corpus.write(tempDir.resolve("corpus.txt"));
+    Path outputDir = tempDir.resolve("out");
+    BookInfo book = corpus.newBookInfo(srcTxtPath, outputDir);
+    new MakeEpubFromTemplate(book).make();
+
+    epubFolder = outputDir.resolve(book.getTempFolder());
+    epubPath = tempDir.resolve("zip-benchmark.epub");
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    CorpusGenerator.deleteFolder(tempDir);
+  }
+
+  @Benchmark
+  public Path zipEpub() throws IOException {
+    EpubUtils.zipEpub(epubFolder, epubPath, CompressionPolicy.defaultPolicy(), threads);
+    return epubPath;
+  }
+}
@@ -0,0 +1,307 @@
+package com.quanqinle.epub;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.yaml.YAMLMapper;
+import com.quanqinle.epub.entity.BatchResult;
+import com.quanqinle.epub.entity.BookInfo;
+import com.quanqinle.epub.entity.BuildReport;
+import com.quanqinle.epub.entity.ValidationReport;
+import com.quanqinle.epub.util.EntryCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/**
+ * Convert many books in one JVM.
+ *
+ * <p>Each book is described by its own bookinfo.yaml, and converted by {@link MakeEpubFromTemplate}
+ * in a worker pool. A failed book is reported in the results, and does not stop the others.
+ *
+ * <p>Command line:
+ *
+ * <p>$ java com.quanqinle.epub.BatchConverter &lt;folder of .yaml | manifest file> [threads]
+ *
+ * <p>A manifest file lists one bookinfo.yaml per line, lines starting with # are ignored.
+ *
+ * <p>The books with validate: true are validated by one {@link EpubValidator} of the batch, while
+ * the other books are being converted.
+ *
+ * <p>The books with the same entryStore share one {@link EntryCache} in the batch, so a file
+ * compressed for one book is reused by the others. The summary tells how much they duplicate each
+ * other.
+ *
+ * @author quanqinle
+ */
+public class BatchConverter {
+  private static final Logger logger = LoggerFactory.getLogger(BatchConverter.class);
+
+  /** the number of books converted at the same time */
+  private final int threads;
+  /** validates the books of the batch */
+  private EpubValidator validator;
+  /** the entry stores of the books, by folder */
+  private final Map<Path, EntryCache> entryStores = new HashMap<>();
+
+  /**
+   * Constructor
+   *
+   * @param threads the number of books converted at the same time
+   */
+  public BatchConverter(int threads) {
+    this.threads = Math.max(1, threads);
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length < 1) {
+      System.err.println("Usage: BatchConverter <folder of .yaml | manifest file> [threads]");
+      System.exit(2);
+    }
+
+    int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+    List<BatchResult> results = new BatchConverter(threads).convert(findBookInfoFiles(Path.of(args[0])));
+
+    System.exit(results.stream().allMatch(BatchResult::isSuccess) ? 0 : 1);
+  }
+
+  /**
+   * Find bookinfo.yaml files.
+   *
+   * @param path a folder containing .yaml/.yml files (sub-folders included), or a manifest file
+   *     listing one bookinfo.yaml per line. Relative paths in the manifest are resolved against its
+   *     folder.
+   * @return bookinfo.yaml files, sorted if from a folder
+   * @throws IOException -
+   */
+  public static List<Path> findBookInfoFiles(Path path) throws IOException {
+    if (Files.isDirectory(path)) {
+      try (Stream<Path> paths = Files.walk(path)) {
+        return paths
+            .filter(Files::isRegularFile)
+            .filter(p -> p.toString().endsWith(".yaml") || p.toString().endsWith(".yml"))
+            .sorted()
+            .toList();
+      }
+    }
+
+    Path folder = path.toAbsolutePath().getParent();
+    return Files.readAllLines(path).stream()
+        .map(String::trim)
+        .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+        .map(folder::resolve)
+        .toList();
+  }
+
+  /**
+   * Convert all the books, then log a summary.
+   *
+   * @param bookInfoFiles bookinfo.yaml files
+   * @return the result of each book, in the same order as bookInfoFiles
+   */
+  public List<BatchResult> convert(List<Path> bookInfoFiles) {
+    logger.info("Converting {} books with {} threads", bookInfoFiles.size(), threads);
+    long start = System.nanoTime();
+
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    List<CompletableFuture<?>> validations = Collections.synchronizedList(new ArrayList<>());
+    List<Future<BatchResult>> futures = new ArrayList<>();
+    for (int i = 0; i < bookInfoFiles.size(); i++) {
+      Path bookInfoFile = bookInfoFiles.get(i);
+      int index = i;
+      futures.add(executor.submit(() -> convertOne(bookInfoFile, index, validations)));
+    }
+    executor.shutdown();
+
+    List<BatchResult> results = new ArrayList<>();
+    for (int i = 0; i < futures.size(); i++) {
+      try {
+        results.add(futures.get(i).get());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        executor.shutdownNow();
+        throw new IllegalStateException("Interrupted when converting books", e);
+      } catch (ExecutionException e) {
+        // convertOne() catches everything, so it should not happen
+        BatchResult result = new BatchResult(bookInfoFiles.get(i));
+        result.setError(String.valueOf(e.getCause()));
+        results.add(result);
+      }
+    }
+
+    // all the books are converted, so no more validation is added
+    CompletableFuture.allOf(validations.toArray(CompletableFuture[]::new)).join();
+    closeValidator();
+
+    logSummary(results, (System.nanoTime() - start) / 1_000_000);
+    return results;
+  }
+
+  /**
+   * @return the validator of the batch, created at the first book to validate
+   */
+  private synchronized EpubValidator getValidator() {
+    if (validator == null) {
+      validator = new EpubValidator(threads);
+    }
+    return validator;
+  }
+
+  private synchronized void closeValidator() {
+    if (validator != null) {
+      validator.close();
+      validator = null;
+    }
+  }
+
+  /**
+   * @param folder the folder of the store
+   * @return the entry store of the batch in the folder, created at the first book using it
+   * @throws IOException if the folder can not be created
+   */
+  private synchronized EntryCache getEntryStore(Path folder) throws IOException {
+    Path key = folder.toAbsolutePath().normalize();
+    EntryCache store = entryStores.get(key);
+    if (store == null) {
+      store = new EntryCache(key);
+      entryStores.put(key, store);
+    }
+    return store;
+  }
+
+  /**
+   * Convert a book. Never throw, the error is saved in the result.
+   *
+   * @param bookInfoFile bookinfo.yaml
+   * @param index the index of the book in the batch, to make its temp folder unique
+   * @param validations where to add the validation of the book, if validated
+   * @return result
+   */
+  private BatchResult convertOne(Path bookInfoFile, int index, List<CompletableFuture<?>> validations) {
+    BatchResult result = new BatchResult(bookInfoFile);
+    long start = System.nanoTime();
+    try {
+      BookInfo book = readBookInfo(bookInfoFile);
+      result.setBookTitle(book.getBookTitle());
+      // books may share the same output directory
+      book.setTempFolder(book.getTempFolder() + "-" + index);
+
+      MakeEpubFromTemplate makeEpub = new MakeEpubFromTemplate(book);
+      if (book.isValidate()) {
+        makeEpub.setValidator(getValidator());
+      }
+      if (book.getEntryStore() != null) {
+        makeEpub.setEntryStore(getEntryStore(book.getEntryStore()));
+      }
+      BuildReport report = makeEpub.make();
+      if (report.getValidation() != null) {
+        validations.add(report.getValidation().handle((validation, e) -> {
+          if (e != null) {
+            logger.error("Fail to validate: {}", makeEpub.getEpubPath(), e);
+          }
+          result.setValidation(validation);
+          return validation;
+        }));
+      }
+
+      result.setEpubPath(makeEpub.getEpubPath());
+      result.setReport(report);
+      result.setSuccess(true);
+    } catch (Exception e) {
+      logger.error("Fail to convert: {}", bookInfoFile, e);
+      result.setError(String.valueOf(e));
+    }
+    result.setMillis((System.nanoTime() - start) / 1_000_000);
+    return result;
+  }
+
+  /**
+   * Read bookinfo.yaml. Relative paths in it are resolved against its folder.
+   *
+   * @param bookInfoFile bookinfo.yaml
+   * @return book info
+   * @throws IOException -
+   */
+  static BookInfo readBookInfo(Path bookInfoFile) throws IOException {
+    try (InputStream in = Files.newInputStream(bookInfoFile)) {
+      return readBookInfo(in, bookInfoFile.toAbsolutePath().getParent());
+    }
+  }
+
+  /**
+   * Read the content of a bookinfo.yaml.
+   *
+   * @param in the content of bookinfo.yaml
+   * @param folder relative paths in it are resolved against this folder
+   * @return book info
+   * @throws IOException -
+   */
+  public static BookInfo readBookInfo(InputStream in, Path folder) throws IOException {
+    ObjectMapper mapper = new YAMLMapper();
+    BookInfo book = mapper.readValue(in, BookInfo.class);
+
+    if (book.getSrcTxtPath() != null) {
+      book.setSrcTxtPath(folder.resolve(book.getSrcTxtPath()));
+    }
+    if (book.getOutputDir() != null) {
+      book.setOutputDir(folder.resolve(book.getOutputDir()));
+    }
+    if (book.getTemplateSrcPath() != null) {
+      book.setTemplateSrcPath(folder.resolve(book.getTemplateSrcPath()));
+    }
+    if (book.getCoverJpgFullPath() != null) {
+      book.setCoverJpgFullPath(folder.resolve(book.getCoverJpgFullPath()));
+    }
+    if (book.getEntryStore() != null) {
+      book.setEntryStore(folder.resolve(book.getEntryStore()));
+    }
+    return book;
+  }
+
+  private void logSummary(List<BatchResult> results, long totalMillis) {
+    long failed = results.stream().filter(result -> !result.isSuccess()).count();
+    logger.info("Converted {} books in {} ms, {} succeeded, {} failed",
+        results.size(), totalMillis, results.size() - failed, failed);
+    for (BatchResult result : results) {
+      logger.info("{} {} ms [{}] {} {}",
+          result.isSuccess() ? "OK  " : "FAIL",
+          result.getMillis(),
+          result.getBookTitle(),
+          result.getBookInfoPath(),
+          result.isSuccess() ? result.getEpubPath() : result.getError());
+      BuildReport report = result.getReport();
+      if (report != null && report.getReusedEntries() > 0) {
+        logger.info("     {} of {} files reused from the entry store",
+            report.getReusedEntries(), report.getEntries());
+      }
+      ValidationReport validation = result.getValidation();
+      if (validation != null) {
+        logger.info("     {} fatal errors, {} errors, {} warnings by EpubCheck",
+            validation.getFatalErrorCount(), validation.getErrorCount(), validation.getWarningCount());
+      }
+    }
+
+    synchronized (this) {
+      for (EntryCache store : entryStores.values()) {
+        long bytes = store.getBytesHit() + store.getBytesMissed();
+        logger.info("Entry store {}: {} files reused, {} compressed, {} of {} bytes duplicated ({}%)",
+            store.getFolder(), store.getHits(), store.getMisses(), store.getBytesHit(), bytes,
+            bytes == 0 ? 0 : store.getBytesHit() * 100 / bytes);
+      }
+      entryStores.clear();
+    }
+  }
+}
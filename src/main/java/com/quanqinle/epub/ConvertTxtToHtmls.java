@@ -1,19 +1,33 @@
 package com.quanqinle.epub;
 
 import com.quanqinle.epub.entity.BookInfo;
+import com.quanqinle.epub.entity.ChapterBody;
+import com.quanqinle.epub.entity.ChapterTable;
 import com.quanqinle.epub.entity.FileInfo;
-import com.quanqinle.epub.util.EpubUtils;
+import com.quanqinle.epub.util.ChapterDetector;
+import com.quanqinle.epub.util.ChapterWriter;
+import com.quanqinle.epub.util.EpubSink;
+import com.quanqinle.epub.util.FolderEpubSink;
+import com.quanqinle.epub.util.LineClassifier;
+import com.quanqinle.epub.util.MultiReplacer;
+import com.quanqinle.epub.util.SourceLine;
+import com.quanqinle.epub.util.SourceReader;
+import com.quanqinle.epub.util.TitleMatcher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.LinkedHashMap;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 /**
  * Convert a plain text file `.txt` to some `.xhtml` files.
@@ -23,6 +37,11 @@ import java.util.Map;
 public class ConvertTxtToHtmls {
   private static final Logger logger = LoggerFactory.getLogger(ConvertTxtToHtmls.class);
 
+  /** the smallest range of the source parsed by a thread */
+  private static final long MIN_RANGE_SIZE = 256 * 1024;
+  /** ranges per parsing thread, more ranges balance the work better */
+  private static final int RANGES_PER_THREAD = 4;
+
   /** file name used when generate new sub-book file */
   private final String bookFileNameFormat = "book-%d";
   /** file name used when generate new chapter file */
@@ -32,65 +51,354 @@ public class ConvertTxtToHtmls {
   private final Path srcTxtPath;
   /** output book */
   private final BookInfo book;
-  /** the folder for storing .xhtml files */
+  /** where to write .xhtml files */
+  private final EpubSink sink;
+  /** the folder for storing .xhtml files. null if {@link #sink} is not a folder */
   private final Path drtHtmlFolderPath;
+  /** built from the replace map */
+  private final MultiReplacer lineReplacer;
+  /** classify lines by the replace map and title matchers */
+  private LineClassifier lineClassifier;
+  /** writes .xhtml files, created for each {@link #convert()} */
+  private ChapterWriter chapterWriter;
+  /** the source file of {@link #convert()}, where the paragraphs of chapter bodies are. null if parsing lines in memory */
+  private SourceReader source;
+  /** lines parsed, including blank lines */
+  private long linesRead = 0;
+  /** files made, including front matter and sub-books */
+  private int chapters = 0;
 
   /**
-   * Constructor
+   * Constructor. The .xhtml files are written into the temp folder inside the output directory.
    *
    * @param bookInfo book info
    */
   public ConvertTxtToHtmls(BookInfo bookInfo) {
+    this(bookInfo, new FolderEpubSink(bookInfo.getOutputDir().resolve(bookInfo.getTempFolder())));
+  }
+
+  /**
+   * Constructor
+   *
+   * @param bookInfo book info
+   * @param sink where to write .xhtml files, such as a folder or a .epub file
+   */
+  public ConvertTxtToHtmls(BookInfo bookInfo, EpubSink sink) {
     this.srcTxtPath = bookInfo.getSrcTxtPath();
     this.book = bookInfo;
+    this.sink = sink;
     this.drtHtmlFolderPath =
-        book.getOutputDir().resolve(bookInfo.getTempFolder()).resolve("OEBPS/Text");
+        sink instanceof FolderEpubSink folder
+            ? folder.getRoot().resolve(ChapterWriter.TEXT_FOLDER)
+            : null;
+    this.lineReplacer = new MultiReplacer(bookInfo.getReplaceMap());
+    this.lineClassifier = newLineClassifier();
+  }
+
+  /**
+   * @return a classifier by the replace map and the title regex lists of {@link #book}
+   */
+  private LineClassifier newLineClassifier() {
+    return new LineClassifier(
+        lineReplacer,
+        book.isHasManyBooks() ? new TitleMatcher(book.getBookTitleRegexList()) : null,
+        new TitleMatcher(book.getChapterTitleRegexList()));
+  }
+
+  /**
+   * If no line in a sample of the source matches book.chapterTitleRegexList, add the regexes
+   * detected from the sample to it, see {@link ChapterDetector}. The configured regexes are kept,
+   * since their titles may be out of the sample, such as after a long preface.
+   *
+   * @param source the source
+   */
+  void detectChapterTitles(SourceReader source) {
+    List<String> sample = ChapterDetector.sample(source, lineReplacer);
+    if (ChapterDetector.anyMatch(sample, new TitleMatcher(book.getChapterTitleRegexList()))) {
+      return;
+    }
+
+    ChapterDetector.Detection detection = ChapterDetector.detect(sample);
+    if (detection == null) {
+      logger.warn("No chapter title matches {} in {} sample lines, and none is detected",
+          book.getChapterTitleRegexList(), sample.size());
+      return;
+    }
+    logger.info("No chapter title matches {} in the sample, add the detected {}", book.getChapterTitleRegexList(), detection);
+    List<String> regexList = new ArrayList<>();
+    if (book.getChapterTitleRegexList() != null) {
+      regexList.addAll(book.getChapterTitleRegexList());
+    }
+    regexList.addAll(detection.getRegexList());
+    book.setChapterTitleRegexList(regexList);
+    lineClassifier = newLineClassifier();
   }
 
   /**
    * Use this method directly after the Constructor() method.
+   *
+   * @throws UncheckedIOException if fail to read the source or write any HTML file
    */
   public void convert() {
-    List<String> allLines = readTxt(srcTxtPath);
+    try (SourceReader source = SourceReader.open(srcTxtPath, book.getCharset())) {
+      convert(source);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Fail to convert " + srcTxtPath, e);
+    }
+  }
+
+  /**
+   * Convert the source instead of book.srcTxtPath, such as a text read from a stream by
+   * {@link SourceReader#read(java.io.InputStream, String)}.
+   *
+   * @param source the source, not closed by this method
+   * @throws UncheckedIOException if fail to write any HTML file
+   */
+  public void convert(SourceReader source) {
+    try (ChapterWriter writer = new ChapterWriter(sink, book.getWriterThreads())) {
+      this.chapterWriter = writer;
+      book.getChapterTable().clear();
+      if (book.isDetectChapterTitles()) {
+        detectChapterTitles(source);
+      }
+      createHtmlFolder();
+
+      int threads = book.getParseThreads();
+      parse(source, threads, (int) Math.min((long) threads * RANGES_PER_THREAD, source.getSize() / MIN_RANGE_SIZE));
 
+      if (!book.isStreaming()) {
+        writeAll();
+      }
+      writer.await();
+    } catch (IOException e) {
+      throw new UncheckedIOException("Fail to write the HTML files of " + book.getBookTitle(), e);
+    }
+  }
+
+  /**
+   * Parse lines into chapters of {@link #book}.
+   * <p>In non-streaming mode, no file is written.
+   *
+   * @param lines all lines of the book
+   */
+  void parse(Iterable<String> lines) {
+    parseClassified(lineClassifier.classifyAll(SourceLine.of(lines), () -> linesRead++));
+  }
+
+  /**
+   * Parse the source file into chapters of {@link #book}. A paragraph whose line has a span in the
+   * source file is kept as the span, not a String.
+   * <p>If threads and parts are more than 1, the source is split into ranges at line boundaries,
+   * which are classified concurrently. The chapters are built in order, the same as parsing the
+   * source by one thread.
+   *
+   * @param source the source file, where the span paragraphs are
+   * @param threads the number of parsing threads
+   * @param parts the number of ranges to split the source into
+   */
+  void parse(SourceReader source, int threads, int parts) {
+    this.source = source;
+    List<Iterable<SourceLine>> ranges = threads > 1 && parts > 1 ? source.split(parts) : List.of();
+    if (ranges.size() < 2) {
+      parseClassified(lineClassifier.classifyAll(source.lines(), () -> linesRead++));
+      return;
+    }
+
+    logger.info("Parse {} ranges by {} threads", ranges.size(), threads);
+    ForkJoinPool pool = new ForkJoinPool(threads);
+    try {
+      parseClassified(() -> new BatchIterator(pool, ranges, threads * 2));
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  /**
+   * Build chapters from the classified lines, in order.
+   *
+   * @param lines non-blank lines of the book
+   */
+  private void parseClassified(Iterable<LineClassifier.Line> lines) {
     if (book.isHasManyBooks()) {
-      parseLinesToBooks(allLines, book);
+      parseLinesToBooks(lines, book);
     } else {
-      parseLines(allLines, book);
+      parseLines(lines, book);
+    }
+  }
+
+  /**
+   * Classify the ranges by the pool, at most lookahead ranges ahead of the reader, and read their
+   * lines in order.
+   */
+  private class BatchIterator implements Iterator<LineClassifier.Line> {
+    private final ForkJoinPool pool;
+    private final List<Iterable<SourceLine>> ranges;
+    private final int lookahead;
+    private final Deque<ForkJoinTask<LineClassifier.Batch>> pending = new ArrayDeque<>();
+    private final LineClassifier.Line line = new LineClassifier.Line();
+    /** the next range to submit */
+    private int nextRange = 0;
+    private LineClassifier.Batch batch;
+    /** the number of the first line of {@link #batch} in the source */
+    private long batchFirstLine;
+    /** the next line in {@link #batch} */
+    private int index = 0;
+
+    BatchIterator(ForkJoinPool pool, List<Iterable<SourceLine>> ranges, int lookahead) {
+      this.pool = pool;
+      this.ranges = ranges;
+      this.lookahead = lookahead;
+    }
+
+    @Override
+    public boolean hasNext() {
+      while (batch == null || index == batch.size()) {
+        while (pending.size() < lookahead && nextRange < ranges.size()) {
+          Iterable<SourceLine> range = ranges.get(nextRange++);
+          pending.add(pool.submit(() -> lineClassifier.classifyRange(range)));
+        }
+        if (pending.isEmpty()) {
+          return false;
+        }
+        batch = pending.poll().join();
+        batchFirstLine = linesRead + 1;
+        linesRead += batch.getLinesRead();
+        index = 0;
+      }
+      return true;
     }
 
+    @Override
+    public LineClassifier.Line next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      batch.get(index++, batchFirstLine, line);
+      return line;
+    }
+  }
+
+  /**
+   * @return lines parsed, including blank lines
+   */
+  public long getLinesRead() {
+    return linesRead;
+  }
+
+  /**
+   * @return .xhtml files made, including front matter and sub-books
+   */
+  public int getChapters() {
+    return chapters;
+  }
+
+  /**
+   * Write all .xhtml files after parsing. Not used in streaming mode, in which each file is written
+   * once it is parsed.
+   */
+  private void writeAll() {
+    for (int i = 0; i < book.getChapterTable().size(); i++) {
+      submit(i);
+    }
+  }
+
+  private void createHtmlFolder() {
+    if (drtHtmlFolderPath == null) {
+      return;
+    }
     try {
       Files.createDirectories(drtHtmlFolderPath);
     } catch (IOException e) {
       logger.error("Fail to create HTML folder: {}", drtHtmlFolderPath);
       e.printStackTrace();
     }
+  }
+
+  /**
+   * Add the paragraph into the body. If the last part of the body would be longer than
+   * book.maxHtmlBytes or book.maxHtmlParagraphs, break a new part before the paragraph.
+   *
+   * @param body the body of the current file
+   * @param line a paragraph
+   */
+  private void addParagraph(ChapterBody body, LineClassifier.Line line) {
+    int partSize = body.getLastPartSize();
+    if (partSize > 0
+        && ((book.getMaxHtmlBytes() > 0 && body.getLastPartByteSize() + line.getByteSize() > book.getMaxHtmlBytes())
+            || (book.getMaxHtmlParagraphs() > 0 && partSize >= book.getMaxHtmlParagraphs()))) {
+      body.addBreak(line.getLineNumber());
+    }
+    line.addTo(body);
+  }
 
-    writeFrontMatter(book, drtHtmlFolderPath);
+  /**
+   * Add a complete front matter, sub-book or chapter into the chapter table. If its body is broken
+   * into parts, each part after the first one is added as a {@link ChapterTable.Kind#PART} named
+   * like "chapter-001-part2".
+   *
+   * @param kind what the file is
+   * @param title title
+   * @param name file name without suffix
+   * @param volume the index of the sub-book, 0 if none
+   * @param firstLine the first line of the file in the source
+   * @param endLine the line after the file in the source
+   * @param body the body
+   */
+  private void addFile(ChapterTable.Kind kind, String title, String name, int volume,
+          long firstLine, long endLine, ChapterBody body) {
+    ChapterTable table = book.getChapterTable();
+    int parts = body.getPartCount();
+    if (parts == 1) {
+      onFileClosed(table.add(kind, title, name, volume, firstLine, endLine, body));
+      return;
+    }
 
-    if (book.isHasManyBooks()) {
-      writeBooks(book, drtHtmlFolderPath);
-    } else {
-      writeChapters(book, drtHtmlFolderPath);
+    logger.info("[{}] is split into {} parts", title, parts);
+    for (int part = 0; part < parts; part++) {
+      long partFirstLine = part == 0 ? firstLine : body.getPartFirstLine(part);
+      long partEndLine = part == parts - 1 ? endLine : body.getPartFirstLine(part + 1);
+      onFileClosed(table.add(part == 0 ? kind : ChapterTable.Kind.PART, title,
+          part == 0 ? name : name + "-part" + (part + 1), volume, partFirstLine, partEndLine, body.getPart(part)));
     }
   }
 
   /**
-   * Read txt file to List
+   * Called once a front matter, sub-book or chapter is complete.
+   * <p>In streaming mode, write it at once and release its lines.
    *
-   * @param txtPath txt
-   * @return line list
+   * @param ordinal the completed file in {@link BookInfo#getChapterTable()}
    */
-  private List<String> readTxt(Path txtPath) {
-    List<String> allLines = null;
-    try {
-      allLines = Files.readAllLines(txtPath, StandardCharsets.UTF_8);
-      logger.info("Total {} lines in [{}]", allLines.size(), txtPath);
-    } catch (IOException e) {
-      logger.error("Fail to read file: {}", txtPath);
-      e.printStackTrace();
+  private void onFileClosed(int ordinal) {
+    chapters++;
+    if (!book.isStreaming()) {
+      return;
+    }
+
+    submit(ordinal);
+  }
+
+  /**
+   * Submit the file to {@link #chapterWriter}, taking its body out of the chapter table. The body is
+   * released once it is rendered, so only the metadata stays for the TOC.
+   *
+   * @param ordinal the file in {@link BookInfo#getChapterTable()}
+   */
+  private void submit(int ordinal) {
+    FileInfo fileInfo = book.getChapterTable().takeFileInfo(ordinal);
+    setFullPath(fileInfo, drtHtmlFolderPath);
+    chapterWriter.submit(fileInfo, true);
+  }
+
+  /**
+   * Set the full path of the .xhtml file, if it is written into a folder.
+   *
+   * @param fileInfo file
+   * @param htmlFolderPath HTML file folder, null if not written into a folder
+   */
+  private void setFullPath(FileInfo fileInfo, Path htmlFolderPath) {
+    if (htmlFolderPath != null) {
+      fileInfo.setFullPath(htmlFolderPath.resolve(fileInfo.getFullName()));
     }
-    return allLines;
   }
 
   /**
@@ -99,10 +407,10 @@ public class ConvertTxtToHtmls {
    * @param allLines all lines from txt files
    * @param bookInfo book info
    */
-  private void parseLinesToBooks(List<String> allLines, BookInfo bookInfo) {
+  private void parseLinesToBooks(Iterable<LineClassifier.Line> allLines, BookInfo bookInfo) {
     logger.info("begin parseLinesToBooks()...");
 
-    if (allLines == null || allLines.isEmpty()) {
+    if (allLines == null) {
       logger.error("allLines is empty!");
       return;
     }
@@ -110,80 +418,60 @@ public class ConvertTxtToHtmls {
     String subBookName = "";
     String chapterName = "";
     // html body
-    List<String> htmlBodyLines = new ArrayList<>();
+    ChapterBody htmlBody = new ChapterBody(source);
+    // the first line of the current part in the source
+    long partFirstLine = 1;
     // is previous line in a chapter or a sub-book?
     boolean isPreviousLineInChapter = false;
 
     boolean isFirstLine = true;
     boolean existFrontMatter = false;
+    boolean frontMatterSaved = false;
 
     int idxBook = 0;
     int idxChapter = 0;
 
-    for (String line : allLines) {
-      for (Map.Entry<String, String> entry : bookInfo.getReplaceMap().entrySet()) {
-        line = line.replace(entry.getKey(), entry.getValue()).trim();
-      }
-
-      // skip empty line
-      if (line.isBlank()) {
-        continue;
-      }
-
-      boolean isSubBookTitle = isSubBookTitle(line, bookInfo.getBookTitleRegexList());
-      boolean isChapterTitle = isChapterTitle(line, bookInfo.getChapterTitleRegexList());
+    // blank lines are skipped by the classifier
+    for (LineClassifier.Line parsedLine : allLines) {
+      boolean isSubBookTitle = parsedLine.isSubBookTitle();
+      boolean isChapterTitle = parsedLine.isChapterTitle();
       if (isFirstLine) {
         isFirstLine = false;
         if (!isSubBookTitle && !isChapterTitle) {
-          htmlBodyLines.add("<p>" + line + "</p>");
+          addParagraph(htmlBody, parsedLine);
           existFrontMatter = true;
           continue;
         }
       }
 
       if (!isSubBookTitle && !isChapterTitle) {
-        htmlBodyLines.add("<p>" + line + "</p>");
+        addParagraph(htmlBody, parsedLine);
       } else {
-        if (existFrontMatter && bookInfo.getFrontMatter().isEmpty()) {
+        String line = parsedLine.getTitle();
+        long lineNumber = parsedLine.getLineNumber();
+        if (existFrontMatter && !frontMatterSaved) {
           // save the previous lines into `front matter`
-          List<String> copy = new ArrayList<>(htmlBodyLines);
-          FileInfo fileInfo =
-              new FileInfo(bookInfo.getFrontMatterFile(), bookInfo.getFrontMatterTitle(), copy);
-          bookInfo.getFrontMatter().put(bookInfo.getFrontMatterTitle(), fileInfo);
+          addFile(ChapterTable.Kind.FRONT_MATTER, bookInfo.getFrontMatterTitle(),
+              bookInfo.getFrontMatterFile(), 0, partFirstLine, lineNumber, htmlBody);
+          frontMatterSaved = true;
           logger.info(
-              "Front-matter [{}] has [{}] lines", bookInfo.getFrontMatterTitle(), htmlBodyLines.size());
+              "Front-matter [{}] has [{}] lines", bookInfo.getFrontMatterTitle(), htmlBody.size());
         } else {
-          if (isPreviousLineInChapter) {
-            // save the previous chapter body
-            String fileName =
-                String.format(
-                    bookFileNameFormat + "_" + chapterFileNameFormat, idxBook, idxChapter);
-            FileInfo fileInfo = new FileInfo(fileName, chapterName, new ArrayList<>(htmlBodyLines));
-
-            bookInfo.getSubBook().get(subBookName).put(chapterName, fileInfo);
-            logger.info("Chapter [{}] has [{}] lines", chapterName, htmlBodyLines.size());
-          } else {
-            // save the previous sub-book body
-            String fileName = String.format(bookFileNameFormat, idxBook);
-            FileInfo fileInfo = new FileInfo(fileName, subBookName, new ArrayList<>(htmlBodyLines));
-
-            LinkedHashMap<String, FileInfo> chapterMap = new LinkedHashMap<>();
-            chapterMap.put(subBookName, fileInfo);
-            bookInfo.getSubBook().put(subBookName, chapterMap);
-            logger.info("Book [{}] has [{}] lines", subBookName, htmlBodyLines.size());
-          }
+          saveSubBookPart(htmlBody, subBookName, chapterName,
+                  idxBook, idxChapter, isPreviousLineInChapter, partFirstLine, lineNumber);
         }
 
-        htmlBodyLines.clear();
+        htmlBody = new ChapterBody(source);
+        partFirstLine = lineNumber;
 
         if (isSubBookTitle) {
-          htmlBodyLines.add("<h1>" + line + "</h1>");
+          htmlBody.addMarkup("<h1>" + line + "</h1>");
           subBookName = line;
           idxBook++;
           idxChapter = 0;
           isPreviousLineInChapter = false;
         } else {
-          htmlBodyLines.add("<h2>" + line + "</h2>");
+          htmlBody.addMarkup("<h2>" + line + "</h2>");
           chapterName = line;
           idxChapter++;
           isPreviousLineInChapter = true;
@@ -191,181 +479,111 @@ public class ConvertTxtToHtmls {
       }
     } // end for-loop allLines
 
+    // save the last chapter or sub-book
+    if (idxBook > 0 || idxChapter > 0) {
+      saveSubBookPart(htmlBody, subBookName, chapterName,
+              idxBook, idxChapter, isPreviousLineInChapter, partFirstLine, linesRead + 1);
+    }
+
     logger.info("end parseLinesToBooks()...");
   }
 
+  /**
+   * Save the previous chapter or sub-book body when parsing lines into sub-books
+   *
+   * @param htmlBody html body of the previous part
+   * @param subBookName the current sub-book title
+   * @param chapterName the current chapter title
+   * @param idxBook index of the current sub-book
+   * @param idxChapter index of the current chapter in the sub-book
+   * @param isPreviousLineInChapter true if the previous part is a chapter, false if a sub-book
+   * @param firstLine the first line of the part in the source
+   * @param endLine the line after the part in the source
+   */
+  private void saveSubBookPart(ChapterBody htmlBody, String subBookName,
+          String chapterName, int idxBook, int idxChapter, boolean isPreviousLineInChapter,
+          long firstLine, long endLine) {
+    if (isPreviousLineInChapter) {
+      // save the previous chapter body
+      String fileName =
+          String.format(
+              bookFileNameFormat + "_" + chapterFileNameFormat, idxBook, idxChapter);
+      addFile(ChapterTable.Kind.CHAPTER, chapterName, fileName, idxBook, firstLine, endLine, htmlBody);
+      logger.info("Chapter [{}] has [{}] lines", chapterName, htmlBody.size());
+    } else {
+      // save the previous sub-book body
+      String fileName = String.format(bookFileNameFormat, idxBook);
+      addFile(ChapterTable.Kind.VOLUME, subBookName, fileName, idxBook, firstLine, endLine, htmlBody);
+      logger.info("Book [{}] has [{}] lines", subBookName, htmlBody.size());
+    }
+  }
+
   /**
    * When the source book has only ONE book, parse lines into each chapter
    *
    * @param allLines all lines from txt files
    * @param bookInfo book info
    */
-  private void parseLines(List<String> allLines, BookInfo bookInfo) {
+  private void parseLines(Iterable<LineClassifier.Line> allLines, BookInfo bookInfo) {
     logger.info("begin parseLines()...");
 
-    if (allLines == null || allLines.isEmpty()) {
+    if (allLines == null) {
       logger.error("allLines is empty!");
       return;
     }
 
     String chapterName = "";
     // chapter body
-    List<String> chapterLines = new ArrayList<>();
+    ChapterBody chapterBody = new ChapterBody(source);
+    // the first line of the current part in the source
+    long partFirstLine = 1;
 
     int idxChapter = 1;
-    for (String line : allLines) {
-      for (Map.Entry<String, String> entry : bookInfo.getReplaceMap().entrySet()) {
-        line = line.replace(entry.getKey(), entry.getValue()).trim();
-      }
-
-      // skip empty line
-      if (line.isBlank()) {
-        continue;
-      }
-
-      // If chapter title, save chapterLines into the previous chapter.
-      // If Not chapter title, save line into chapterLines.
-      if (!isChapterTitle(line, bookInfo.getChapterTitleRegexList())) {
-        chapterLines.add("<p>" + line + "</p>");
+    // blank lines are skipped by the classifier
+    for (LineClassifier.Line parsedLine : allLines) {
+      // If chapter title, save chapterBody into the previous chapter.
+      // If Not chapter title, save line into chapterBody.
+      if (!parsedLine.isChapterTitle()) {
+        addParagraph(chapterBody, parsedLine);
       } else {
+        long lineNumber = parsedLine.getLineNumber();
         // chapterName is blank means the current line is the 1st chapter title
         if (chapterName.isBlank()) {
-          if (chapterLines.isEmpty()) {
+          if (chapterBody.isEmpty()) {
             // the 1st chapter title is just the 1st line of the book.
             logger.info("It is the 1st chapter");
           } else {
             // save the previous lines into `front matter`
-            List<String> copy = new ArrayList<>(chapterLines);
-            FileInfo fileInfo =
-                new FileInfo(bookInfo.getFrontMatterFile(), bookInfo.getFrontMatterTitle(), copy);
-            bookInfo.getFrontMatter().put(bookInfo.getFrontMatterTitle(), fileInfo);
+            addFile(ChapterTable.Kind.FRONT_MATTER, bookInfo.getFrontMatterTitle(),
+                bookInfo.getFrontMatterFile(), 0, partFirstLine, lineNumber, chapterBody);
             logger.info(
-                    "Front-matter [{}] has [{}] lines", bookInfo.getFrontMatterTitle(), chapterLines.size());
+                    "Front-matter [{}] has [{}] lines", bookInfo.getFrontMatterTitle(), chapterBody.size());
           }
         } else {
           // save the previous chapter body
-          List<String> copy = new ArrayList<>(chapterLines);
           String fileName = String.format(chapterFileNameFormat, idxChapter);
           idxChapter++;
-          FileInfo fileInfo = new FileInfo(fileName, chapterName, copy);
-
-          bookInfo.getChapterMap().put(chapterName, fileInfo);
+          addFile(ChapterTable.Kind.CHAPTER, chapterName, fileName, 0, partFirstLine, lineNumber, chapterBody);
         }
 
-        logger.info("Chapter [{}] has [{}] lines", chapterName, chapterLines.size());
+        logger.info("Chapter [{}] has [{}] lines", chapterName, chapterBody.size());
 
-        chapterLines.clear();
-        chapterName = line;
-        chapterLines.add("<h1>" + chapterName + "</h1>");
+        chapterBody = new ChapterBody(source);
+        partFirstLine = lineNumber;
+        chapterName = parsedLine.getTitle();
+        chapterBody.addMarkup("<h1>" + chapterName + "</h1>");
       } // end processing chapter title
     } // end for-loop allLines
 
     // save the last chapter
     if (!chapterName.isBlank()) {
-      bookInfo
-          .getChapterMap()
-          .put(
-              chapterName,
-              new FileInfo(
-                  String.format(chapterFileNameFormat, idxChapter),
-                  chapterName,
-                  new ArrayList<>(chapterLines)));
-
-      logger.info("Chapter [{}] has [{}] lines", chapterName, chapterLines.size());
-    }
-
-    logger.info("end parseLines()...");
-  }
-
-  /**
-   * Check if this line is chapter title
-   *
-   * @param line -
-   * @param chapterTitleRegexList -
-   * @return -
-   */
-  private boolean isChapterTitle(String line, List<String> chapterTitleRegexList) {
-    for (String regex : chapterTitleRegexList) {
-      if (line.matches(regex)) {
-        return true;
-      }
-    }
-
-    return false;
-  }
-
-  /**
-   * Check if this line is sub-book title
-   *
-   * @param line -
-   * @param chapterTitleRegexList -
-   * @return -
-   */
-  private boolean isSubBookTitle(String line, List<String> chapterTitleRegexList) {
-    for (String regex : chapterTitleRegexList) {
-      if (line.matches(regex)) {
-        return true;
-      }
-    }
-
-    return false;
-  }
+      addFile(ChapterTable.Kind.CHAPTER, chapterName,
+          String.format(chapterFileNameFormat, idxChapter), 0, partFirstLine, linesRead + 1, chapterBody);
 
-  /**
-   * Save front matter to HTML file
-   *
-   * @param bookInfo book
-   * @param htmlFolderPath HTML file folder
-   */
-  private void writeFrontMatter(BookInfo bookInfo, Path htmlFolderPath) {
-    if (bookInfo.getFrontMatter().size() != 1) {
-      logger.error("unexpected size of front matter");
-      return;
-    }
-
-    FileInfo frontMatter = bookInfo.getFrontMatter().get(bookInfo.getFrontMatterTitle());
-    Path htmlPath = htmlFolderPath.resolve(frontMatter.getFullName());
-    frontMatter.setFullPath(htmlPath);
-
-    EpubUtils.writeHtmlFile(bookInfo.getFrontMatterTitle(), frontMatter.getLines(), htmlPath);
-  }
-
-  /**
-   * Save all chapters to HTML files
-   *
-   * @param bookInfo book
-   * @param htmlFolderPath HTML file folder
-   */
-  private void writeChapters(BookInfo bookInfo, Path htmlFolderPath) {
-    LinkedHashMap<String, FileInfo> chapterMap = bookInfo.getChapterMap();
-
-    for (String chapterTitle : chapterMap.keySet()) {
-      FileInfo fileInfo = chapterMap.get(chapterTitle);
-      Path htmlPath = htmlFolderPath.resolve(fileInfo.getFullName());
-      fileInfo.setFullPath(htmlPath);
-
-      EpubUtils.writeHtmlFile(chapterTitle, fileInfo.getLines(), htmlPath);
+      logger.info("Chapter [{}] has [{}] lines", chapterName, chapterBody.size());
     }
-  }
-
-  /**
-   * Save all chapters (within sub-books) to HTML files
-   *
-   * @param bookInfo book
-   * @param htmlFolderPath HTML file folder
-   */
-  private void writeBooks(BookInfo bookInfo, Path htmlFolderPath) {
-    LinkedHashMap<String, LinkedHashMap<String, FileInfo>> bookMap = bookInfo.getSubBook();
-
-    bookMap.values().forEach(chapterMap -> {
-      chapterMap.forEach((chapterTitle, fileInfo) -> {
-        Path htmlPath = htmlFolderPath.resolve(fileInfo.getFullName());
-        fileInfo.setFullPath(htmlPath);
-
-        EpubUtils.writeHtmlFile(fileInfo.getDescribe(), fileInfo.getLines(), htmlPath);
-      });
-    });
 
+    logger.info("end parseLines()...");
   }
 
 }
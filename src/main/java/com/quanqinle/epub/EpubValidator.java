@@ -0,0 +1,280 @@
+package com.quanqinle.epub;
+
+import com.adobe.epubcheck.api.EPUBLocation;
+import com.adobe.epubcheck.api.EpubCheck;
+import com.adobe.epubcheck.api.MasterReport;
+import com.adobe.epubcheck.messages.Message;
+import com.adobe.epubcheck.messages.MessageId;
+import com.adobe.epubcheck.util.FeatureEnum;
+import com.adobe.epubcheck.util.ReportingLevel;
+import com.quanqinle.epub.entity.ValidationMessage;
+import com.quanqinle.epub.entity.ValidationReport;
+import com.quanqinle.epub.util.CompressedEntry;
+import com.quanqinle.epub.util.EpubUtils;
+import com.quanqinle.epub.util.RawZipWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Validate .epub files by EpubCheck, and capture the messages into a {@link ValidationReport}
+ * instead of printing them on stderr.
+ *
+ * <p>An EpubCheck object validates only one file, but the schemas it loads are cached in the JVM.
+ * So the validator is warmed up once by a tiny .epub when created, and all the books validated by
+ * it later skip that setup.
+ *
+ * <p>Files are validated concurrently by a bounded pool. When the queue is full, {@link
+ * #submit(Path)} validates in the calling thread, so the callers are slowed down instead of piling
+ * up files.
+ *
+ * @author quanqinle
+ */
+public class EpubValidator implements AutoCloseable {
+  private static final Logger logger = LoggerFactory.getLogger(EpubValidator.class);
+
+  /** created by {@link #getShared()} */
+  private static EpubValidator shared;
+
+  private final ExecutorService executor;
+
+  /**
+   * Constructor. Warm up EpubCheck in the calling thread.
+   *
+   * @param threads the number of files validated at the same time
+   */
+  public EpubValidator(int threads) {
+    int size = Math.max(1, threads);
+    AtomicInteger count = new AtomicInteger();
+    this.executor = new ThreadPoolExecutor(size, size, 0, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(size * 4),
+        runnable -> {
+          Thread thread = new Thread(runnable, "epub-validator-" + count.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        },
+        new ThreadPoolExecutor.CallerRunsPolicy());
+
+    long start = System.nanoTime();
+    ValidationReport report = warmUp();
+    logger.info("EpubCheck {} warmed up in {} ms, valid={}",
+        EpubCheck.version(), (System.nanoTime() - start) / 1_000_000, report.isValid());
+  }
+
+  /**
+   * The validator shared in the JVM, such as by {@link MakeEpubFromTemplate} in background. Its
+   * threads are daemons, so they do not stop the JVM from exiting.
+   *
+   * @return the validator, created at the first call
+   */
+  public static synchronized EpubValidator getShared() {
+    if (shared == null) {
+      shared = new EpubValidator(Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+    }
+    return shared;
+  }
+
+  /**
+   * Validate the file in the calling thread.
+   *
+   * @param epubPath .epub file
+   * @return report
+   */
+  public ValidationReport validate(Path epubPath) {
+    long start = System.nanoTime();
+    ValidationReport report = new ValidationReport(epubPath);
+    new EpubCheck(epubPath.toFile(), new CapturingReport(report)).doValidate();
+    report.setMillis((System.nanoTime() - start) / 1_000_000);
+
+    logger.debug("Validated {} in {} ms: {} fatal errors, {} errors, {} warnings", epubPath,
+        report.getMillis(), report.getFatalErrorCount(), report.getErrorCount(), report.getWarningCount());
+    return report;
+  }
+
+  /**
+   * Validate the file in the pool.
+   *
+   * @param epubPath .epub file
+   * @return the report in future
+   */
+  public CompletableFuture<ValidationReport> submit(Path epubPath) {
+    return CompletableFuture.supplyAsync(() -> validate(epubPath), executor);
+  }
+
+  /**
+   * Validate the files concurrently, and wait for all the reports.
+   *
+   * @param epubPaths .epub files
+   * @return the reports, in the same order as epubPaths
+   */
+  public List<ValidationReport> validateAll(List<Path> epubPaths) {
+    List<CompletableFuture<ValidationReport>> futures = epubPaths.stream().map(this::submit).toList();
+    return futures.stream().map(CompletableFuture::join).toList();
+  }
+
+  /**
+   * Stop the pool, the files being validated are finished.
+   */
+  @Override
+  public void close() {
+    executor.shutdown();
+  }
+
+  /**
+   * Validate a tiny valid .epub made in memory, to load the schemas of EpubCheck.
+   *
+   * @return report
+   */
+  ValidationReport warmUp() {
+    ValidationReport report = new ValidationReport(Path.of("warm-up.epub"));
+    try (InputStream in = new ByteArrayInputStream(tinyEpub())) {
+      new EpubCheck(in, new CapturingReport(report), "warm-up.epub").doValidate();
+    } catch (IOException | RuntimeException e) {
+      logger.warn("Fail to warm up EpubCheck", e);
+    }
+    return report;
+  }
+
+  private static byte[] tinyEpub() throws IOException {
+    String uid = "urn:uuid:00000000-0000-0000-0000-000000000000";
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (RawZipWriter zip = new RawZipWriter(bytes)) {
+      zip.write(EpubUtils.MIMETYPE_FILE_NAME, CompressedEntry.store(EpubUtils.MIMETYPE_FILE_CONTENT.getBytes(StandardCharsets.US_ASCII)));
+      write(zip, "META-INF/container.xml", """
+          <?xml version="1.0" encoding="UTF-8"?>
+          <container version="1.0" xmlns="urn:oasis:names:tc:opendocument:xmlns:container">
+            <rootfiles>
+              <rootfile full-path="OEBPS/content.opf" media-type="application/oebps-package+xml"/>
+            </rootfiles>
+          </container>
+          """);
+      write(zip, "OEBPS/content.opf", """
+          <?xml version="1.0" encoding="utf-8"?>
+          <package xmlns="http://www.idpf.org/2007/opf" unique-identifier="BookId" version="2.0">
+            <metadata xmlns:dc="http://purl.org/dc/elements/1.1/" xmlns:opf="http://www.idpf.org/2007/opf">
+              <dc:identifier id="BookId">%s</dc:identifier>
+              <dc:title>warm-up</dc:title>
+              <dc:language>zh</dc:language>
+            </metadata>
+            <manifest>
+              <item id="ncx" href="toc.ncx" media-type="application/x-dtbncx+xml"/>
+              <item id="css" href="Styles/main.css" media-type="text/css"/>
+              <item id="chapter" href="Text/chapter.xhtml" media-type="application/xhtml+xml"/>
+            </manifest>
+            <spine toc="ncx">
+              <itemref idref="chapter"/>
+            </spine>
+          </package>
+          """.formatted(uid));
+      write(zip, "OEBPS/toc.ncx", """
+          <?xml version="1.0" encoding="utf-8"?>
+          <ncx xmlns="http://www.daisy.org/z3986/2005/ncx/" version="2005-1">
+            <head>
+              <meta name="dtb:uid" content="%s"/>
+              <meta name="dtb:depth" content="1"/>
+              <meta name="dtb:totalPageCount" content="0"/>
+              <meta name="dtb:maxPageNumber" content="0"/>
+            </head>
+            <docTitle><text>warm-up</text></docTitle>
+            <navMap>
+              <navPoint id="navPoint-1" playOrder="1">
+                <navLabel><text>warm-up</text></navLabel>
+                <content src="Text/chapter.xhtml"/>
+              </navPoint>
+            </navMap>
+          </ncx>
+          """.formatted(uid));
+      write(zip, "OEBPS/Styles/main.css", "p { margin: 0; }\n");
+      zip.write("OEBPS/Text/chapter.xhtml",
+          CompressedEntry.store(EpubUtils.renderHtml("warm-up", List.of("<p>warm-up</p>"))));
+    }
+    return bytes.toByteArray();
+  }
+
+  private static void write(RawZipWriter zip, String entryName, String content) throws IOException {
+    zip.write(entryName, CompressedEntry.store(content.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  /**
+   * Capture the messages into a {@link ValidationReport}.
+   * <p>The messages are counted here rather than by {@link MasterReport}, which also records every
+   * message id in a static HashSet, and that is not safe for concurrent validation.
+   */
+  private static class CapturingReport extends MasterReport {
+    private final ValidationReport report;
+
+    CapturingReport(ValidationReport report) {
+      this.report = report;
+      setReportingLevel(ReportingLevel.Warning);
+    }
+
+    @Override
+    public void message(MessageId id, EPUBLocation location, Object... args) {
+      Message message = getDictionary().getMessage(id);
+      if (message != null) {
+        message(message, location, args);
+      }
+    }
+
+    @Override
+    public void message(Message message, EPUBLocation location, Object... args) {
+      if (ReportingLevel.getReportingLevel(message.getSeverity()) < getReportingLevel()) {
+        return;
+      }
+      switch (message.getSeverity()) {
+        case FATAL -> report.setFatalErrorCount(report.getFatalErrorCount() + 1);
+        case ERROR -> report.setErrorCount(report.getErrorCount() + 1);
+        case WARNING -> report.setWarningCount(report.getWarningCount() + 1);
+        default -> {
+          // INFO and USAGE are below the reporting level
+        }
+      }
+      report.getMessages().add(new ValidationMessage(
+          message.getSeverity().name(),
+          message.getID().toString(),
+          location == null ? "" : location.getPath(),
+          location == null ? -1 : location.getLine(),
+          location == null ? -1 : location.getColumn(),
+          message.getMessage(args)));
+    }
+
+    @Override
+    public void info(String resource, FeatureEnum feature, String value) {}
+
+    @Override
+    public int generate() {
+      return 0;
+    }
+
+    @Override
+    public void initialize() {}
+
+    @Override
+    public int getFatalErrorCount() {
+      return report.getFatalErrorCount();
+    }
+
+    @Override
+    public int getErrorCount() {
+      return report.getErrorCount();
+    }
+
+    @Override
+    public int getWarningCount() {
+      return report.getWarningCount();
+    }
+  }
+}
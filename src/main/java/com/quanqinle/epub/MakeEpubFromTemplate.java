@@ -1,21 +1,43 @@
 package com.quanqinle.epub;
 
 import com.quanqinle.epub.entity.BookInfo;
-import com.quanqinle.epub.entity.FileInfo;
-import com.quanqinle.epub.util.Constant;
+import com.quanqinle.epub.entity.BuildReport;
+import com.quanqinle.epub.entity.ChapterTable;
+import com.quanqinle.epub.entity.ValidationReport;
+import com.quanqinle.epub.metrics.BuildListener;
+import com.quanqinle.epub.metrics.BuildRecorder;
+import com.quanqinle.epub.metrics.BuildStage;
+import com.quanqinle.epub.metrics.LoggingBuildListener;
+import com.quanqinle.epub.util.CompressionPolicy;
+import com.quanqinle.epub.util.CoverMaker;
+import com.quanqinle.epub.util.EntryCache;
+import com.quanqinle.epub.util.EpubSink;
+import com.quanqinle.epub.util.EpubTemplate;
 import com.quanqinle.epub.util.EpubUtils;
+import com.quanqinle.epub.util.FolderEpubSink;
+import com.quanqinle.epub.util.NavigationBuilder;
+import com.quanqinle.epub.util.SourceReader;
+import com.quanqinle.epub.util.TemplateText;
+import com.quanqinle.epub.util.ZipEpubSink;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.awt.AWTError;
 import java.io.*;
-import java.net.URISyntaxException;
-import java.net.URL;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.Comparator;
-import java.util.LinkedHashMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
 
 /**
  * Make the EPUB using the existing template
@@ -26,47 +48,55 @@ public class MakeEpubFromTemplate {
 
   private static final Logger logger = LoggerFactory.getLogger(MakeEpubFromTemplate.class);
 
+  /** files in the template which have placeholders, or are replaced */
+  private static final String COVER_HTML = "OEBPS/Text/cover.xhtml";
+  private static final String TOC_HTML = "OEBPS/Text/toc.xhtml";
+  private static final String TOC_NCX = "OEBPS/toc.ncx";
+  private static final String CONTENT_OPF = "OEBPS/content.opf";
+  private static final String COVER_JPG = "OEBPS/Images/cover.jpg";
+  /** files written when filled, not when the template is copied */
+  private static final Set<String> FILLED_FILES = Set.of(COVER_HTML, TOC_HTML, TOC_NCX, CONTENT_OPF);
+
   private final BookInfo book;
 
-  /** the full path of epub template, copy from it, do not modify the original files */
-  private Path templateSrcPath;
-  /** the temp path is inside output path. copy epub template to this folder, then modify files inside it */
+  /** the epub template, shared by the builds, do not modify it */
+  private final EpubTemplate template;
+  /** the temp path is inside output path. copy epub template to this folder, then modify files inside it. null if no output path */
   private final Path tempPath;
 
-  /** `&lt;navPoint>&lt;/navPoint>` list in `toc.ncx`, for making toc tree */
-  private String navPointList = "";
-  /** `&lt;item\>&lt;/item>` list in `content.opf` */
-  private String itemList = "";
-  /** `&lt;itemref>&lt;/itemref>` list in `content.opf` */
-  private String itemrefList = "";
-  /** `&lt;reference>&lt;/reference>` list in `content.opf` */
-  private String referenceList = "";
-  /**
-   * `&lt;li>&lt;/li>` list in `toc.xhtml`
-   */
-  private String tocItemList = "";
+  /** navPoint list in `toc.ncx`, item/itemref/reference list in `content.opf`, and toc item list in `toc.xhtml` */
+  private NavigationBuilder navigation;
+
+  /** notified of the stages and the report of {@link #make()} */
+  private final List<BuildListener> listeners = new ArrayList<>();
+  /** the converter of the last {@link #genBodyHtmls(EpubSink)} */
+  private ConvertTxtToHtmls converter;
+  /** validates the .epub if book.validate, null to use {@link EpubValidator#getShared()} */
+  private EpubValidator validator;
+  /** the store of compressed files shared with other books, null to use book.entryStore */
+  private EntryCache entryStore;
+  /** the cover picture made by {@link #makeCover()}, null to use the one of the template */
+  private byte[] coverJpg;
 
   /**
    * Constructor
    *
    * @param bookInfo output book
+   * @throws IllegalStateException if the built-in template is not found
    */
   public MakeEpubFromTemplate(BookInfo bookInfo) {
     this.book = bookInfo;
-    this.tempPath = book.getOutputDir().resolve(bookInfo.getTempFolder());
+    this.tempPath = book.getOutputDir() == null ? null : book.getOutputDir().resolve(bookInfo.getTempFolder());
+    this.listeners.add(new LoggingBuildListener());
 
     if (bookInfo.getTemplateSrcPath() != null) {
-      this.templateSrcPath = bookInfo.getTemplateSrcPath();
-    } else {
       try {
-        // The codes below will run error, if execute jar created from this project which resource folder in it.
-        URL templateSrcUrl = getClass().getClassLoader().getResource(Constant.TEMPLATE_FOLDER);
-        assert templateSrcUrl != null;
-        this.templateSrcPath = Paths.get(templateSrcUrl.toURI());
-      } catch (URISyntaxException e) {
-        logger.error("Fail to find the epub source template: {}", this.templateSrcPath);
-        System.exit(0);
+        this.template = EpubTemplate.of(bookInfo.getTemplateSrcPath());
+      } catch (IOException | RuntimeException e) {
+        throw new IllegalStateException("Fail to read the epub source template: " + bookInfo.getTemplateSrcPath(), e);
       }
+    } else {
+      this.template = EpubTemplate.builtIn();
     }
   }
 
@@ -76,101 +106,382 @@ public class MakeEpubFromTemplate {
    * The method is an all-in-one method, it includes the whole steps of read-parse-rewrite, etc.,
    * so you can use it to make a .epub book just after the Constructor() method.
    *
+   * If book.validate, the .epub is validated in background, see {@link BuildReport#getValidation()}.
+   *
+   * @return the time of each stage and the size of the book
+   * @throws IOException -
+   */
+  public BuildReport make() throws IOException {
+    BuildRecorder recorder = new BuildRecorder(book, getEpubPath(), listeners);
+
+    if (book.isDirectZip() || book.isIncremental() || getEntryStore() != null) {
+      makeDirectZip(recorder);
+    } else {
+      recorder.stage(BuildStage.COPY_TEMPLATE, this::copyTemplateToTempPath);
+      recorder.stage(BuildStage.GEN_BODY_HTMLS, () -> genBodyHtmls(new FolderEpubSink(tempPath)));
+
+      recorder.stage(BuildStage.MAKE_NAVIGATION, this::makeContentForTocNcxAndContentOpf);
+      recorder.stage(BuildStage.MAKE_COVER, this::makeCover);
+      recorder.stage(BuildStage.SET_BOOK_COVER, this::setBookCover);
+      recorder.stage(BuildStage.SET_BOOK_TOC_HTML, this::setBookTocHtml);
+      recorder.stage(BuildStage.MODIFY_TOC_NCX, this::modifyTocNcx);
+      recorder.stage(BuildStage.MODIFY_CONTENT_OPF, this::modifyContentOpf);
+
+      recorder.stage(BuildStage.ZIP_EPUB, this::zipEpub);
+    }
+
+    BuildReport report = recorder.finish(converter.getLinesRead(), converter.getChapters());
+    if (book.isValidate()) {
+      report.setValidation(validate());
+    }
+    return report;
+  }
+
+  /**
+   * Make the .epub from a text stream into a stream, without any file or temp folder.
+   * <p>
+   * book.srcTxtPath and book.outputDir are not used. The text is read into memory, and the .epub is
+   * written straight into out, as if book.directZip. It is not validated even if book.validate,
+   * since the validator reads a file.
+   *
+   * @param text the plain text, not closed by this method
+   * @param out where to write the .epub, not closed by this method
+   * @return the time of each stage and the size of the book, without the .epub path
    * @throws IOException -
    */
-  public void make() throws IOException {
-    copyTemplateToTempPath();
-    genBodyHtmls();
+  public BuildReport make(InputStream text, OutputStream out) throws IOException {
+    BuildRecorder recorder = new BuildRecorder(book, null, listeners);
+
+    // close the zip, but leave out open
+    OutputStream epub = new BufferedOutputStream(out) {
+      @Override
+      public void close() throws IOException {
+        flush();
+      }
+    };
+    ZipEpubSink sink = new ZipEpubSink(epub, getEntryStore(), getCompressionPolicy());
+    try (sink; SourceReader source = SourceReader.read(text, book.getCharset())) {
+      recorder.stage(BuildStage.GEN_BODY_HTMLS, () -> genBodyHtmls(sink, source));
+      recorder.stage(BuildStage.MAKE_NAVIGATION, this::makeContentForTocNcxAndContentOpf);
+      recorder.stage(BuildStage.MAKE_COVER, this::makeCover);
+      recorder.stage(BuildStage.WRITE_TEMPLATE, () -> writeTemplate(sink));
+      recorder.stage(BuildStage.ZIP_EPUB, sink::finish);
+    }
+    if (book.isValidate()) {
+      logger.info("[{}] is not validated, since it is written into a stream", book.getBookTitle());
+    }
+
+    recorder.reused(sink.getReusedEntries(), sink.getReusedBytes());
+    return recorder.finish(converter.getLinesRead(), converter.getChapters(),
+        sink.getEntries(), sink.getBytesWritten(), sink.getSize());
+  }
+
+  /**
+   * Make the .epub from a text channel into a channel, see {@link #make(InputStream, OutputStream)}.
+   *
+   * @param text the plain text, not closed by this method
+   * @param out where to write the .epub, not closed by this method
+   * @return the time of each stage and the size of the book, without the .epub path
+   * @throws IOException -
+   */
+  public BuildReport make(ReadableByteChannel text, WritableByteChannel out) throws IOException {
+    return make(Channels.newInputStream(text), Channels.newOutputStream(out));
+  }
+
+  /**
+   * Validate the .epub in background, then notify the listeners.
+   *
+   * @return the report in future
+   */
+  private CompletableFuture<ValidationReport> validate() {
+    EpubValidator epubValidator = validator != null ? validator : EpubValidator.getShared();
+    return epubValidator.submit(getEpubPath()).thenApply(report -> {
+      for (BuildListener listener : listeners) {
+        try {
+          listener.validationFinished(book, report);
+        } catch (RuntimeException e) {
+          logger.warn("Build listener {} failed", listener.getClass().getName(), e);
+        }
+      }
+      return report;
+    });
+  }
+
+  /**
+   * Set the validator used if book.validate, such as one shared by a batch.
+   *
+   * @param validator validator, null to use {@link EpubValidator#getShared()}
+   * @return this
+   */
+  public MakeEpubFromTemplate setValidator(EpubValidator validator) {
+    this.validator = validator;
+    return this;
+  }
 
-    makeContentForTocNcxAndContentOpf();
-    setBookCover();
-    setBookTocHtml();
-    modifyTocNcx();
-    modifyContentOpf();
+  /**
+   * Set the store of compressed files shared with other books, such as one shared by a batch.
+   *
+   * @param entryStore store, null to use book.entryStore
+   * @return this
+   */
+  public MakeEpubFromTemplate setEntryStore(EntryCache entryStore) {
+    this.entryStore = entryStore;
+    return this;
+  }
 
-    zipEpub();
+  /**
+   * @return the store set, or one of book.entryStore, null if neither
+   * @throws IOException if the folder of book.entryStore can not be created
+   */
+  private EntryCache getEntryStore() throws IOException {
+    if (entryStore == null && book.getEntryStore() != null) {
+      entryStore = new EntryCache(book.getEntryStore());
+    }
+    return entryStore;
+  }
+
+  /**
+   * Add a listener of the stages and the report of {@link #make()}.
+   * <p>A {@link LoggingBuildListener} is added by default.
+   *
+   * @param listener listener
+   * @return this
+   */
+  public MakeEpubFromTemplate addListener(BuildListener listener) {
+    listeners.add(listener);
+    return this;
   }
 
   /**
    * Zip folder to epub.
    * <p>
-   * Use {@link com.quanqinle.epub.util.EpubUtils#zipEpub(Path epubSrcFolderPath, Path epubFilePath)}.
+   * Use {@link com.quanqinle.epub.util.EpubUtils#zipEpub(Path, Path, CompressionPolicy, int)}.
    * Folder is from the copy of original template.
    * epub is from book.outputDir+book.title+'.epub'.
    *
    * @throws IOException -
    */
   private void zipEpub() throws IOException {
-    EpubUtils.zipEpub(this.tempPath, book.getOutputDir().resolve(book.getBookTitle() + ".epub"));
+    EpubUtils.zipEpub(this.tempPath, getEpubPath(), getCompressionPolicy(), book.getZipThreads());
+  }
+
+  /**
+   * @return the default policy overridden by book.compressionLevels
+   */
+  private CompressionPolicy getCompressionPolicy() {
+    return CompressionPolicy.defaultPolicy().withLevels(book.getCompressionLevels());
+  }
+
+  /**
+   * @return book.outputDir+book.title+'.epub'
+   */
+  public Path getEpubPath() {
+    return book.getOutputDir().resolve(book.getBookTitle() + ".epub");
+  }
+
+  /**
+   * @return the folder of compressed files for incremental rebuilding, book.outputDir+book.title+'.epub.cache'
+   */
+  public Path getCachePath() {
+    return book.getOutputDir().resolve(book.getBookTitle() + ".epub.cache");
+  }
+
+  /**
+   * Make the .epub without the temp folder.
+   * <p>
+   * The .xhtml files, the modified template files and the other template files are written straight into the .epub.
+   * <p>
+   * If there is an entry store, the files already compressed for any book are not compressed
+   * again. Otherwise, if incremental, the files unchanged since the previous build are not
+   * compressed again, and the files not used any more are pruned from the cache. A store is never
+   * pruned, since the other books use it.
+   * <p>
+   * If any stage fails, the partial .epub is deleted.
+   *
+   * @param recorder records the time of each stage
+   * @throws IOException -
+   */
+  private void makeDirectZip(BuildRecorder recorder) throws IOException {
+    Files.createDirectories(book.getOutputDir());
+
+    EntryCache store = getEntryStore();
+    EntryCache cache = store == null && book.isIncremental() ? new EntryCache(getCachePath()) : null;
+    Path epubPath = getEpubPath();
+    try (ZipEpubSink sink = new ZipEpubSink(epubPath, store != null ? store : cache, getCompressionPolicy())) {
+      recorder.stage(BuildStage.GEN_BODY_HTMLS, () -> genBodyHtmls(sink));
+      recorder.stage(BuildStage.MAKE_NAVIGATION, this::makeContentForTocNcxAndContentOpf);
+      recorder.stage(BuildStage.MAKE_COVER, this::makeCover);
+      recorder.stage(BuildStage.WRITE_TEMPLATE, () -> writeTemplate(sink));
+      recorder.stage(BuildStage.ZIP_EPUB, () -> {
+        sink.finish();
+        if (cache != null) {
+          cache.prune();
+        }
+      });
+      recorder.reused(sink.getReusedEntries(), sink.getReusedBytes());
+    } catch (IOException | RuntimeException e) {
+      // not finished, remove the partial .epub
+      Files.deleteIfExists(epubPath);
+      throw e;
+    }
+  }
+
+  /**
+   * Write all files of the template into the sink, filling the placeholders on the way.
+   *
+   * @param sink where to write
+   * @throws IOException -
+   */
+  void writeTemplate(EpubSink sink) throws IOException {
+    logger.info("source template = {}", template.getSource());
+
+    for (String entryName : template.getEntryNames()) {
+      switch (entryName) {
+        case COVER_HTML -> sink.write(entryName, renderToBytes(COVER_HTML, coverHtmlValues()));
+        case TOC_HTML -> sink.write(entryName, renderToBytes(TOC_HTML, tocHtmlValues()));
+        case TOC_NCX -> sink.write(entryName, renderToBytes(TOC_NCX, tocNcxValues()));
+        case CONTENT_OPF -> sink.write(entryName, renderToBytes(CONTENT_OPF, contentOpfValues()));
+        case COVER_JPG -> sink.write(entryName, coverJpg != null ? coverJpg : template.getBytes(entryName));
+        default -> sink.write(entryName, template.getBytes(entryName));
+      }
+    }
   }
 
   /**
    * Copy epub source template to the output directory.
    * This method will delete (if exist) and create the output directory.
+   * <p>
+   * The files with placeholders are written later, when filled.
    */
   private void copyTemplateToTempPath() throws IOException {
-
-    Path src = templateSrcPath;
     Path dst = tempPath;
-    // Files.walk(src).forEach(System.out::println);
 
-    logger.info("source template = {}", src);
+    logger.info("source template = {}", template.getSource());
     logger.info("output folder = {}", dst);
 
     if (Files.exists(dst)) {
-      Files.walk(dst)
-              .sorted(Comparator.reverseOrder())
-              .map(Path::toFile)
-              .forEach(File::delete);
+      try (Stream<Path> paths = Files.walk(dst)) {
+        paths.sorted(Comparator.reverseOrder())
+            .map(Path::toFile)
+            .forEach(File::delete);
+      }
     }
     Files.createDirectories(dst);
 
-    Files.walk(src)
-        .forEach(
-            source -> {
-              try {
-                Files.copy(
-                    source,
-                    dst.resolve(src.relativize(source)),
-                    StandardCopyOption.REPLACE_EXISTING);
-              } catch (IOException e) {
-                e.printStackTrace();
-              }
-            });
+    for (String entryName : template.getEntryNames()) {
+      if (FILLED_FILES.contains(entryName)) {
+        continue;
+      }
+      Path target = dst.resolve(entryName);
+      Files.createDirectories(target.getParent());
+      Files.write(target, template.getBytes(entryName));
+    }
   }
 
   /**
-   * Modify cover.xhtml
+   * Fill the placeholders of a template file, and write it into the temp folder.
    *
+   * @param entryName the file in the template
+   * @param values slot name -> value, see {@link TemplateText#render}
    * @throws IOException -
    */
-  private void setBookCover() throws IOException {
-    Path coverHtml = tempPath.resolve("OEBPS/Text/cover.xhtml");
-    String content = Files.readString(coverHtml);
-    content = content.replace("[BOOK'S TITLE]", book.getBookTitle());
-    Files.writeString(coverHtml, content);
+  private void renderToFile(String entryName, Map<String, ?> values) throws IOException {
+    try (Writer out = Files.newBufferedWriter(tempPath.resolve(entryName), StandardCharsets.UTF_8)) {
+      template.getText(entryName).render(out, values);
+    }
+  }
 
+  /**
+   * Fill the placeholders of a template file.
+   *
+   * @param entryName the file in the template
+   * @param values slot name -> value, see {@link TemplateText#render}
+   * @return the content in UTF-8
+   * @throws IOException -
+   */
+  private byte[] renderToBytes(String entryName, Map<String, ?> values) throws IOException {
+    TemplateText text = template.getText(entryName);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(text.estimateLength(values) + 1024);
+    try (Writer out = new OutputStreamWriter(bytes, StandardCharsets.UTF_8)) {
+      text.render(out, values);
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Make the cover picture: book.coverJpgFullPath downscaled if larger than book.coverMaxSize, or
+   * a generated one if not given. Made by {@link CoverMaker#getShared()}, so the same cover is not
+   * made again in the JVM.
+   * <p>
+   * Making the cover is optional. If it fails, such as on a headless system without fonts, the given
+   * cover is used as is, or the cover of the template if none is given.
+   *
+   * @throws IOException if fail to read book.coverJpgFullPath
+   */
+  private void makeCover() throws IOException {
+    coverJpg = null;
+    CoverMaker coverMaker = CoverMaker.getShared();
     Path src = book.getCoverJpgFullPath();
-    Path dst = tempPath.resolve("OEBPS/Images/cover.jpg");
     if (src != null && Files.exists(src)) {
-      Files.copy(src, dst, StandardCopyOption.REPLACE_EXISTING);
-    } else {
-      // TODO maybe we should create a jpg based on the book title
+      byte[] cover = Files.readAllBytes(src);
+      try {
+        coverJpg = coverMaker.optimize(cover, book.getCoverMaxSize(), book.getCoverQuality());
+      } catch (IOException | RuntimeException | LinkageError | AWTError | InternalError e) {
+        logger.warn("Fail to downscale the cover {}, use it as is", src, e);
+        coverJpg = cover;
+      }
+      return;
+    }
+
+    if (src != null) {
+      logger.warn("Cover not found: {}", src);
+    }
+    if (book.isGenerateCover() && book.getTemplateSrcPath() == null) {
+      try {
+        coverJpg = coverMaker.generate(book.getBookTitle(), book.getAuthor(), book.getCoverMaxSize(), book.getCoverQuality());
+      } catch (IOException | RuntimeException | LinkageError | AWTError | InternalError e) {
+        logger.warn("Fail to generate the cover of [{}], use the cover of the template", book.getBookTitle(), e);
+        coverJpg = null;
+      }
     }
   }
 
+  /**
+   * Modify cover.xhtml, and write the cover picture made by {@link #makeCover()}
+   *
+   * @throws IOException -
+   */
+  private void setBookCover() throws IOException {
+    renderToFile(COVER_HTML, coverHtmlValues());
+
+    if (coverJpg != null) {
+      Files.write(tempPath.resolve(COVER_JPG), coverJpg);
+    }
+  }
+
+  /**
+   * @return the values of the placeholders in cover.xhtml
+   */
+  private Map<String, Object> coverHtmlValues() {
+    return Map.of("BOOK'S TITLE", book.getBookTitle());
+  }
+
   /**
    * Modify toc.xhtml
    *
    * @throws IOException -
    */
   private void setBookTocHtml() throws IOException {
-    Path tocHtml = tempPath.resolve("OEBPS/Text/toc.xhtml");
-    String content = Files.readString(tocHtml);
-    content =
-        content.replace("[toc item]", this.tocItemList)
-                .replace("[TOC TITLE]", book.getTocTitle());
-    Files.writeString(tocHtml, content);
+    renderToFile(TOC_HTML, tocHtmlValues());
+  }
+
+  /**
+   * @return the values of the placeholders in toc.xhtml
+   */
+  private Map<String, Object> tocHtmlValues() {
+    return Map.of(
+        "toc item", navigation.getTocItemsMarkup(),
+        "TOC TITLE", book.getTocTitle());
   }
 
   /**
@@ -178,164 +489,99 @@ public class MakeEpubFromTemplate {
    * <p>and init some parameters which could be used when setting toc.xhtml, toc.ncx, content.opf, etc.
    *
    * @author quanqinle
+   * @param sink where to write HTML files
    */
-  private void genBodyHtmls() {
-    ConvertTxtToHtmls parse = new ConvertTxtToHtmls(book);
-    parse.convert();
+  private void genBodyHtmls(EpubSink sink) {
+    converter = new ConvertTxtToHtmls(book, sink);
+    converter.convert();
+  }
+
+  /**
+   * Generate HTML files of the book from the source instead of book.srcTxtPath.
+   *
+   * @param sink where to write HTML files
+   * @param source the plain text
+   */
+  private void genBodyHtmls(EpubSink sink, SourceReader source) {
+    converter = new ConvertTxtToHtmls(book, sink);
+    converter.convert(source);
   }
 
   /**
    * Modify toc.ncx
    */
   private void modifyTocNcx() throws IOException {
-    Path tocNcxPath = tempPath.resolve("OEBPS/toc.ncx");
-
-    String content = Files.readString(tocNcxPath);
-    content =
-        content
-            .replace("[ISBN]", book.getIsbn())
-            .replace("[BOOK'S TITLE]", book.getBookTitle())
-            .replace("[navPoint LIST]", this.navPointList);
+    renderToFile(TOC_NCX, tocNcxValues());
+  }
 
-    Files.writeString(tocNcxPath, content);
+  /**
+   * @return the values of the placeholders in toc.ncx
+   */
+  private Map<String, Object> tocNcxValues() {
+    return Map.of(
+        "ISBN", book.getIsbn(),
+        "BOOK'S TITLE", book.getBookTitle(),
+        "navPoint LIST", navigation.getNavPointsMarkup());
   }
 
   /**
    * Modify content.opf
    */
   private void modifyContentOpf() throws IOException {
-    Path contentOpfPath = tempPath.resolve("OEBPS/content.opf");
-
-    String content = Files.readString(contentOpfPath);
-    content =
-        content
-            .replace("[UUID]", book.getUuid())
-            .replace("[ISBN]", book.getIsbn())
-            .replace("[BOOK'S TITLE]", book.getBookTitle())
-            .replace("[NAME LASTNAME]", book.getAuthor())
-            .replace("[LASTNAME, NAME]", book.getAuthor())
-            .replace("[LANGUAGE]", book.getLanguage())
-            .replace("[DATE]", book.getCreateDate())
-            .replace("[manifest item list]", this.itemList)
-            .replace("[spine itemref list]", this.itemrefList)
-            .replace("[guide reference list]", this.referenceList);
-
-    Files.writeString(contentOpfPath, content);
+    renderToFile(CONTENT_OPF, contentOpfValues());
+  }
+
+  /**
+   * @return the values of the placeholders in content.opf
+   */
+  private Map<String, Object> contentOpfValues() {
+    Map<String, Object> values = new HashMap<>();
+    values.put("UUID", book.getUuid());
+    values.put("ISBN", book.getIsbn());
+    values.put("BOOK'S TITLE", book.getBookTitle());
+    values.put("NAME LASTNAME", book.getAuthor());
+    values.put("LASTNAME, NAME", book.getAuthor());
+    values.put("LANGUAGE", book.getLanguage());
+    values.put("DATE", book.getCreateDate());
+    values.put("manifest item list", navigation.getItemsMarkup());
+    values.put("spine itemref list", navigation.getItemrefsMarkup());
+    values.put("guide reference list", navigation.getReferencesMarkup());
+    return values;
   }
 
   /**
    * Organize contents for toc.ncx and content.opf.
    */
-  private void makeContentForTocNcxAndContentOpf() {
-    int index = 1;
+  void makeContentForTocNcxAndContentOpf() {
+    ChapterTable table = book.getChapterTable();
+    navigation = new NavigationBuilder(3 + table.size());
 
     // cover
-    navPointList =
-        navPointList.concat(
-            String.format(
-                Constant.FORMAT_NAV_POINT, index, index, book.getCoverTitle(), "cover.xhtml"));
-    referenceList =
-        referenceList.concat(
-            String.format(Constant.FORMAT_REFERENCE, "cover", "cover.xhtml", book.getCoverTitle()));
-    tocItemList =
-        tocItemList.concat(
-            String.format(Constant.FORMAT_TOC_ITEM, "cover.xhtml", book.getCoverTitle()));
-    index++;
+    navigation.addTemplateFile("cover", "cover.xhtml", book.getCoverTitle());
 
     // TOC
-    navPointList =
-        navPointList.concat(
-            String.format(
-                Constant.FORMAT_NAV_POINT, index, index, book.getTocTitle(), "toc.xhtml"));
-    referenceList =
-        referenceList.concat(
-            String.format(Constant.FORMAT_REFERENCE, "toc", "toc.xhtml", book.getTocTitle()));
-    tocItemList =
-        tocItemList.concat(
-            String.format(Constant.FORMAT_TOC_ITEM, "toc.xhtml", book.getTocTitle()));
-    index++;
-
-    // front matter
-    if (!book.getFrontMatter().isEmpty()) {
-      String frontMatterTitle = book.getFrontMatterTitle();
-      FileInfo frontMatter = book.getFrontMatter().get(frontMatterTitle);
-      String fileName = frontMatter.getFullName();
-      navPointList =
-              navPointList.concat(
-                      String.format(Constant.FORMAT_NAV_POINT, index, index, frontMatterTitle, fileName));
-      itemList =
-              itemList.concat(String.format(Constant.FORMAT_ITEM, fileName, fileName));
-      itemrefList =
-              itemrefList.concat(String.format(Constant.FORMAT_ITEMREF, fileName));
-      referenceList =
-              referenceList.concat(
-                      String.format(Constant.FORMAT_REFERENCE, "text", fileName, frontMatterTitle));
-      tocItemList =
-              tocItemList.concat(String.format(Constant.FORMAT_TOC_ITEM, fileName, frontMatterTitle));
-      index++;
-    }
-
-    if (book.isHasManyBooks()) {
-      String navPointEnd = "</navPoint>";
-      // some sub-book in it
-      for (LinkedHashMap<String, FileInfo> chapterMap : book.getSubBook().values()) {
-        boolean isFirst = true;
-        for (String chapterTitle : chapterMap.keySet()) {
-          FileInfo fileInfo = chapterMap.get(chapterTitle);
-
-          String fileName = fileInfo.getName();
-          String fileFullName = fileInfo.getFullName();
-
-          if (isFirst) {
-            String subBookNavPoint = Constant.FORMAT_NAV_POINT.split(navPointEnd)[0];
-            navPointList =
-                    navPointList.concat(
-                            String.format(subBookNavPoint, index, index, chapterTitle, fileFullName));
-            isFirst = false;
-          } else {
-            navPointList =
-                    navPointList.concat(
-                            String.format(Constant.FORMAT_NAV_POINT, index, index, chapterTitle, fileFullName));
+    navigation.addTemplateFile("toc", "toc.xhtml", book.getTocTitle());
+
+    // front matter, then sub-books with their chapters, or chapters in ONE book
+    boolean isNavPointOpen = false;
+    for (int i = 0; i < table.size(); i++) {
+      String fileName = table.getFullName(i);
+      switch (table.getKind(i)) {
+        case FRONT_MATTER -> navigation.addFile(fileName, fileName, table.getTitle(i));
+        case VOLUME -> {
+          if (isNavPointOpen) {
+            navigation.closeNavPoint();
           }
-
-          itemList =
-                  itemList.concat(String.format(Constant.FORMAT_ITEM, fileFullName, fileName));
-          itemrefList =
-                  itemrefList.concat(String.format(Constant.FORMAT_ITEMREF, fileName));
-          referenceList =
-                  referenceList.concat(
-                          String.format(Constant.FORMAT_REFERENCE, "text", fileFullName, chapterTitle));
-          tocItemList =
-                  tocItemList.concat(String.format(Constant.FORMAT_TOC_ITEM, fileFullName, chapterTitle));
-
-          index++;
+          navigation.addFileAndOpenNavPoint(table.getName(i), fileName, table.getTitle(i));
+          isNavPointOpen = true;
         }
-        navPointList = navPointList.concat(navPointEnd + "\n");
-      }
-    } else {
-      // chapters in ONE book
-      for (String chapterTitle : book.getChapterMap().keySet()) {
-        FileInfo fileInfo = book.getChapterMap().get(chapterTitle);
-
-        String fileName = fileInfo.getName();
-        String fileFullName = fileInfo.getFullName();
-        navPointList =
-                navPointList.concat(
-                        String.format(Constant.FORMAT_NAV_POINT, index, index, chapterTitle, fileFullName));
-        itemList =
-                itemList.concat(String.format(Constant.FORMAT_ITEM, fileFullName, fileName));
-        itemrefList =
-                itemrefList.concat(String.format(Constant.FORMAT_ITEMREF, fileName));
-        referenceList =
-                referenceList.concat(
-                        String.format(Constant.FORMAT_REFERENCE, "text", fileFullName, chapterTitle));
-        tocItemList =
-                tocItemList.concat(String.format(Constant.FORMAT_TOC_ITEM, fileFullName, chapterTitle));
-
-        index++;
+        case PART -> navigation.addPart(table.getName(i), fileName);
+        default -> navigation.addFile(table.getName(i), fileName, table.getTitle(i));
       }
     }
-
+    if (isNavPointOpen) {
+      navigation.closeNavPoint();
+    }
   }
 
 }
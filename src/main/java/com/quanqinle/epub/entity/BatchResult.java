@@ -0,0 +1,91 @@
+package com.quanqinle.epub.entity;
+
+import java.nio.file.Path;
+
+/**
+ * The result of converting one book in a batch
+ *
+ * @author quanqinle
+ */
+public class BatchResult {
+  /** the bookinfo.yaml of the book */
+  Path bookInfoPath;
+  /** the title of the book, empty if bookinfo.yaml can not be read */
+  String bookTitle = "";
+  /** the .epub file, null if failed */
+  Path epubPath;
+  /** true if the .epub is made */
+  boolean success;
+  /** time cost in milliseconds */
+  long millis;
+  /** the error message if failed */
+  String error = "";
+  /** the messages of EpubCheck, null if not validated */
+  ValidationReport validation;
+  /** the time of each stage and the size of the book, null if failed */
+  BuildReport report;
+
+  public BatchResult(Path bookInfoPath) {
+    this.bookInfoPath = bookInfoPath;
+  }
+
+  public Path getBookInfoPath() {
+    return bookInfoPath;
+  }
+
+  public String getBookTitle() {
+    return bookTitle;
+  }
+
+  public void setBookTitle(String bookTitle) {
+    this.bookTitle = bookTitle;
+  }
+
+  public Path getEpubPath() {
+    return epubPath;
+  }
+
+  public void setEpubPath(Path epubPath) {
+    this.epubPath = epubPath;
+  }
+
+  public boolean isSuccess() {
+    return success;
+  }
+
+  public void setSuccess(boolean success) {
+    this.success = success;
+  }
+
+  public long getMillis() {
+    return millis;
+  }
+
+  public void setMillis(long millis) {
+    this.millis = millis;
+  }
+
+  public String getError() {
+    return error;
+  }
+
+  public void setError(String error) {
+    this.error = error;
+  }
+
+  public ValidationReport getValidation() {
+    return validation;
+  }
+
+  public void setValidation(ValidationReport validation) {
+    this.validation = validation;
+  }
+
+  public BuildReport getReport() {
+    return report;
+  }
+
+  public void setReport(BuildReport report) {
+    this.report = report;
+  }
+}
@@ -1,7 +1,6 @@
 package com.quanqinle.epub.entity;
 
 import java.nio.file.Path;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -13,6 +12,8 @@ import java.util.Map;
 public class BookInfo {
   /** original plain text file */
   Path srcTxtPath;
+  /** the charset of {@link #srcTxtPath}, such as UTF-8, GB18030. If null, detect it automatically */
+  String charset;
   /** the directory for output */
   Path outputDir;
   /** the full source path of epub template folder. If null, use default template built-in this project */
@@ -36,8 +37,23 @@ public class BookInfo {
    * the chapter title of cover, used in places like these: &lt;title>&lt;h1>, etc.
    */
   String coverTitle = "封面";
-  /** full path of the cover picture, ONLY .jpg allowed current */
+  /** full path of the cover picture, a JPEG, PNG, GIF or BMP, which is written as a JPEG */
   Path coverJpgFullPath;
+  /**
+   * The max width and height of the cover picture in pixels. A larger one is downscaled and
+   * recompressed, see {@link com.quanqinle.epub.util.CoverMaker}. It is also the height of a
+   * generated cover.
+   * <p>1600 by default. 0 to keep the picture as it is.
+   */
+  int coverMaxSize = 1600;
+  /** the JPEG quality of a cover downscaled or generated, from 0 to 1. 0.85 by default */
+  float coverQuality = 0.85f;
+  /**
+   * Generate a cover of the title and the author, if {@link #coverJpgFullPath} is not given and
+   * the template is the built-in one.
+   * <p>`true` by default. `false` to use the cover.jpg of the template.
+   */
+  boolean generateCover = true;
 
   /**
    * the chapter title of TOC, used in places like these: &lt;title>&lt;h1>, etc.
@@ -49,12 +65,6 @@ public class BookInfo {
   /** the file name of front matter without suffix */
   private String frontMatterFile = "front_matter";
 
-  /**
-   * front matter in the book
-   * <p> title -> file
-   */
-  LinkedHashMap<String, FileInfo> frontMatter = new LinkedHashMap<>();
-
   /** Note: modify this regex if the sub-book title is not match in your book. */
   List<String> bookTitleRegexList =
           List.of("^第.{1,10}卷.{1,20}[^完]", "^第.{1,10}册.{1,20}[^完]");
@@ -63,11 +73,20 @@ public class BookInfo {
   List<String> chapterTitleRegexList =
           List.of("^第.{1,10}章.{1,20}[^完]", "^第.{1,10}节.{1,20}[^完]", "^初章.{1,20}[^完]");
 
+  /**
+   * If no line in a sample of the source matches {@link #chapterTitleRegexList}, detect the chapter
+   * titles by common patterns, such as "第N章", "Chapter N", "1. title", and add them to it.
+   * <p>`true` by default.
+   */
+  boolean detectChapterTitles = true;
+
   /**
    * Replace strings in the map.
    * <p>old string -> new string
    * <p>For example:
    * <p>if some Strings have to be trimmed in the whole book.
+   * <p>All the entries are replaced in one scan of a line, the longest old string at the leftmost
+   * position wins. See {@link com.quanqinle.epub.util.MultiReplacer}.
    */
   Map<String, String> replaceMap;
   /**
@@ -76,17 +95,77 @@ public class BookInfo {
    */
   boolean hasManyBooks = false;
   /**
-   * If only one book/volume in the book, use this variable.
-   * <p> chapter title -> file
-   * <p> Use {@link #chapterMap} or {@link #subBook}.
+   * The max bytes of the body of a .xhtml file. A longer front matter, sub-book or chapter is split
+   * at paragraph boundaries into parts, such as chapter-001.xhtml, chapter-001-part2.xhtml, which
+   * share one TOC entry. Large .xhtml files make e-readers slow to turn pages.
+   * <p>256KB by default, 0 means no limit.
+   */
+  long maxHtmlBytes = 256 * 1024;
+  /**
+   * The max lines of the body of a .xhtml file, including the title, split like {@link #maxHtmlBytes}.
+   * <p>0 by default, which means no limit.
+   */
+  int maxHtmlParagraphs = 0;
+  /**
+   * Read the source line by line and write each .xhtml as soon as its chapter closes.
+   * <p>Only the TOC metadata stays in memory, so the peak memory is bounded by the largest chapter.
+   * <p>`false` by default.
+   */
+  boolean streaming = false;
+  /**
+   * The number of threads writing .xhtml files.
+   * <p>`1` by default, which means writing them one by one.
+   */
+  int writerThreads = 1;
+  /**
+   * The number of threads parsing the source. If more than 1, a large source is split into ranges
+   * at line boundaries, whose lines are classified concurrently, then the chapters are built in
+   * order, the same as parsing it by one thread.
+   * <p>`1` by default.
+   */
+  int parseThreads = 1;
+  /**
+   * Write all files straight into the .epub, without the temp folder {@link #tempFolder}.
+   * <p>`false` by default, the temp folder is kept, which is useful for debugging.
+   */
+  boolean directZip = false;
+  /**
+   * Keep the compressed files in a cache folder beside the .epub, and reuse them in the next build
+   * if their content is not changed. It implies {@link #directZip}.
+   * <p>`false` by default.
+   */
+  boolean incremental = false;
+  /**
+   * A folder of compressed files shared by many books, such as the editions of the same novel. A
+   * file already compressed for any book is reused, instead of compressed again, see
+   * {@link com.quanqinle.epub.util.EntryCache}. It implies {@link #directZip}, and takes the place
+   * of the cache of {@link #incremental}.
+   * <p>null by default, not used.
+   */
+  Path entryStore;
+  /**
+   * The number of threads compressing files when zipping the temp folder into the .epub.
+   * <p>1 by default, i.e. compress them one by one. Not used by {@link #directZip}, in which the
+   * files are compressed by the {@link #writerThreads}.
+   */
+  int zipThreads = 1;
+  /**
+   * Override the deflate level of the files in the .epub by suffix, 0 means stored.
+   * <p>suffix without dot -> level 0-9, such as: xhtml -> 9
+   * <p>By default, the media already compressed, such as .jpg, .png, are stored, the others are
+   * deflated at the default level. See {@link com.quanqinle.epub.util.CompressionPolicy}.
    */
-  LinkedHashMap<String, FileInfo> chapterMap = new LinkedHashMap<>();
+  Map<String, Integer> compressionLevels;
   /**
-   * If two books/volumes or more in the book, use this variable.
-   * <p> sub-book title -> chapter map [chapter title -> file]
-   * <p> Use {@link #chapterMap} or {@link #subBook}.
+   * Validate the .epub by EpubCheck after making it.
+   * <p>The validation runs in background, see {@link com.quanqinle.epub.EpubValidator}.
    */
-  LinkedHashMap<String, LinkedHashMap<String, FileInfo>> subBook = new LinkedHashMap<>();
+  boolean validate = false;
+  /**
+   * The .xhtml files made from the source in order: the front matter, sub-books and chapters.
+   * <p>Filled by {@link com.quanqinle.epub.ConvertTxtToHtmls}.
+   */
+  ChapterTable chapterTable = new ChapterTable();
 
   public BookInfo() {
   }
@@ -99,6 +178,14 @@ public class BookInfo {
     this.srcTxtPath = srcTxtPath;
   }
 
+  public String getCharset() {
+    return charset;
+  }
+
+  public void setCharset(String charset) {
+    this.charset = charset;
+  }
+
   public Path getOutputDir() {
     return outputDir;
   }
@@ -163,20 +250,36 @@ public class BookInfo {
     this.coverJpgFullPath = coverJpgFullPath;
   }
 
-  public String getUuid() {
-    return uuid;
+  public int getCoverMaxSize() {
+    return coverMaxSize;
   }
 
-  public void setUuid(String uuid) {
-    this.uuid = uuid;
+  public void setCoverMaxSize(int coverMaxSize) {
+    this.coverMaxSize = coverMaxSize;
+  }
+
+  public float getCoverQuality() {
+    return coverQuality;
+  }
+
+  public void setCoverQuality(float coverQuality) {
+    this.coverQuality = coverQuality;
+  }
+
+  public boolean isGenerateCover() {
+    return generateCover;
+  }
+
+  public void setGenerateCover(boolean generateCover) {
+    this.generateCover = generateCover;
   }
 
-  public Map<String, FileInfo> getFrontMatter() {
-    return frontMatter;
+  public String getUuid() {
+    return uuid;
   }
 
-  public void setFrontMatter(LinkedHashMap<String, FileInfo> frontMatter) {
-    this.frontMatter = frontMatter;
+  public void setUuid(String uuid) {
+    this.uuid = uuid;
   }
 
   public boolean isHasManyBooks() {
@@ -187,20 +290,108 @@ public class BookInfo {
     this.hasManyBooks = hasManyBooks;
   }
 
-  public LinkedHashMap<String, FileInfo> getChapterMap() {
-    return chapterMap;
+  public boolean isStreaming() {
+    return streaming;
+  }
+
+  public void setStreaming(boolean streaming) {
+    this.streaming = streaming;
+  }
+
+  public int getWriterThreads() {
+    return writerThreads;
+  }
+
+  public void setWriterThreads(int writerThreads) {
+    this.writerThreads = writerThreads;
+  }
+
+  public boolean isDirectZip() {
+    return directZip;
+  }
+
+  public void setDirectZip(boolean directZip) {
+    this.directZip = directZip;
+  }
+
+  public Path getEntryStore() {
+    return entryStore;
+  }
+
+  public void setEntryStore(Path entryStore) {
+    this.entryStore = entryStore;
+  }
+
+  public boolean isIncremental() {
+    return incremental;
+  }
+
+  public void setIncremental(boolean incremental) {
+    this.incremental = incremental;
+  }
+
+  public long getMaxHtmlBytes() {
+    return maxHtmlBytes;
+  }
+
+  public void setMaxHtmlBytes(long maxHtmlBytes) {
+    this.maxHtmlBytes = maxHtmlBytes;
+  }
+
+  public int getMaxHtmlParagraphs() {
+    return maxHtmlParagraphs;
+  }
+
+  public void setMaxHtmlParagraphs(int maxHtmlParagraphs) {
+    this.maxHtmlParagraphs = maxHtmlParagraphs;
+  }
+
+  public boolean isDetectChapterTitles() {
+    return detectChapterTitles;
+  }
+
+  public void setDetectChapterTitles(boolean detectChapterTitles) {
+    this.detectChapterTitles = detectChapterTitles;
+  }
+
+  public int getParseThreads() {
+    return parseThreads;
+  }
+
+  public void setParseThreads(int parseThreads) {
+    this.parseThreads = parseThreads;
+  }
+
+  public int getZipThreads() {
+    return zipThreads;
+  }
+
+  public void setZipThreads(int zipThreads) {
+    this.zipThreads = zipThreads;
+  }
+
+  public Map<String, Integer> getCompressionLevels() {
+    return compressionLevels;
+  }
+
+  public void setCompressionLevels(Map<String, Integer> compressionLevels) {
+    this.compressionLevels = compressionLevels;
+  }
+
+  public boolean isValidate() {
+    return validate;
   }
 
-  public void setChapterMap(LinkedHashMap<String, FileInfo> chapterMap) {
-    this.chapterMap = chapterMap;
+  public void setValidate(boolean validate) {
+    this.validate = validate;
   }
 
-  public LinkedHashMap<String, LinkedHashMap<String, FileInfo>> getSubBook() {
-    return subBook;
+  public ChapterTable getChapterTable() {
+    return chapterTable;
   }
 
-  public void setSubBook(LinkedHashMap<String, LinkedHashMap<String, FileInfo>> subBook) {
-    this.subBook = subBook;
+  public void setChapterTable(ChapterTable chapterTable) {
+    this.chapterTable = chapterTable;
   }
 
   public String getCoverTitle() {
@@ -0,0 +1,161 @@
+package com.quanqinle.epub.entity;
+
+import com.quanqinle.epub.metrics.BuildStage;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The report of making one .epub: the time of each stage and the size of the book
+ *
+ * @author quanqinle
+ */
+public class BuildReport {
+  /** the title of the book */
+  String bookTitle;
+  /** the .epub file, null if written into a stream */
+  Path epubPath;
+  /** the stages run, in order */
+  List<StageReport> stages = new ArrayList<>();
+  /** total time cost in nanoseconds */
+  long nanos;
+  /** lines read from the .txt */
+  long linesRead;
+  /** .xhtml files made from the .txt, including front matter and sub-books */
+  int chapters;
+  /** files in the .epub */
+  int entries;
+  /** the uncompressed size of all files in the .epub */
+  long bytesWritten;
+  /** the size of the .epub */
+  long compressedSize;
+  /** files whose compressed data is reused from the entry cache or store, not compressed again */
+  int reusedEntries;
+  /** the uncompressed size of the files reused */
+  long reusedBytes;
+  /** the validation running in background, null if not validated */
+  CompletableFuture<ValidationReport> validation;
+
+  public BuildReport(String bookTitle, Path epubPath) {
+    this.bookTitle = bookTitle;
+    this.epubPath = epubPath;
+  }
+
+  public String getBookTitle() {
+    return bookTitle;
+  }
+
+  public Path getEpubPath() {
+    return epubPath;
+  }
+
+  public List<StageReport> getStages() {
+    return stages;
+  }
+
+  /**
+   * @param stage stage
+   * @return the report of the stage, null if the stage is not run
+   */
+  public StageReport getStage(BuildStage stage) {
+    for (StageReport report : stages) {
+      if (report.getStage() == stage) {
+        return report;
+      }
+    }
+    return null;
+  }
+
+  public long getNanos() {
+    return nanos;
+  }
+
+  public void setNanos(long nanos) {
+    this.nanos = nanos;
+  }
+
+  public long getMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(nanos);
+  }
+
+  /**
+   * @return bytes allocated by the building thread in all stages, -1 if not available
+   */
+  public long getAllocatedBytes() {
+    long sum = 0;
+    for (StageReport report : stages) {
+      if (report.getAllocatedBytes() < 0) {
+        return -1;
+      }
+      sum += report.getAllocatedBytes();
+    }
+    return sum;
+  }
+
+  public long getLinesRead() {
+    return linesRead;
+  }
+
+  public void setLinesRead(long linesRead) {
+    this.linesRead = linesRead;
+  }
+
+  public int getChapters() {
+    return chapters;
+  }
+
+  public void setChapters(int chapters) {
+    this.chapters = chapters;
+  }
+
+  public int getEntries() {
+    return entries;
+  }
+
+  public void setEntries(int entries) {
+    this.entries = entries;
+  }
+
+  public long getBytesWritten() {
+    return bytesWritten;
+  }
+
+  public void setBytesWritten(long bytesWritten) {
+    this.bytesWritten = bytesWritten;
+  }
+
+  public long getCompressedSize() {
+    return compressedSize;
+  }
+
+  public void setCompressedSize(long compressedSize) {
+    this.compressedSize = compressedSize;
+  }
+
+  public int getReusedEntries() {
+    return reusedEntries;
+  }
+
+  public void setReusedEntries(int reusedEntries) {
+    this.reusedEntries = reusedEntries;
+  }
+
+  public long getReusedBytes() {
+    return reusedBytes;
+  }
+
+  public void setReusedBytes(long reusedBytes) {
+    this.reusedBytes = reusedBytes;
+  }
+
+  public CompletableFuture<ValidationReport> getValidation() {
+    return validation;
+  }
+
+  public void setValidation(CompletableFuture<ValidationReport> validation) {
+    this.validation = validation;
+  }
+}
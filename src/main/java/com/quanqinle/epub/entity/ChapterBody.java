@@ -0,0 +1,246 @@
+package com.quanqinle.epub.entity;
+
+import com.quanqinle.epub.util.SourceReader;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The body of a .xhtml file, in order: the lines of markup, such as "&lt;h1>title&lt;/h1>", and the
+ * paragraphs which are byte spans of the source file.
+ *
+ * <p>A span paragraph is written as "&lt;p>" + the source bytes + "&lt;/p>", without any String of
+ * its text, see {@link com.quanqinle.epub.util.EpubUtils#writeHtml(String, ChapterBody,
+ * java.nio.channels.WritableByteChannel)}.
+ *
+ * <p>A long body could be broken into parts at paragraph boundaries, see {@link #addBreak(long)},
+ * each of which is written as a .xhtml file.
+ *
+ * @author quanqinle
+ */
+public class ChapterBody {
+  private static final int INITIAL_CAPACITY = 16;
+  /** the bytes of "&lt;p>", "&lt;/p>" and the line separator around a span paragraph */
+  private static final int PARAGRAPH_TAG_BYTES = "<p></p>".length() + System.lineSeparator().length();
+
+  /** where the spans are, null if there is no span */
+  private final SourceReader source;
+  /** per line, the markup, or null if it is a span paragraph */
+  private String[] markups = new String[INITIAL_CAPACITY];
+  /** per line, the first byte of the span in the source file */
+  private long[] starts = new long[INITIAL_CAPACITY];
+  /** per line, the byte length of the span */
+  private int[] lengths = new int[INITIAL_CAPACITY];
+  private int size = 0;
+  /** the UTF-8 bytes of all lines in the .xhtml */
+  private long byteSize = 0;
+  /** per break, the index of the first line after it */
+  private int[] breakIndexes = new int[0];
+  /** per break, the byte size before it */
+  private long[] breakByteSizes = new long[0];
+  /** per break, the number of the source line where the part after it starts */
+  private long[] breakLines = new long[0];
+  private int breaks = 0;
+
+  /**
+   * Constructor
+   *
+   * @param source where the spans are, null if only markup is added
+   */
+  public ChapterBody(SourceReader source) {
+    this.source = source;
+  }
+
+  /**
+   * Add a line of markup, such as "&lt;p>text&lt;/p>".
+   *
+   * @param markup markup
+   * @return this
+   */
+  public ChapterBody addMarkup(String markup) {
+    grow();
+    markups[size] = markup;
+    size++;
+    byteSize += markupByteSize(markup);
+    return this;
+  }
+
+  /**
+   * Add a paragraph, whose text is the UTF-8 bytes [start, end) of the source file.
+   *
+   * @param start the first byte in the source file
+   * @param end after the last byte, in the same line
+   * @return this
+   */
+  public ChapterBody addParagraph(long start, long end) {
+    if (source == null) {
+      throw new IllegalStateException("No source file for the paragraph");
+    }
+    grow();
+    starts[size] = start;
+    lengths[size] = (int) (end - start);
+    size++;
+    byteSize += paragraphByteSize(start, end);
+    return this;
+  }
+
+  /**
+   * @param markup a line of markup
+   * @return its UTF-8 bytes in the .xhtml, with the line separator
+   */
+  public static long markupByteSize(String markup) {
+    long bytes = System.lineSeparator().length();
+    for (int i = 0; i < markup.length(); i++) {
+      char c = markup.charAt(i);
+      // a surrogate pair is 4 bytes
+      bytes += c < 0x80 ? 1 : c < 0x800 ? 2 : Character.isSurrogate(c) ? 2 : 3;
+    }
+    return bytes;
+  }
+
+  /**
+   * @param start the first byte of a span paragraph in the source file
+   * @param end after the last byte
+   * @return its bytes in the .xhtml, with the tags and the line separator
+   */
+  public static long paragraphByteSize(long start, long end) {
+    return end - start + PARAGRAPH_TAG_BYTES;
+  }
+
+  /**
+   * Break a new part before the next line.
+   *
+   * @param lineNumber the number of the source line where the new part starts
+   * @return this
+   */
+  public ChapterBody addBreak(long lineNumber) {
+    breakIndexes = Arrays.copyOf(breakIndexes, breaks + 1);
+    breakByteSizes = Arrays.copyOf(breakByteSizes, breaks + 1);
+    breakLines = Arrays.copyOf(breakLines, breaks + 1);
+    breakIndexes[breaks] = size;
+    breakByteSizes[breaks] = byteSize;
+    breakLines[breaks] = lineNumber;
+    breaks++;
+    return this;
+  }
+
+  /**
+   * @return the UTF-8 bytes of all lines in the .xhtml, without the head and the tail
+   */
+  public long getByteSize() {
+    return byteSize;
+  }
+
+  /**
+   * @return the bytes of the lines since the last break
+   */
+  public long getLastPartByteSize() {
+    return breaks == 0 ? byteSize : byteSize - breakByteSizes[breaks - 1];
+  }
+
+  /**
+   * @return the number of lines since the last break
+   */
+  public int getLastPartSize() {
+    return breaks == 0 ? size : size - breakIndexes[breaks - 1];
+  }
+
+  /**
+   * @return 1 + the number of breaks
+   */
+  public int getPartCount() {
+    return breaks + 1;
+  }
+
+  /**
+   * @param part part index, from 1, since part 0 starts where the body starts
+   * @return the number of the source line where the part starts
+   */
+  public long getPartFirstLine(int part) {
+    return breakLines[part - 1];
+  }
+
+  /**
+   * @param part part index, from 0
+   * @return a new body of the lines in the part
+   */
+  public ChapterBody getPart(int part) {
+    int from = part == 0 ? 0 : breakIndexes[part - 1];
+    int to = part == breaks ? size : breakIndexes[part];
+    ChapterBody body = new ChapterBody(source);
+    body.markups = Arrays.copyOfRange(markups, from, Math.max(to, from + 1));
+    body.starts = Arrays.copyOfRange(starts, from, Math.max(to, from + 1));
+    body.lengths = Arrays.copyOfRange(lengths, from, Math.max(to, from + 1));
+    body.size = to - from;
+    body.byteSize = (part == breaks ? byteSize : breakByteSizes[part]) - (part == 0 ? 0 : breakByteSizes[part - 1]);
+    return body;
+  }
+
+  private void grow() {
+    if (size == markups.length) {
+      int capacity = size * 2;
+      markups = Arrays.copyOf(markups, capacity);
+      starts = Arrays.copyOf(starts, capacity);
+      lengths = Arrays.copyOf(lengths, capacity);
+    }
+  }
+
+  /**
+   * @return the number of lines, including titles
+   */
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * @param index line index
+   * @return true if the line is a span paragraph
+   */
+  public boolean isParagraph(int index) {
+    return markups[index] == null;
+  }
+
+  /**
+   * @param index line index
+   * @return the markup of the line, null if it is a span paragraph
+   */
+  public String getMarkup(int index) {
+    return markups[index];
+  }
+
+  /**
+   * @param index line index of a span paragraph
+   * @return the UTF-8 bytes of its text, a view of the source file
+   */
+  public ByteBuffer getParagraph(int index) {
+    return source.slice(starts[index], starts[index] + lengths[index]);
+  }
+
+  /**
+   * @param index line index of a span paragraph
+   * @return the byte length of its text
+   */
+  public int getParagraphLength(int index) {
+    return lengths[index];
+  }
+
+  /**
+   * Decode all lines, as the lines of {@link FileInfo#getLines()}. Only for debugging and tests.
+   *
+   * @return lines of markup
+   */
+  public List<String> toLines() {
+    List<String> lines = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      lines.add(isParagraph(i) ? "<p>" + StandardCharsets.UTF_8.decode(getParagraph(i)) + "</p>" : markups[i]);
+    }
+    return lines;
+  }
+}
@@ -0,0 +1,187 @@
+package com.quanqinle.epub.entity;
+
+import java.util.Arrays;
+
+/**
+ * The .xhtml files made from the source, in order: the front matter, sub-book (volume) pages and
+ * chapters. Each file is found by its ordinal, so chapters with the same title, such as "番外" in
+ * every volume, are all kept. A long file is split into parts, each of which is a {@link Kind#PART}
+ * after the first one.
+ *
+ * <p>The fields are kept in arrays, one element per file, instead of an object per file.
+ *
+ * @author quanqinle
+ */
+public class ChapterTable {
+  private static final int INITIAL_CAPACITY = 64;
+  /** the suffix of the file names */
+  private static final String SUFFIX = ".xhtml";
+
+  /** What a file is */
+  public enum Kind {
+    /** the lines before the first title */
+    FRONT_MATTER,
+    /** the title page of a sub-book */
+    VOLUME,
+    /** a chapter */
+    CHAPTER,
+    /** the rest of the previous file which is too long, in the spine but not in the TOC */
+    PART
+  }
+
+  private static final Kind[] KINDS = Kind.values();
+
+  private byte[] kinds = new byte[INITIAL_CAPACITY];
+  /** such as text in &lt;title> or &lt;h1> in HTML */
+  private String[] titles = new String[INITIAL_CAPACITY];
+  /** file names without suffix */
+  private String[] names = new String[INITIAL_CAPACITY];
+  /** the index of the sub-book, 0 if before any sub-book or the book has no sub-book */
+  private int[] volumes = new int[INITIAL_CAPACITY];
+  /** the number of the first line in the source, from 1 */
+  private long[] firstLines = new long[INITIAL_CAPACITY];
+  /** the number after the last line in the source */
+  private long[] endLines = new long[INITIAL_CAPACITY];
+  /** the bodies not written yet, null if written or released */
+  private ChapterBody[] bodies = new ChapterBody[INITIAL_CAPACITY];
+  private int size = 0;
+
+  /**
+   * Add a file at the end.
+   *
+   * @param kind what the file is
+   * @param title such as text in &lt;title> or &lt;h1> in HTML
+   * @param name file name without suffix
+   * @param volume the index of the sub-book, 0 if none
+   * @param firstLine the number of the first line in the source, from 1
+   * @param endLine the number after the last line in the source
+   * @param body the body to write, could be null
+   * @return the ordinal of the file
+   */
+  public int add(Kind kind, String title, String name, int volume, long firstLine, long endLine, ChapterBody body) {
+    if (size == kinds.length) {
+      int capacity = size * 2;
+      kinds = Arrays.copyOf(kinds, capacity);
+      titles = Arrays.copyOf(titles, capacity);
+      names = Arrays.copyOf(names, capacity);
+      volumes = Arrays.copyOf(volumes, capacity);
+      firstLines = Arrays.copyOf(firstLines, capacity);
+      endLines = Arrays.copyOf(endLines, capacity);
+      bodies = Arrays.copyOf(bodies, capacity);
+    }
+    kinds[size] = (byte) kind.ordinal();
+    titles[size] = title;
+    names[size] = name;
+    volumes[size] = volume;
+    firstLines[size] = firstLine;
+    endLines[size] = endLine;
+    bodies[size] = body;
+    return size++;
+  }
+
+  /**
+   * @return the number of files
+   */
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public Kind getKind(int ordinal) {
+    return KINDS[kinds[check(ordinal)]];
+  }
+
+  public String getTitle(int ordinal) {
+    return titles[check(ordinal)];
+  }
+
+  /**
+   * @param ordinal the ordinal of the file
+   * @return file name without suffix, such as "chapter-001"
+   */
+  public String getName(int ordinal) {
+    return names[check(ordinal)];
+  }
+
+  /**
+   * @param ordinal the ordinal of the file
+   * @return file name with suffix, such as "chapter-001.xhtml"
+   */
+  public String getFullName(int ordinal) {
+    return names[check(ordinal)] + SUFFIX;
+  }
+
+  public int getVolume(int ordinal) {
+    return volumes[check(ordinal)];
+  }
+
+  public long getFirstLine(int ordinal) {
+    return firstLines[check(ordinal)];
+  }
+
+  public long getEndLine(int ordinal) {
+    return endLines[check(ordinal)];
+  }
+
+  /**
+   * @param ordinal the ordinal of the file
+   * @return the body not written yet, null if released
+   */
+  public ChapterBody getBody(int ordinal) {
+    return bodies[check(ordinal)];
+  }
+
+  /**
+   * Release the body once it is written, keep the other fields for the TOC.
+   *
+   * @param ordinal the ordinal of the file
+   */
+  public void releaseBody(int ordinal) {
+    bodies[check(ordinal)] = null;
+  }
+
+  /**
+   * @return the ordinal of the front matter, -1 if none
+   */
+  public int indexOfFrontMatter() {
+    for (int i = 0; i < size; i++) {
+      if (kinds[i] == Kind.FRONT_MATTER.ordinal()) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * A FileInfo of the file to write it, which takes the body out of the table. The body is then only
+   * reachable from the FileInfo, until it is rendered and released by {@link FileInfo#releaseBody()}.
+   *
+   * @param ordinal the ordinal of the file
+   * @return a new FileInfo holding the body
+   */
+  public FileInfo takeFileInfo(int ordinal) {
+    ChapterBody body = getBody(ordinal);
+    releaseBody(ordinal);
+    return new FileInfo(getName(ordinal), getTitle(ordinal), body);
+  }
+
+  /**
+   * Remove all files.
+   */
+  public void clear() {
+    Arrays.fill(titles, 0, size, null);
+    Arrays.fill(names, 0, size, null);
+    Arrays.fill(bodies, 0, size, null);
+    size = 0;
+  }
+
+  private int check(int ordinal) {
+    if (ordinal < 0 || ordinal >= size) {
+      throw new IndexOutOfBoundsException("Ordinal " + ordinal + " out of " + size);
+    }
+    return ordinal;
+  }
+}
@@ -20,6 +20,8 @@ public class FileInfo {
   String describe;
   /** content */
   List<String> lines;
+  /** content made from the source file, used instead of {@link #lines} if not null */
+  ChapterBody body;
 
   public FileInfo(String name, String suffix, String fullName, Path fullPath, String describe, List<String> lines) {
     this.name = name;
@@ -58,6 +60,22 @@ public class FileInfo {
     this.lines = lines;
   }
 
+  /**
+   * Constructor.
+   * <p>meanwhile set fullName with default suffix
+   *
+   * @param name
+   * @param describe
+   * @param body
+   */
+  public FileInfo(String name, String describe, ChapterBody body) {
+    this.name = name;
+    this.describe = describe;
+    // this.suffix default
+    this.fullName = name + this.suffix;
+    this.body = body;
+  }
+
   public String getName() {
     return name;
   }
@@ -105,4 +123,24 @@ public class FileInfo {
   public void setLines(List<String> lines) {
     this.lines = lines;
   }
+
+  /**
+   * @return the body, null if none or released
+   */
+  public ChapterBody getBody() {
+    return body;
+  }
+
+  public void setBody(ChapterBody body) {
+    this.body = body;
+  }
+
+  /**
+   * Release the content once it is rendered, i.e. the lines and the body. The name and the title
+   * are kept for the TOC.
+   */
+  public void releaseBody() {
+    this.lines = null;
+    this.body = null;
+  }
 }
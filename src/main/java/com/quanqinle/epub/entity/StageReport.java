@@ -0,0 +1,40 @@
+package com.quanqinle.epub.entity;
+
+import com.quanqinle.epub.metrics.BuildStage;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time and allocation of one stage of making a .epub
+ *
+ * @author quanqinle
+ */
+public class StageReport {
+  BuildStage stage;
+  /** time cost in nanoseconds */
+  long nanos;
+  /** bytes allocated by the building thread, -1 if not available */
+  long allocatedBytes;
+
+  public StageReport(BuildStage stage, long nanos, long allocatedBytes) {
+    this.stage = stage;
+    this.nanos = nanos;
+    this.allocatedBytes = allocatedBytes;
+  }
+
+  public BuildStage getStage() {
+    return stage;
+  }
+
+  public long getNanos() {
+    return nanos;
+  }
+
+  public long getMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(nanos);
+  }
+
+  public long getAllocatedBytes() {
+    return allocatedBytes;
+  }
+}
@@ -0,0 +1,59 @@
+package com.quanqinle.epub.entity;
+
+/**
+ * A message reported by EpubCheck
+ *
+ * @author quanqinle
+ */
+public class ValidationMessage {
+  /** FATAL, ERROR, WARNING, USAGE or INFO */
+  String severity;
+  /** the message id, such as OPF-003 */
+  String id;
+  /** the file in the .epub, empty if the message is about the whole .epub */
+  String path;
+  /** line number in the file, -1 if unknown */
+  int line;
+  /** column number in the file, -1 if unknown */
+  int column;
+  /** the message text */
+  String message;
+
+  public ValidationMessage(String severity, String id, String path, int line, int column, String message) {
+    this.severity = severity;
+    this.id = id;
+    this.path = path;
+    this.line = line;
+    this.column = column;
+    this.message = message;
+  }
+
+  public String getSeverity() {
+    return severity;
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public String getPath() {
+    return path;
+  }
+
+  public int getLine() {
+    return line;
+  }
+
+  public int getColumn() {
+    return column;
+  }
+
+  public String getMessage() {
+    return message;
+  }
+
+  @Override
+  public String toString() {
+    return severity + "(" + id + "): " + path + "(" + line + "," + column + "): " + message;
+  }
+}
@@ -0,0 +1,80 @@
+package com.quanqinle.epub.entity;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The result of validating one .epub by EpubCheck
+ *
+ * @author quanqinle
+ */
+public class ValidationReport {
+  /** the .epub file */
+  Path epubPath;
+  /** the messages reported, in order */
+  List<ValidationMessage> messages = new ArrayList<>();
+  int fatalErrorCount;
+  int errorCount;
+  int warningCount;
+  /** time cost in milliseconds */
+  long millis;
+
+  public ValidationReport(Path epubPath) {
+    this.epubPath = epubPath;
+  }
+
+  /**
+   * @return true if no fatal error, error or warning, the same as EpubCheck.validate()
+   */
+  public boolean isValid() {
+    return fatalErrorCount == 0 && errorCount == 0 && warningCount == 0;
+  }
+
+  /**
+   * @return true if any fatal error or error, warnings are ignored
+   */
+  public boolean hasErrors() {
+    return fatalErrorCount > 0 || errorCount > 0;
+  }
+
+  public Path getEpubPath() {
+    return epubPath;
+  }
+
+  public List<ValidationMessage> getMessages() {
+    return messages;
+  }
+
+  public int getFatalErrorCount() {
+    return fatalErrorCount;
+  }
+
+  public void setFatalErrorCount(int fatalErrorCount) {
+    this.fatalErrorCount = fatalErrorCount;
+  }
+
+  public int getErrorCount() {
+    return errorCount;
+  }
+
+  public void setErrorCount(int errorCount) {
+    this.errorCount = errorCount;
+  }
+
+  public int getWarningCount() {
+    return warningCount;
+  }
+
+  public void setWarningCount(int warningCount) {
+    this.warningCount = warningCount;
+  }
+
+  public long getMillis() {
+    return millis;
+  }
+
+  public void setMillis(long millis) {
+    this.millis = millis;
+  }
+}
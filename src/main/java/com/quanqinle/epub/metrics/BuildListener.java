@@ -0,0 +1,49 @@
+package com.quanqinle.epub.metrics;
+
+import com.quanqinle.epub.entity.BookInfo;
+import com.quanqinle.epub.entity.BuildReport;
+import com.quanqinle.epub.entity.StageReport;
+import com.quanqinle.epub.entity.ValidationReport;
+
+/**
+ * Receive the progress and metrics of making a .epub.
+ * <p>
+ * The methods are called in the building thread, except {@link #validationFinished}. An exception thrown by a listener is logged and
+ * ignored, it never fails the build.
+ *
+ * @author quanqinle
+ */
+public interface BuildListener {
+
+  /**
+   * Called before a stage runs.
+   *
+   * @param book the book
+   * @param stage the stage
+   */
+  default void stageStarted(BookInfo book, BuildStage stage) {}
+
+  /**
+   * Called after a stage runs successfully.
+   *
+   * @param book the book
+   * @param report time and allocation of the stage
+   */
+  default void stageFinished(BookInfo book, StageReport report) {}
+
+  /**
+   * Called after the .epub is made.
+   *
+   * @param report the report of the whole build
+   */
+  default void buildFinished(BuildReport report) {}
+
+  /**
+   * Called after the .epub is validated, if {@link BookInfo#isValidate()}.
+   * <p>Called in the validating thread, maybe after {@link #buildFinished(BuildReport)} returns.
+   *
+   * @param book the book
+   * @param report the messages of EpubCheck
+   */
+  default void validationFinished(BookInfo book, ValidationReport report) {}
+}
@@ -0,0 +1,172 @@
+package com.quanqinle.epub.metrics;
+
+import com.quanqinle.epub.entity.BookInfo;
+import com.quanqinle.epub.entity.BuildReport;
+import com.quanqinle.epub.entity.StageReport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Time the stages of making one .epub, notify the listeners and build the {@link BuildReport}.
+ * <p>
+ * Allocation is measured by {@link com.sun.management.ThreadMXBean} if the JVM supports it. Only
+ * the building thread is counted, not the chapter writing threads.
+ *
+ * @author quanqinle
+ */
+public class BuildRecorder {
+  private static final Logger logger = LoggerFactory.getLogger(BuildRecorder.class);
+
+  /** null if allocation is not measurable */
+  private static final com.sun.management.ThreadMXBean THREAD_MX_BEAN = threadMXBean();
+
+  private final BookInfo book;
+  private final List<BuildListener> listeners;
+  private final BuildReport report;
+  private final long startNanos;
+
+  /**
+   * A stage of the build.
+   */
+  @FunctionalInterface
+  public interface Stage {
+    void run() throws IOException;
+  }
+
+  /**
+   * Constructor. Start timing the whole build.
+   *
+   * @param book the book
+   * @param epubPath the .epub file, null if written into a stream
+   * @param listeners listeners to notify
+   */
+  public BuildRecorder(BookInfo book, Path epubPath, List<BuildListener> listeners) {
+    this.book = book;
+    this.listeners = listeners;
+    this.report = new BuildReport(book.getBookTitle(), epubPath);
+    this.startNanos = System.nanoTime();
+  }
+
+  /**
+   * Run a stage and record its time.
+   *
+   * @param stage the stage
+   * @param action what the stage does
+   * @throws IOException the error of the stage
+   */
+  public void stage(BuildStage stage, Stage action) throws IOException {
+    notifyListeners(listener -> listener.stageStarted(book, stage));
+
+    long allocatedBefore = allocatedBytes();
+    long start = System.nanoTime();
+    action.run();
+    long nanos = System.nanoTime() - start;
+    long allocatedAfter = allocatedBytes();
+
+    StageReport stageReport = new StageReport(stage, nanos,
+        allocatedBefore < 0 || allocatedAfter < 0 ? -1 : allocatedAfter - allocatedBefore);
+    report.getStages().add(stageReport);
+    notifyListeners(listener -> listener.stageFinished(book, stageReport));
+  }
+
+  /**
+   * Record the files reused from the entry cache or store, before {@link #finish}.
+   *
+   * @param entries files reused
+   * @param bytes the uncompressed size of the files reused
+   */
+  public void reused(int entries, long bytes) {
+    report.setReusedEntries(entries);
+    report.setReusedBytes(bytes);
+  }
+
+  /**
+   * Finish timing, measure the .epub and notify the listeners.
+   *
+   * @param linesRead lines read from the .txt
+   * @param chapters .xhtml files made from the .txt
+   * @return the report
+   * @throws IOException if fail to read the .epub
+   */
+  public BuildReport finish(long linesRead, int chapters) throws IOException {
+    report.setNanos(System.nanoTime() - startNanos);
+    report.setLinesRead(linesRead);
+    report.setChapters(chapters);
+
+    Path epubPath = report.getEpubPath();
+    report.setCompressedSize(Files.size(epubPath));
+    // only the central directory is read
+    try (ZipFile zip = new ZipFile(epubPath.toFile())) {
+      report.setEntries(zip.size());
+      report.setBytesWritten(zip.stream().mapToLong(ZipEntry::getSize).sum());
+    }
+
+    notifyListeners(listener -> listener.buildFinished(report));
+    return report;
+  }
+
+  /**
+   * Finish timing and notify the listeners, with the size already known, such as a .epub written
+   * into a stream.
+   *
+   * @param linesRead lines read from the .txt
+   * @param chapters .xhtml files made from the .txt
+   * @param entries files in the .epub
+   * @param bytesWritten the uncompressed size of all files in the .epub
+   * @param compressedSize the size of the .epub
+   * @return the report
+   */
+  public BuildReport finish(long linesRead, int chapters, int entries, long bytesWritten, long compressedSize) {
+    report.setNanos(System.nanoTime() - startNanos);
+    report.setLinesRead(linesRead);
+    report.setChapters(chapters);
+    report.setEntries(entries);
+    report.setBytesWritten(bytesWritten);
+    report.setCompressedSize(compressedSize);
+
+    notifyListeners(listener -> listener.buildFinished(report));
+    return report;
+  }
+
+  private void notifyListeners(Consumer<BuildListener> event) {
+    for (BuildListener listener : listeners) {
+      try {
+        event.accept(listener);
+      } catch (RuntimeException e) {
+        logger.warn("Build listener {} failed", listener.getClass().getName(), e);
+      }
+    }
+  }
+
+  /**
+   * @return bytes allocated by the current thread so far, -1 if not available
+   */
+  private static long allocatedBytes() {
+    if (THREAD_MX_BEAN == null) {
+      return -1;
+    }
+    return THREAD_MX_BEAN.getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  private static com.sun.management.ThreadMXBean threadMXBean() {
+    try {
+      if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean
+          && bean.isThreadAllocatedMemorySupported()
+          && bean.isThreadAllocatedMemoryEnabled()) {
+        return bean;
+      }
+    } catch (LinkageError | RuntimeException e) {
+      logger.debug("Allocation is not measurable", e);
+    }
+    return null;
+  }
+}
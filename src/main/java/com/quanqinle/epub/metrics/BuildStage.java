@@ -0,0 +1,31 @@
+package com.quanqinle.epub.metrics;
+
+/**
+ * The stages of making a .epub, in the order they run.
+ * <p>
+ * Some stages are skipped when the .epub is written directly without the temp folder.
+ *
+ * @author quanqinle
+ */
+public enum BuildStage {
+  /** copy the template into the temp folder */
+  COPY_TEMPLATE,
+  /** read and parse the .txt, then write the .xhtml files */
+  GEN_BODY_HTMLS,
+  /** organize the lists of toc.ncx, content.opf and toc.xhtml */
+  MAKE_NAVIGATION,
+  /** downscale the cover picture, or generate one */
+  MAKE_COVER,
+  /** fill cover.xhtml and write the cover picture */
+  SET_BOOK_COVER,
+  /** fill toc.xhtml */
+  SET_BOOK_TOC_HTML,
+  /** fill toc.ncx */
+  MODIFY_TOC_NCX,
+  /** fill content.opf */
+  MODIFY_CONTENT_OPF,
+  /** write the filled template files straight into the .epub */
+  WRITE_TEMPLATE,
+  /** zip the temp folder, or finish the .epub written directly */
+  ZIP_EPUB
+}
@@ -0,0 +1,47 @@
+package com.quanqinle.epub.metrics;
+
+import com.quanqinle.epub.entity.BookInfo;
+import com.quanqinle.epub.entity.BuildReport;
+import com.quanqinle.epub.entity.StageReport;
+import com.quanqinle.epub.entity.ValidationMessage;
+import com.quanqinle.epub.entity.ValidationReport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Log the time of each stage and a summary of the build.
+ *
+ * @author quanqinle
+ */
+public class LoggingBuildListener implements BuildListener {
+  private static final Logger logger = LoggerFactory.getLogger(LoggingBuildListener.class);
+
+  @Override
+  public void stageFinished(BookInfo book, StageReport report) {
+    logger.info("[{}] {} took {} ms", book.getBookTitle(), report.getStage(), report.getMillis());
+  }
+
+  @Override
+  public void buildFinished(BuildReport report) {
+    logger.info(
+        "[{}] made in {} ms: {} lines, {} chapters, {} files, {} bytes -> {} bytes, {}",
+        report.getBookTitle(),
+        report.getMillis(),
+        report.getLinesRead(),
+        report.getChapters(),
+        report.getEntries(),
+        report.getBytesWritten(),
+        report.getCompressedSize(),
+        report.getEpubPath());
+  }
+
+  @Override
+  public void validationFinished(BookInfo book, ValidationReport report) {
+    logger.info("[{}] validated in {} ms: {} fatal errors, {} errors, {} warnings",
+        book.getBookTitle(), report.getMillis(),
+        report.getFatalErrorCount(), report.getErrorCount(), report.getWarningCount());
+    for (ValidationMessage message : report.getMessages()) {
+      logger.warn("[{}] {}", book.getBookTitle(), message);
+    }
+  }
+}
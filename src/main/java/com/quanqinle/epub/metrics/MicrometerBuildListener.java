@@ -0,0 +1,59 @@
+package com.quanqinle.epub.metrics;
+
+import com.quanqinle.epub.entity.BookInfo;
+import com.quanqinle.epub.entity.BuildReport;
+import com.quanqinle.epub.entity.StageReport;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Record the metrics of builds into a Micrometer {@link MeterRegistry}.
+ * <p>
+ * micrometer-core is an optional dependency, add it to use this class. Without any monitoring
+ * system, use a {@code SimpleMeterRegistry} and read the meters in-process.
+ * <p>
+ * Meters:
+ * <ul>
+ *   <li>makeepub.stage: timer of each stage, tagged by stage
+ *   <li>makeepub.build: timer of the whole build
+ *   <li>makeepub.lines, makeepub.chapters: summaries of the book size
+ *   <li>makeepub.bytes.written, makeepub.epub.size: summaries of the uncompressed and .epub size
+ *   <li>makeepub.allocated: summary of the bytes allocated by the building thread, if available
+ * </ul>
+ *
+ * @author quanqinle
+ */
+public class MicrometerBuildListener implements BuildListener {
+  private final MeterRegistry registry;
+
+  public MicrometerBuildListener(MeterRegistry registry) {
+    this.registry = registry;
+  }
+
+  @Override
+  public void stageFinished(BookInfo book, StageReport report) {
+    Timer.builder("makeepub.stage")
+        .tag("stage", report.getStage().name())
+        .register(registry)
+        .record(report.getNanos(), TimeUnit.NANOSECONDS);
+  }
+
+  @Override
+  public void buildFinished(BuildReport report) {
+    Timer.builder("makeepub.build").register(registry).record(report.getNanos(), TimeUnit.NANOSECONDS);
+    summary("makeepub.lines", null).record(report.getLinesRead());
+    summary("makeepub.chapters", null).record(report.getChapters());
+    summary("makeepub.bytes.written", "bytes").record(report.getBytesWritten());
+    summary("makeepub.epub.size", "bytes").record(report.getCompressedSize());
+    if (report.getAllocatedBytes() >= 0) {
+      summary("makeepub.allocated", "bytes").record(report.getAllocatedBytes());
+    }
+  }
+
+  private DistributionSummary summary(String name, String baseUnit) {
+    return DistributionSummary.builder(name).baseUnit(baseUnit).register(registry);
+  }
+}
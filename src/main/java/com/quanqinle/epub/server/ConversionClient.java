@@ -0,0 +1,111 @@
+package com.quanqinle.epub.server;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Send books to a {@link ConversionServer}.
+ *
+ * <p>When the server is busy, the request is sent again after Retry-After seconds, for at most
+ * {@link #maxRetries} times.
+ *
+ * <p>Command line:
+ *
+ * <p>$ java com.quanqinle.epub.server.ConversionClient &lt;bookinfo.yaml> [source .txt] [server url]
+ *
+ * <p>The JSON response is printed on stdout. The exit code is 0 if the .epub is made.
+ *
+ * @author quanqinle
+ */
+public class ConversionClient {
+  private static final Logger logger = LoggerFactory.getLogger(ConversionClient.class);
+
+  /** the server url, such as http://127.0.0.1:8574 */
+  private final URI server;
+  private final HttpClient http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+  /** the times to retry when the server is busy */
+  private int maxRetries = 10;
+
+  /**
+   * Constructor
+   *
+   * @param server the server url, such as http://127.0.0.1:8574
+   */
+  public ConversionClient(URI server) {
+    this.server = server;
+  }
+
+  public static void main(String[] args) throws IOException, InterruptedException {
+    if (args.length < 1) {
+      System.err.println("Usage: ConversionClient <bookinfo.yaml> [source .txt] [server url]");
+      System.exit(2);
+    }
+
+    Path bookInfoFile = Path.of(args[0]);
+    Path srcTxtPath = args.length > 1 && !args[1].isEmpty() ? Path.of(args[1]) : null;
+    URI server = URI.create(args.length > 2 ? args[2] : "http://127.0.0.1:" + ConversionServer.DEFAULT_PORT);
+
+    HttpResponse<String> response = new ConversionClient(server).convert(bookInfoFile, srcTxtPath);
+    System.out.println(response.body());
+    System.exit(response.statusCode() == 200 ? 0 : 1);
+  }
+
+  public int getMaxRetries() {
+    return maxRetries;
+  }
+
+  public void setMaxRetries(int maxRetries) {
+    this.maxRetries = maxRetries;
+  }
+
+  /**
+   * Make a book by the server, and wait for it.
+   *
+   * @param bookInfoFile bookinfo.yaml. Relative paths in it are resolved against its folder
+   * @param srcTxtPath the source .txt, null to use srcTxtPath in bookinfo.yaml
+   * @return the response: 200 with the .epub path and the build report in JSON, or an error
+   * @throws IOException if fail to read bookinfo.yaml or to connect the server
+   * @throws InterruptedException -
+   */
+  public HttpResponse<String> convert(Path bookInfoFile, Path srcTxtPath) throws IOException, InterruptedException {
+    Path base = bookInfoFile.toAbsolutePath().getParent();
+    String query = "base=" + URLEncoder.encode(base.toString(), StandardCharsets.UTF_8);
+    if (srcTxtPath != null) {
+      query += "&src=" + URLEncoder.encode(srcTxtPath.toAbsolutePath().toString(), StandardCharsets.UTF_8);
+    }
+    HttpRequest request = HttpRequest.newBuilder(server.resolve("/convert?" + query))
+        .header("Content-Type", "application/yaml")
+        .POST(HttpRequest.BodyPublishers.ofFile(bookInfoFile))
+        .build();
+
+    for (int retry = 0; ; retry++) {
+      HttpResponse<String> response = http.send(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+      if (response.statusCode() != 503 || retry >= maxRetries) {
+        return response;
+      }
+      long seconds = response.headers().firstValueAsLong("Retry-After").orElse(1);
+      logger.info("Server is busy, retry in {} s", seconds);
+      Thread.sleep(seconds * 1000);
+    }
+  }
+
+  /**
+   * @return the response of GET /health
+   * @throws IOException if fail to connect the server
+   * @throws InterruptedException -
+   */
+  public HttpResponse<String> health() throws IOException, InterruptedException {
+    HttpRequest request = HttpRequest.newBuilder(server.resolve("/health")).GET().build();
+    return http.send(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+  }
+}
@@ -0,0 +1,361 @@
+package com.quanqinle.epub.server;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.quanqinle.epub.BatchConverter;
+import com.quanqinle.epub.MakeEpubFromTemplate;
+import com.quanqinle.epub.entity.BookInfo;
+import com.quanqinle.epub.entity.BuildReport;
+import com.quanqinle.epub.entity.StageReport;
+import com.quanqinle.epub.entity.ValidationMessage;
+import com.quanqinle.epub.entity.ValidationReport;
+import com.quanqinle.epub.util.EpubTemplate;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Make .epub files in a long-running JVM, by a local HTTP endpoint.
+ *
+ * <p>A new JVM per book spends most of its time on startup, class loading and JIT. The server
+ * loads the template and warms up once, then converts books by a bounded pool of workers.
+ *
+ * <ul>
+ *   <li>POST /convert?src=&lt;source .txt>&amp;base=&lt;folder>: the body is a bookinfo.yaml. src
+ *       overrides srcTxtPath in it, and relative paths are resolved against base, by default the
+ *       working directory of the server. Responds the .epub path and the build report in JSON,
+ *       after the book is made.
+ *   <li>GET /health: the number of busy workers and queued jobs.
+ * </ul>
+ *
+ * <p>At most workers books are made at the same time, and at most queueSize books wait. More
+ * requests are rejected at once with 503 and Retry-After, so the callers back off instead of piling
+ * up in memory.
+ *
+ * <p>Command line:
+ *
+ * <p>$ java com.quanqinle.epub.server.ConversionServer [port] [workers] [queueSize]
+ *
+ * <p>The server listens on the loopback address only. See {@link ConversionClient}.
+ *
+ * @author quanqinle
+ */
+public class ConversionServer implements AutoCloseable {
+  private static final Logger logger = LoggerFactory.getLogger(ConversionServer.class);
+
+  /** the default port */
+  public static final int DEFAULT_PORT = 8574;
+  /** the largest bookinfo.yaml accepted */
+  private static final int MAX_BOOK_INFO_SIZE = 1024 * 1024;
+  /** seconds for a rejected caller to wait before retrying */
+  private static final String RETRY_AFTER_SECONDS = "1";
+
+  private final HttpServer http;
+  /** reads requests and writes rejections, never blocked by making books */
+  private final ExecutorService httpExecutor;
+  /** makes books */
+  private final ThreadPoolExecutor workers;
+  private final ObjectMapper json = new ObjectMapper();
+  /** to make the temp folder of each job unique */
+  private final AtomicLong jobIds = new AtomicLong();
+
+  /**
+   * Constructor. Call {@link #start()} to accept requests.
+   *
+   * @param port the port on the loopback address, 0 for any free port
+   * @param workers the number of books made at the same time
+   * @param queueSize the number of books waiting for a worker, 0 for none
+   * @throws IOException if fail to bind the port
+   */
+  public ConversionServer(int port, int workers, int queueSize) throws IOException {
+    int size = Math.max(1, workers);
+    BlockingQueue<Runnable> queue =
+        queueSize > 0 ? new ArrayBlockingQueue<>(queueSize) : new SynchronousQueue<>();
+    AtomicInteger count = new AtomicInteger();
+    this.workers = new ThreadPoolExecutor(size, size, 0, TimeUnit.MILLISECONDS, queue,
+        runnable -> new Thread(runnable, "epub-worker-" + count.incrementAndGet()),
+        new ThreadPoolExecutor.AbortPolicy());
+
+    this.http = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+    this.httpExecutor = Executors.newFixedThreadPool(2);
+    http.setExecutor(httpExecutor);
+    http.createContext("/convert", this::handleConvert);
+    http.createContext("/health", this::handleHealth);
+  }
+
+  public static void main(String[] args) throws IOException {
+    int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+    int workers = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+    int queueSize = args.length > 2 ? Integer.parseInt(args[2]) : workers * 4;
+
+    ConversionServer server = new ConversionServer(port, workers, queueSize);
+    Runtime.getRuntime().addShutdownHook(new Thread(server::close, "epub-server-shutdown"));
+    server.warmUp();
+    server.start();
+  }
+
+  /**
+   * Start accepting requests.
+   */
+  public void start() {
+    http.start();
+    logger.info("Listening on http://{}:{} with {} workers, {} queued at most",
+        getAddress().getHostString(), getAddress().getPort(), workers.getMaximumPoolSize(),
+        workers.getQueue().remainingCapacity());
+  }
+
+  /**
+   * @return the address listened
+   */
+  public InetSocketAddress getAddress() {
+    return http.getAddress();
+  }
+
+  /**
+   * Load the built-in template, and make a small book once, so that the classes are loaded and
+   * compiled before the first request.
+   */
+  public void warmUp() {
+    long start = System.nanoTime();
+    Path folder = null;
+    try {
+      EpubTemplate.builtIn();
+      folder = Files.createTempDirectory("epub-warm-up");
+      Path txt = Files.writeString(folder.resolve("warm-up.txt"), "前言\n第1章 开始\n内容\n第2章 结束\n内容\n");
+      BookInfo book = new BookInfo();
+      book.setSrcTxtPath(txt);
+      book.setOutputDir(folder);
+      book.setBookTitle("warm-up");
+      book.setDirectZip(true);
+      new MakeEpubFromTemplate(book).make();
+      logger.info("Warmed up in {} ms", (System.nanoTime() - start) / 1_000_000);
+    } catch (IOException | RuntimeException e) {
+      logger.warn("Fail to warm up", e);
+    } finally {
+      deleteQuietly(folder);
+    }
+  }
+
+  private void handleConvert(HttpExchange exchange) throws IOException {
+    if (!"POST".equals(exchange.getRequestMethod())) {
+      exchange.getResponseHeaders().set("Allow", "POST");
+      send(exchange, 405, Map.of("error", "POST a bookinfo.yaml"));
+      return;
+    }
+
+    byte[] yaml;
+    try (InputStream in = exchange.getRequestBody()) {
+      yaml = in.readNBytes(MAX_BOOK_INFO_SIZE + 1);
+    }
+    if (yaml.length > MAX_BOOK_INFO_SIZE) {
+      send(exchange, 413, Map.of("error", "bookinfo.yaml is larger than " + MAX_BOOK_INFO_SIZE + " bytes"));
+      return;
+    }
+
+    Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+    BookInfo book;
+    try {
+      Path base = Path.of(query.getOrDefault("base", "")).toAbsolutePath();
+      book = BatchConverter.readBookInfo(new ByteArrayInputStream(yaml), base);
+      if (query.containsKey("src")) {
+        book.setSrcTxtPath(base.resolve(query.get("src")));
+      }
+    } catch (IOException | RuntimeException e) {
+      send(exchange, 400, Map.of("error", "Invalid bookinfo.yaml: " + e.getMessage()));
+      return;
+    }
+    if (book.getSrcTxtPath() == null || book.getOutputDir() == null) {
+      send(exchange, 400, Map.of("error", "srcTxtPath and outputDir are required"));
+      return;
+    }
+
+    long jobId = jobIds.incrementAndGet();
+    // books may share the same output directory
+    book.setTempFolder(book.getTempFolder() + "-job" + jobId);
+    try {
+      workers.execute(() -> convert(exchange, book, jobId));
+    } catch (RejectedExecutionException e) {
+      logger.warn("Reject job {} [{}]: {} running, {} queued",
+          jobId, book.getBookTitle(), workers.getActiveCount(), workers.getQueue().size());
+      exchange.getResponseHeaders().set("Retry-After", RETRY_AFTER_SECONDS);
+      send(exchange, 503, Map.of("error", "Too many books in queue, retry later"));
+    }
+  }
+
+  /**
+   * Make the book in a worker, then respond. If the book is validated, respond after the
+   * validation. The temp folder of the job is deleted once the book is made.
+   * <p>Any failure, even an Error such as OutOfMemoryError, is responded as 500, and the exchange is
+   * always closed, so the client never hangs.
+   */
+  private void convert(HttpExchange exchange, BookInfo book, long jobId) {
+    boolean validating = false;
+    try {
+      long start = System.nanoTime();
+      BuildReport report;
+      try {
+        report = new MakeEpubFromTemplate(book).make();
+      } finally {
+        deleteQuietly(book.getOutputDir().resolve(book.getTempFolder()));
+      }
+      logger.info("Job {} [{}] made in {} ms", jobId, book.getBookTitle(), (System.nanoTime() - start) / 1_000_000);
+
+      CompletableFuture<ValidationReport> validation =
+          report.getValidation() == null ? CompletableFuture.completedFuture(null) : report.getValidation();
+      validation.whenComplete((validationReport, e) -> {
+        try {
+          if (e != null) {
+            logger.error("Fail to validate job {}: {}", jobId, report.getEpubPath(), e);
+          }
+          sendQuietly(exchange, 200, toJson(jobId, report, validationReport));
+        } finally {
+          exchange.close();
+        }
+      });
+      validating = true;
+    } catch (Throwable e) {
+      logger.error("Fail to convert job {} [{}]", jobId, book.getBookTitle(), e);
+      sendQuietly(exchange, 500, Map.of("job", jobId, "error", String.valueOf(e)));
+    } finally {
+      if (!validating) {
+        exchange.close();
+      }
+    }
+  }
+
+  private void handleHealth(HttpExchange exchange) throws IOException {
+    Map<String, Object> health = new LinkedHashMap<>();
+    health.put("status", "ok");
+    health.put("workers", workers.getMaximumPoolSize());
+    health.put("running", workers.getActiveCount());
+    health.put("queued", workers.getQueue().size());
+    health.put("completed", workers.getCompletedTaskCount());
+    send(exchange, 200, health);
+  }
+
+  private static Map<String, Object> toJson(long jobId, BuildReport report, ValidationReport validation) {
+    Map<String, Object> result = new LinkedHashMap<>();
+    result.put("job", jobId);
+    result.put("bookTitle", report.getBookTitle());
+    result.put("epubPath", report.getEpubPath().toString());
+    result.put("millis", report.getMillis());
+    result.put("linesRead", report.getLinesRead());
+    result.put("chapters", report.getChapters());
+    result.put("entries", report.getEntries());
+    result.put("bytesWritten", report.getBytesWritten());
+    result.put("compressedSize", report.getCompressedSize());
+    Map<String, Long> stages = new LinkedHashMap<>();
+    for (StageReport stage : report.getStages()) {
+      stages.put(stage.getStage().name(), stage.getMillis());
+    }
+    result.put("stages", stages);
+
+    if (validation != null) {
+      Map<String, Object> checked = new LinkedHashMap<>();
+      checked.put("valid", validation.isValid());
+      checked.put("fatalErrors", validation.getFatalErrorCount());
+      checked.put("errors", validation.getErrorCount());
+      checked.put("warnings", validation.getWarningCount());
+      List<String> messages = new ArrayList<>();
+      for (ValidationMessage message : validation.getMessages()) {
+        messages.add(message.toString());
+      }
+      checked.put("messages", messages);
+      result.put("validation", checked);
+    }
+    return result;
+  }
+
+  private void sendQuietly(HttpExchange exchange, int status, Object body) {
+    try {
+      send(exchange, status, body);
+    } catch (IOException e) {
+      // the client is gone
+      logger.warn("Fail to respond: {}", e.toString());
+    }
+  }
+
+  private void send(HttpExchange exchange, int status, Object body) throws IOException {
+    byte[] bytes = json.writeValueAsBytes(body);
+    exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+    exchange.sendResponseHeaders(status, bytes.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(bytes);
+    }
+  }
+
+  private static Map<String, String> parseQuery(String rawQuery) {
+    Map<String, String> query = new HashMap<>();
+    if (rawQuery == null || rawQuery.isEmpty()) {
+      return query;
+    }
+    for (String pair : rawQuery.split("&")) {
+      int eq = pair.indexOf('=');
+      if (eq > 0) {
+        query.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+            URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+      }
+    }
+    return query;
+  }
+
+  private static void deleteQuietly(Path folder) {
+    if (folder == null) {
+      return;
+    }
+    try (Stream<Path> paths = Files.walk(folder)) {
+      paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+    } catch (IOException e) {
+      logger.debug("Fail to delete {}", folder, e);
+    }
+  }
+
+  /**
+   * Wait for the books accepted to be made, then stop. New requests are rejected meanwhile.
+   */
+  @Override
+  public void close() {
+    workers.shutdown();
+    try {
+      if (!workers.awaitTermination(1, TimeUnit.MINUTES)) {
+        logger.warn("Stop with {} books unfinished", workers.getQueue().size() + workers.getActiveCount());
+        workers.shutdownNow();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      workers.shutdownNow();
+    }
+    http.stop(0);
+    httpExecutor.shutdown();
+    logger.info("Stopped");
+  }
+}
@@ -0,0 +1,191 @@
+package com.quanqinle.epub.util;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Guess the regex list of chapter titles from a sample of the source, when the configured one does
+ * not match any line.
+ *
+ * <p>Each candidate pattern, such as "第N章", "Chapter N" or "1. title", is scored by the short lines
+ * it matches in the sample, and a title line with blank lines around scores double. A pattern
+ * matching too few lines, or too many to be titles, is dropped. A later, less specific pattern only
+ * wins if it scores clearly more than an earlier one. Markers like "序章" and "尾声" are
+ * added to the best pattern if they match any line.
+ *
+ * <p>Only some lines at the beginning of some ranges of the source are read, so it is cheap for a
+ * large file.
+ *
+ * @author quanqinle
+ */
+public class ChapterDetector {
+  /** numbers in Arabic or Chinese, such as "12", "１２", "十二" */
+  private static final String NUMBER = "[0-9０-９零〇一二两三四五六七八九十百千万]+";
+  /** the candidate chapter title regex list, the more specific the earlier */
+  private static final List<String> CANDIDATES = List.of(
+      "^第" + NUMBER + "[章回节话節話].{0,30}",
+      "^(?i:chapter\\s+(?:[0-9]+|[ivxlcdm]+|[a-z]+(?:-[a-z]+)?)(?:[\\s.:：-].{0,60})?)",
+      "^[零〇一二两三四五六七八九十百千]+[、.．](?:\\s*.{1,30})",
+      "^[0-9０-９]{1,4}(?:[.、．:：]\\s*.{0,30}|\\s+.{1,30})?",
+      // a Roman numeral alone or followed by "." or ":", not the pronoun "I" in a sentence
+      "^[IVXLCDM]{1,7}(?:[.:]\\s*.{0,60})?");
+  /** the regex of markers which are chapter titles without a number */
+  private static final String MARKERS =
+      "^(?:序章|楔子|引子|尾声|终章|后记|番外.{0,20}|(?i:prologue|epilogue))(?:\\s.{0,30})?";
+
+  /** the lines longer than this are not titles */
+  private static final int MAX_TITLE_LENGTH = 64;
+  /** the fewest titles in the sample to accept a pattern */
+  private static final int MIN_MATCHES = 3;
+  /** at most 1 title in so many non-blank lines, or it matches paragraphs */
+  private static final int MIN_LINES_PER_TITLE = 2;
+  /** a later candidate must score more than this times the best earlier one to win */
+  private static final double MIN_SCORE_RATIO = 1.5;
+  /** ranges of the source to sample */
+  private static final int SAMPLE_RANGES = 4;
+  /** lines read from the beginning of each range */
+  private static final int SAMPLE_LINES_PER_RANGE = 2000;
+
+  private ChapterDetector() {}
+
+  /**
+   * The regex list detected and why.
+   */
+  public static final class Detection {
+    private final List<String> regexList;
+    private final int matches;
+    private final int sampleLines;
+
+    Detection(List<String> regexList, int matches, int sampleLines) {
+      this.regexList = regexList;
+      this.matches = matches;
+      this.sampleLines = sampleLines;
+    }
+
+    /**
+     * @return the regex list of chapter titles
+     */
+    public List<String> getRegexList() {
+      return regexList;
+    }
+
+    /**
+     * @return the titles matched in the sample
+     */
+    public int getMatches() {
+      return matches;
+    }
+
+    /**
+     * @return the lines in the sample, including blank lines
+     */
+    public int getSampleLines() {
+      return sampleLines;
+    }
+
+    @Override
+    public String toString() {
+      return regexList + ", " + matches + " titles in " + sampleLines + " sample lines";
+    }
+  }
+
+  /**
+   * Read some lines at the beginning of some ranges of the source, replaced and trimmed like the
+   * lines parsed.
+   *
+   * @param source the source
+   * @param replacer built from the replace map
+   * @return sample lines, blank lines are kept as ""
+   */
+  public static List<String> sample(SourceReader source, MultiReplacer replacer) {
+    List<String> lines = new ArrayList<>();
+    for (Iterable<SourceLine> range : source.split(SAMPLE_RANGES)) {
+      Iterator<SourceLine> iterator = range.iterator();
+      for (int i = 0; i < SAMPLE_LINES_PER_RANGE && iterator.hasNext(); i++) {
+        String line = replacer.replaceAndTrim(iterator.next().toString());
+        lines.add(line.isBlank() ? "" : line);
+      }
+      // a range boundary is like a blank line
+      lines.add("");
+    }
+    return lines;
+  }
+
+  /**
+   * @param lines sample lines
+   * @param matcher title matcher
+   * @return true if any line matches
+   */
+  public static boolean anyMatch(List<String> lines, TitleMatcher matcher) {
+    for (String line : lines) {
+      if (matcher.matches(line)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Pick the best candidate pattern by the sample.
+   *
+   * @param lines sample lines, blank lines as ""
+   * @return the regex list detected, null if no candidate looks like chapter titles
+   */
+  public static Detection detect(List<String> lines) {
+    int nonBlank = 0;
+    for (String line : lines) {
+      if (!line.isEmpty()) {
+        nonBlank++;
+      }
+    }
+
+    String best = null;
+    int bestScore = 0;
+    int bestMatches = 0;
+    for (String candidate : CANDIDATES) {
+      Pattern pattern = Pattern.compile(candidate);
+      int matches = 0;
+      int score = 0;
+      for (int i = 0; i < lines.size(); i++) {
+        if (isTitle(lines, i, pattern)) {
+          matches++;
+          score += isIsolated(lines, i) ? 2 : 1;
+        }
+      }
+      if (matches >= MIN_MATCHES && matches * MIN_LINES_PER_TITLE <= nonBlank
+          && score > bestScore * MIN_SCORE_RATIO) {
+        best = candidate;
+        bestScore = score;
+        bestMatches = matches;
+      }
+    }
+    if (best == null) {
+      return null;
+    }
+
+    List<String> regexList = new ArrayList<>(List.of(best));
+    Pattern markers = Pattern.compile(MARKERS);
+    for (int i = 0; i < lines.size(); i++) {
+      if (isTitle(lines, i, markers)) {
+        regexList.add(MARKERS);
+        break;
+      }
+    }
+    return new Detection(regexList, bestMatches, lines.size());
+  }
+
+  private static boolean isTitle(List<String> lines, int index, Pattern pattern) {
+    String line = lines.get(index);
+    return !line.isEmpty() && line.length() <= MAX_TITLE_LENGTH && pattern.matcher(line).matches();
+  }
+
+  /**
+   * @return true if the line is next to a blank line, or the first or the last line
+   */
+  private static boolean isIsolated(List<String> lines, int index) {
+    return index == 0 || index == lines.size() - 1
+        || lines.get(index - 1).isEmpty() || lines.get(index + 1).isEmpty();
+  }
+}
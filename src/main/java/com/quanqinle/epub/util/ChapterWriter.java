@@ -0,0 +1,154 @@
+package com.quanqinle.epub.util;
+
+import com.quanqinle.epub.entity.ChapterBody;
+import com.quanqinle.epub.entity.FileInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Write chapter .xhtml files into an {@link EpubSink}, sequentially or by a bounded thread pool.
+ *
+ * <p>Only the files are written concurrently. The TOC is still organized by the caller in the
+ * order of submitting, so it is deterministic.
+ *
+ * <p>Once a write fails, the remaining files are skipped, and {@link #await()} throws the first
+ * error. A RuntimeException is thrown as the cause of an IOException.
+ *
+ * @author quanqinle
+ */
+public class ChapterWriter implements AutoCloseable {
+  private static final Logger logger = LoggerFactory.getLogger(ChapterWriter.class);
+
+  /** the folder of .xhtml files inside the epub */
+  public static final String TEXT_FOLDER = "OEBPS/Text/";
+
+  /** where to write */
+  private final EpubSink sink;
+
+  /** null if write sequentially */
+  private final ExecutorService executor;
+  /** limit files submitted but not written yet, so their lines do not pile up in memory */
+  private final Semaphore pending;
+  /** the first error */
+  private final AtomicReference<IOException> firstError = new AtomicReference<>();
+
+  /**
+   * Constructor
+   *
+   * @param sink where to write
+   * @param threads the number of writing threads. Write sequentially in the caller thread if less
+   *     than 2.
+   */
+  public ChapterWriter(EpubSink sink, int threads) {
+    this.sink = sink;
+    if (threads < 2) {
+      this.executor = null;
+      this.pending = null;
+    } else {
+      this.executor = Executors.newFixedThreadPool(threads);
+      this.pending = new Semaphore(threads * 2);
+    }
+  }
+
+  /**
+   * Write the file, using {@link FileInfo#getDescribe()} as title and {@link
+   * FileInfo#getFullName()} as the file name in {@link #TEXT_FOLDER}.
+   *
+   * @param fileInfo the file to write
+   * @param releaseLines if true, release the lines or the body of fileInfo once it is rendered, see
+   *     {@link FileInfo#releaseBody()}
+   */
+  public void submit(FileInfo fileInfo, boolean releaseLines) {
+    if (firstError.get() != null) {
+      logger.warn("Skip writing [{}] after a failure", fileInfo.getFullName());
+      return;
+    }
+
+    if (executor == null) {
+      write(fileInfo, releaseLines);
+      return;
+    }
+
+    try {
+      pending.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      firstError.compareAndSet(null, new InterruptedIOException("Interrupted when writing"));
+      return;
+    }
+    executor.execute(
+        () -> {
+          try {
+            write(fileInfo, releaseLines);
+          } finally {
+            pending.release();
+          }
+        });
+  }
+
+  private void write(FileInfo fileInfo, boolean releaseLines) {
+    try {
+      String entryName = TEXT_FOLDER + fileInfo.getFullName();
+      ChapterBody body = fileInfo.getBody();
+      if (body != null) {
+        sink.writeHtml(entryName, fileInfo.getDescribe(), body);
+        if (releaseLines) {
+          fileInfo.releaseBody();
+        }
+      } else {
+        byte[] html = EpubUtils.renderHtml(fileInfo.getDescribe(), fileInfo.getLines());
+        if (releaseLines) {
+          fileInfo.releaseBody();
+        }
+        sink.write(entryName, html);
+      }
+      logger.debug("Saved file: {}, chapter: {}", fileInfo.getFullName(), fileInfo.getDescribe());
+    } catch (IOException e) {
+      logger.error("Fail to save: {}", fileInfo.getFullName());
+      firstError.compareAndSet(null, e);
+    } catch (RuntimeException e) {
+      // such as an UncheckedIOException from a span of the source, not lost on a pool thread
+      logger.error("Fail to save: {}", fileInfo.getFullName());
+      firstError.compareAndSet(null, new IOException("Fail to save " + fileInfo.getFullName(), e));
+    }
+  }
+
+  /**
+   * Wait for all the submitted files to be written.
+   *
+   * @throws IOException the first error when writing
+   */
+  public void await() throws IOException {
+    if (executor != null) {
+      executor.shutdown();
+      try {
+        while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+          logger.info("Waiting for writing chapters...");
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted when writing");
+      }
+    }
+
+    IOException e = firstError.get();
+    if (e != null) {
+      throw e;
+    }
+  }
+
+  @Override
+  public void close() {
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,98 @@
+package com.quanqinle.epub.util;
+
+import java.io.ByteArrayOutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+/**
+ * A zip entry whose data is already compressed, which can be written by {@link RawZipWriter}
+ * without compressing again.
+ *
+ * @author quanqinle
+ */
+public class CompressedEntry {
+  /** {@link ZipEntry#STORED} or {@link ZipEntry#DEFLATED} */
+  private final int method;
+  /** CRC-32 of the uncompressed data */
+  private final long crc;
+  /** size of the uncompressed data */
+  private final long size;
+  /** the data, raw deflate stream if {@link ZipEntry#DEFLATED} */
+  private final byte[] data;
+
+  public CompressedEntry(int method, long crc, long size, byte[] data) {
+    this.method = method;
+    this.crc = crc;
+    this.size = size;
+    this.data = data;
+  }
+
+  /**
+   * Store the content without compressing.
+   *
+   * @param content uncompressed content
+   * @return entry
+   */
+  public static CompressedEntry store(byte[] content) {
+    return new CompressedEntry(ZipEntry.STORED, crcOf(content), content.length, content);
+  }
+
+  /**
+   * Store the content if the level is {@link CompressionPolicy#STORE}, otherwise deflate it.
+   *
+   * @param content uncompressed content
+   * @param level 0-9 or {@link Deflater#DEFAULT_COMPRESSION}
+   * @return entry
+   */
+  public static CompressedEntry compress(byte[] content, int level) {
+    return level == CompressionPolicy.STORE ? store(content) : deflate(content, level);
+  }
+
+  /**
+   * Compress the content by deflate.
+   *
+   * @param content uncompressed content
+   * @param level deflate level, 0-9 or {@link Deflater#DEFAULT_COMPRESSION}
+   * @return entry
+   */
+  public static CompressedEntry deflate(byte[] content, int level) {
+    // nowrap: raw deflate data without zlib header, as zip requires
+    Deflater deflater = new Deflater(level, true);
+    try {
+      deflater.setInput(content);
+      deflater.finish();
+      ByteArrayOutputStream out = new ByteArrayOutputStream(content.length / 2 + 64);
+      byte[] buffer = new byte[8192];
+      while (!deflater.finished()) {
+        int n = deflater.deflate(buffer);
+        out.write(buffer, 0, n);
+      }
+      return new CompressedEntry(ZipEntry.DEFLATED, crcOf(content), content.length, out.toByteArray());
+    } finally {
+      deflater.end();
+    }
+  }
+
+  private static long crcOf(byte[] content) {
+    CRC32 crc = new CRC32();
+    crc.update(content);
+    return crc.getValue();
+  }
+
+  public int getMethod() {
+    return method;
+  }
+
+  public long getCrc() {
+    return crc;
+  }
+
+  public long getSize() {
+    return size;
+  }
+
+  public byte[] getData() {
+    return data;
+  }
+}
@@ -0,0 +1,107 @@
+package com.quanqinle.epub.util;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+/**
+ * Choose the deflate level of each file in the .epub by its suffix.
+ *
+ * <p>Level {@link #STORE} means the file is stored without compressing, which is the best for the
+ * media already compressed, such as .jpg and .png: deflating them costs time but saves nothing.
+ *
+ * <p>The mimetype is always stored, whatever the policy is.
+ *
+ * @author quanqinle
+ */
+public class CompressionPolicy {
+  /** store without compressing */
+  public static final int STORE = 0;
+
+  /** suffixes of the media already compressed */
+  private static final String[] COMPRESSED_MEDIA = {
+    "jpg", "jpeg", "png", "gif", "webp", "mp3", "mp4", "m4a", "ogg", "woff", "woff2", "zip", "epub"
+  };
+
+  /** lower-case suffix without dot -> level */
+  private final Map<String, Integer> levels;
+  /** level of the suffixes not in {@link #levels} */
+  private final int defaultLevel;
+
+  /**
+   * Constructor
+   *
+   * @param levels suffix without dot, such as "jpg" -> level, 0-9 or {@link Deflater#DEFAULT_COMPRESSION}
+   * @param defaultLevel level of the other files
+   */
+  public CompressionPolicy(Map<String, Integer> levels, int defaultLevel) {
+    this.levels = new HashMap<>();
+    if (levels != null) {
+      levels.forEach((suffix, level) -> this.levels.put(suffix.toLowerCase(Locale.ROOT), checkLevel(level)));
+    }
+    this.defaultLevel = checkLevel(defaultLevel);
+  }
+
+  /**
+   * Store the media already compressed, deflate the others at the default level.
+   *
+   * @return policy
+   */
+  public static CompressionPolicy defaultPolicy() {
+    Map<String, Integer> levels = new HashMap<>();
+    for (String suffix : COMPRESSED_MEDIA) {
+      levels.put(suffix, STORE);
+    }
+    return new CompressionPolicy(levels, Deflater.DEFAULT_COMPRESSION);
+  }
+
+  /**
+   * Override some levels of this policy.
+   *
+   * @param overrides suffix without dot -> level, null or empty to override nothing
+   * @return a new policy
+   */
+  public CompressionPolicy withLevels(Map<String, Integer> overrides) {
+    if (overrides == null || overrides.isEmpty()) {
+      return this;
+    }
+    Map<String, Integer> merged = new HashMap<>(levels);
+    merged.putAll(overrides);
+    return new CompressionPolicy(merged, defaultLevel);
+  }
+
+  /**
+   * @param entryName the entry name in the .epub
+   * @return the level of the file
+   */
+  public int levelOf(String entryName) {
+    if (EpubUtils.MIMETYPE_FILE_NAME.equals(entryName)) {
+      return STORE;
+    }
+    int dot = entryName.lastIndexOf('.');
+    if (dot < 0 || dot < entryName.lastIndexOf('/')) {
+      return defaultLevel;
+    }
+    Integer level = levels.get(entryName.substring(dot + 1).toLowerCase(Locale.ROOT));
+    return level == null ? defaultLevel : level;
+  }
+
+  /**
+   * Compress the file by its level.
+   *
+   * @param entryName the entry name in the .epub
+   * @param content uncompressed content
+   * @return entry
+   */
+  public CompressedEntry compress(String entryName, byte[] content) {
+    return CompressedEntry.compress(content, levelOf(entryName));
+  }
+
+  private static int checkLevel(int level) {
+    if (level != Deflater.DEFAULT_COMPRESSION && (level < 0 || level > 9)) {
+      throw new IllegalArgumentException("Invalid deflate level: " + level);
+    }
+    return level;
+  }
+}
@@ -0,0 +1,409 @@
+package com.quanqinle.epub.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.GraphicsEnvironment;
+import java.awt.RenderingHints;
+import java.awt.font.FontRenderContext;
+import java.awt.font.LineBreakMeasurer;
+import java.awt.font.TextAttribute;
+import java.awt.font.TextLayout;
+import java.awt.geom.AffineTransform;
+import java.awt.image.AffineTransformOp;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.text.AttributedString;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Make the cover picture of a book: downscale and recompress a large picture, or generate one of
+ * the title and the author if none is given. The result is always a JPEG.
+ *
+ * <p>A picture within the max size, already a JPEG, is kept byte for byte, so it is never
+ * recompressed. The EXIF orientation of a photo is applied when it is downscaled, since the
+ * metadata is not written.
+ *
+ * <p>The results are cached in memory by the SHA-256 of the input and the options, so the books of
+ * a batch, or the requests of a server, with the same cover do not make it again.
+ *
+ * @author quanqinle
+ */
+public class CoverMaker {
+  private static final Logger logger = LoggerFactory.getLogger(CoverMaker.class);
+
+  /** created by {@link #getShared()} */
+  private static CoverMaker shared;
+
+  /** the width of a generated cover, over its height */
+  private static final double ASPECT_RATIO = 2.0 / 3;
+  /** the height of a generated cover, if no max size */
+  private static final int DEFAULT_HEIGHT = 1600;
+  /** the fonts tried for the text of a generated cover, before the installed ones */
+  private static final List<String> PREFERRED_FONTS = List.of(Font.SERIF, Font.SANS_SERIF);
+
+  /** the max number of covers cached */
+  private final int capacity;
+  /** the covers made, by key, the least recently used first */
+  private final Map<String, byte[]> cache;
+  private final AtomicInteger hits = new AtomicInteger();
+  private final AtomicInteger misses = new AtomicInteger();
+
+  /**
+   * Constructor
+   *
+   * @param capacity the max number of covers cached
+   */
+  public CoverMaker(int capacity) {
+    this.capacity = capacity;
+    this.cache = new LinkedHashMap<>(16, 0.75f, true);
+  }
+
+  /**
+   * The maker shared in the JVM, such as by the books of a batch.
+   *
+   * @return the maker, created at the first call
+   */
+  public static synchronized CoverMaker getShared() {
+    if (shared == null) {
+      shared = new CoverMaker(64);
+    }
+    return shared;
+  }
+
+  /**
+   * Downscale the picture if its width or height is more than maxSize, and compress it into a JPEG.
+   *
+   * @param image the picture, a JPEG, PNG, GIF or BMP
+   * @param maxSize the max width and height in pixels, 0 to only convert it into a JPEG
+   * @param quality the JPEG quality of a picture compressed, from 0 to 1
+   * @return a JPEG, or the picture itself if it is a JPEG within maxSize or can not be read
+   * @throws IOException -
+   */
+  public byte[] optimize(byte[] image, int maxSize, float quality) throws IOException {
+    String key = "optimize-" + EntryCache.sha256(image) + "-" + maxSize + "-" + quality;
+    byte[] cached = getCached(key);
+    if (cached != null) {
+      return cached;
+    }
+
+    BufferedImage src;
+    try {
+      // closed by ImageIO.read(), and nothing to close in memory if not
+      src = ImageIO.read(new MemoryCacheImageInputStream(new ByteArrayInputStream(image)));
+    } catch (IOException e) {
+      // such as a CMYK JPEG
+      logger.warn("Keep the cover as it is, fail to read it: {}", e.toString());
+      src = null;
+    }
+    if (src == null) {
+      return image;
+    }
+
+    boolean isJpeg = isJpeg(image);
+    int width = src.getWidth();
+    int height = src.getHeight();
+    byte[] result;
+    if (maxSize <= 0 || Math.max(width, height) <= maxSize) {
+      result = isJpeg ? image : toJpeg(src, quality);
+    } else {
+      BufferedImage scaled = scale(orient(src, isJpeg ? exifOrientation(image) : 1), maxSize);
+      result = toJpeg(scaled, quality);
+      logger.info("Cover {}x{} {} KB is downscaled to {}x{} {} KB", width, height, image.length / 1024,
+          scaled.getWidth(), scaled.getHeight(), result.length / 1024);
+    }
+    putCached(key, result);
+    return result;
+  }
+
+  /**
+   * Generate a cover of the title and the author.
+   *
+   * @param title book title
+   * @param author author, could be empty
+   * @param maxSize the height in pixels, 0 for the default height
+   * @param quality the JPEG quality, from 0 to 1
+   * @return a JPEG, null if no font can display the text
+   * @throws IOException -
+   */
+  public byte[] generate(String title, String author, int maxSize, float quality) throws IOException {
+    String text = title + "\n" + (author == null ? "" : author);
+    String key = "generate-" + EntryCache.sha256(text.getBytes(StandardCharsets.UTF_8)) + "-" + maxSize + "-" + quality;
+    byte[] cached = getCached(key);
+    if (cached != null) {
+      return cached;
+    }
+
+    String fontName = findFont(text.replace("\n", ""));
+    if (fontName == null) {
+      logger.warn("No font can display [{}], no cover is generated", text.replace('\n', ' '));
+      return null;
+    }
+
+    int height = maxSize > 0 ? maxSize : DEFAULT_HEIGHT;
+    int width = (int) Math.round(height * ASPECT_RATIO);
+    BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    Graphics2D g = image.createGraphics();
+    try {
+      g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+      g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+      g.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_ON);
+
+      // the same title always has the same dark background
+      float hue = (title.hashCode() & 0xFFFF) / (float) 0xFFFF;
+      g.setColor(Color.getHSBColor(hue, 0.45f, 0.35f));
+      g.fillRect(0, 0, width, height);
+      int margin = width / 10;
+      g.setColor(Color.getHSBColor(hue, 0.15f, 0.95f));
+      g.fillRect(margin, height * 3 / 5, width - 2 * margin, Math.max(2, height / 400));
+
+      float bottom = drawText(g, title, new Font(fontName, Font.BOLD, width / 9), margin, height / 6f, width - 2 * margin);
+      if (author != null && !author.isBlank()) {
+        drawText(g, author, new Font(fontName, Font.PLAIN, width / 18), margin,
+            Math.max(bottom, height * 3 / 5f) + height / 20f, width - 2 * margin);
+      }
+    } finally {
+      g.dispose();
+    }
+
+    byte[] result = toJpeg(image, quality);
+    putCached(key, result);
+    return result;
+  }
+
+  public int getHits() {
+    return hits.get();
+  }
+
+  public int getMisses() {
+    return misses.get();
+  }
+
+  private synchronized byte[] getCached(String key) {
+    byte[] cached = cache.get(key);
+    if (cached != null) {
+      hits.incrementAndGet();
+    } else {
+      misses.incrementAndGet();
+    }
+    return cached;
+  }
+
+  private synchronized void putCached(String key, byte[] result) {
+    cache.put(key, result);
+    if (cache.size() > capacity) {
+      cache.remove(cache.keySet().iterator().next());
+    }
+  }
+
+  /**
+   * Draw the text centered, wrapped into lines of the width.
+   *
+   * @return the y after the last line
+   */
+  private static float drawText(Graphics2D g, String text, Font font, float x, float y, float width) {
+    AttributedString attributed = new AttributedString(text);
+    attributed.addAttribute(TextAttribute.FONT, font);
+    FontRenderContext context = g.getFontRenderContext();
+    LineBreakMeasurer measurer = new LineBreakMeasurer(attributed.getIterator(), context);
+
+    List<TextLayout> lines = new ArrayList<>();
+    while (measurer.getPosition() < text.length()) {
+      lines.add(measurer.nextLayout(width));
+    }
+    for (TextLayout line : lines) {
+      y += line.getAscent();
+      line.draw(g, x + (width - line.getAdvance()) / 2, y);
+      y += line.getDescent() + line.getLeading();
+    }
+    return y;
+  }
+
+  /**
+   * @return the name of a font which can display all the text, null if none
+   */
+  private static String findFont(String text) {
+    for (String name : PREFERRED_FONTS) {
+      if (new Font(name, Font.PLAIN, 12).canDisplayUpTo(text) == -1) {
+        return name;
+      }
+    }
+    for (Font font : GraphicsEnvironment.getLocalGraphicsEnvironment().getAllFonts()) {
+      if (font.canDisplayUpTo(text) == -1) {
+        return font.getName();
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Scale the picture down to fit in maxSize, halving it step by step, so that it is smooth with
+   * bilinear interpolation.
+   */
+  private static BufferedImage scale(BufferedImage src, int maxSize) {
+    double ratio = (double) maxSize / Math.max(src.getWidth(), src.getHeight());
+    int targetWidth = Math.max(1, (int) Math.round(src.getWidth() * ratio));
+    int targetHeight = Math.max(1, (int) Math.round(src.getHeight() * ratio));
+
+    BufferedImage image = toRgb(src);
+    int width = image.getWidth();
+    int height = image.getHeight();
+    do {
+      width = Math.max(targetWidth, width / 2);
+      height = Math.max(targetHeight, height / 2);
+      BufferedImage next = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+      Graphics2D g = next.createGraphics();
+      try {
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        g.drawImage(image, 0, 0, width, height, null);
+      } finally {
+        g.dispose();
+      }
+      image = next;
+    } while (width != targetWidth || height != targetHeight);
+    return image;
+  }
+
+  /**
+   * @return the picture without alpha, on a white background
+   */
+  private static BufferedImage toRgb(BufferedImage src) {
+    if (src.getType() == BufferedImage.TYPE_INT_RGB) {
+      return src;
+    }
+    BufferedImage rgb = new BufferedImage(src.getWidth(), src.getHeight(), BufferedImage.TYPE_INT_RGB);
+    Graphics2D g = rgb.createGraphics();
+    try {
+      g.drawImage(src, 0, 0, Color.WHITE, null);
+    } finally {
+      g.dispose();
+    }
+    return rgb;
+  }
+
+  private static byte[] toJpeg(BufferedImage image, float quality) throws IOException {
+    ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ImageOutputStream out = new MemoryCacheImageOutputStream(bytes)) {
+      ImageWriteParam param = writer.getDefaultWriteParam();
+      param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+      param.setCompressionQuality(quality);
+      writer.setOutput(out);
+      writer.write(null, new IIOImage(toRgb(image), null, null), param);
+    } finally {
+      writer.dispose();
+    }
+    return bytes.toByteArray();
+  }
+
+  private static boolean isJpeg(byte[] image) {
+    return image.length > 2 && (image[0] & 0xFF) == 0xFF && (image[1] & 0xFF) == 0xD8;
+  }
+
+  /**
+   * Rotate the picture as its EXIF orientation. The mirrored orientations are not supported.
+   *
+   * @param orientation 3 for 180°, 6 for 90° clockwise, 8 for 90° counterclockwise
+   */
+  private static BufferedImage orient(BufferedImage src, int orientation) {
+    int width = src.getWidth();
+    int height = src.getHeight();
+    AffineTransform transform;
+    switch (orientation) {
+      case 3 -> transform = new AffineTransform(-1, 0, 0, -1, width, height);
+      case 6 -> transform = new AffineTransform(0, 1, -1, 0, height, 0);
+      case 8 -> transform = new AffineTransform(0, -1, 1, 0, 0, width);
+      default -> {
+        return src;
+      }
+    }
+    return new AffineTransformOp(transform, AffineTransformOp.TYPE_NEAREST_NEIGHBOR).filter(toRgb(src), null);
+  }
+
+  /**
+   * Find the orientation in the EXIF of a JPEG.
+   *
+   * @return the orientation, 1 if none or the EXIF is corrupt
+   */
+  static int exifOrientation(byte[] jpeg) {
+    try {
+      return findExifOrientation(jpeg);
+    } catch (IndexOutOfBoundsException e) {
+      logger.debug("Corrupt EXIF, no orientation", e);
+      return 1;
+    }
+  }
+
+  private static int findExifOrientation(byte[] jpeg) {
+    int i = 2;
+    while (i + 4 <= jpeg.length && (jpeg[i] & 0xFF) == 0xFF) {
+      int marker = jpeg[i + 1] & 0xFF;
+      int length = ((jpeg[i + 2] & 0xFF) << 8) | (jpeg[i + 3] & 0xFF);
+      // start of scan, no more metadata
+      if (marker == 0xDA) {
+        break;
+      }
+      int start = i + 4;
+      if (marker == 0xE1 && start + 14 <= jpeg.length
+          && new String(jpeg, start, 6, StandardCharsets.ISO_8859_1).equals("Exif\0\0")) {
+        return tiffOrientation(jpeg, start + 6, Math.min(jpeg.length, i + 2 + length));
+      }
+      i += 2 + length;
+    }
+    return 1;
+  }
+
+  private static int tiffOrientation(byte[] b, int tiff, int end) {
+    if (tiff + 8 > end) {
+      return 1;
+    }
+    boolean bigEndian = b[tiff] == 'M';
+    // the offset is unsigned, a corrupt one may be negative or overflow
+    long offset = tiff + (readInt(b, tiff + 4, bigEndian) & 0xFFFFFFFFL);
+    if (offset < tiff || offset + 2 > end) {
+      return 1;
+    }
+    int ifd = (int) offset;
+    int entries = readShort(b, ifd, bigEndian);
+    for (int k = 0; k < entries; k++) {
+      int entry = ifd + 2 + k * 12;
+      if (entry + 12 > end) {
+        break;
+      }
+      if (readShort(b, entry, bigEndian) == 0x0112) {
+        return readShort(b, entry + 8, bigEndian);
+      }
+    }
+    return 1;
+  }
+
+  private static int readShort(byte[] b, int i, boolean bigEndian) {
+    return bigEndian
+        ? ((b[i] & 0xFF) << 8) | (b[i + 1] & 0xFF)
+        : ((b[i + 1] & 0xFF) << 8) | (b[i] & 0xFF);
+  }
+
+  private static int readInt(byte[] b, int i, boolean bigEndian) {
+    return bigEndian
+        ? (readShort(b, i, true) << 16) | readShort(b, i + 2, true)
+        : (readShort(b, i + 2, false) << 16) | readShort(b, i, false);
+  }
+}
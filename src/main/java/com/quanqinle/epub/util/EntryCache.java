@@ -0,0 +1,217 @@
+package com.quanqinle.epub.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * A folder of compressed zip entries, keyed by the SHA-256 of the uncompressed content and the
+ * compression level.
+ *
+ * <p>When the epub is made again, a file with the same content is not compressed again, its
+ * compressed data is read from the cache instead. So a one-chapter edit only compresses that
+ * chapter.
+ *
+ * <p>Everything that changes a file, such as the template, the config or the chapter text, changes
+ * its content, and so its hash. Stale entries are simply not hit, and removed by {@link #prune()}.
+ *
+ * <p>One folder could also be a store shared by many books, such as editions of the same novel with
+ * different covers or replace maps: a chapter, stylesheet or image already compressed for any book
+ * is reused. The bytes hit and missed tell how much the books duplicate each other. Do not
+ * {@link #prune()} a shared store, which deletes the entries of the other books.
+ *
+ * @author quanqinle
+ */
+public class EntryCache {
+  private static final Logger logger = LoggerFactory.getLogger(EntryCache.class);
+
+  /** suffix of the cache files */
+  private static final String SUFFIX = ".z";
+  /** the first int of a cache file */
+  private static final int MAGIC = 0x45505A31;
+
+  /** the cache folder */
+  private final Path folder;
+  /** hashes used since created */
+  private final Set<String> used = ConcurrentHashMap.newKeySet();
+  private final AtomicInteger hits = new AtomicInteger();
+  private final AtomicInteger misses = new AtomicInteger();
+  /** the uncompressed bytes of the entries hit */
+  private final AtomicLong bytesHit = new AtomicLong();
+  /** the uncompressed bytes of the entries missed, i.e. compressed */
+  private final AtomicLong bytesMissed = new AtomicLong();
+
+  /**
+   * Constructor
+   *
+   * @param folder the cache folder, created if not exist
+   * @throws IOException -
+   */
+  public EntryCache(Path folder) throws IOException {
+    this.folder = folder;
+    Files.createDirectories(folder);
+  }
+
+  /**
+   * Get the compressed entry of the content at the level from the cache, or compress it and save in
+   * the cache.
+   * <p>The same content compressed at different levels are cached separately, so a changed
+   * {@link CompressionPolicy} takes effect in the next build.
+   *
+   * @param content uncompressed content
+   * @param level the level used by the compressor, part of the key
+   * @param compressor compress the content if not cached
+   * @return the compressed entry
+   * @throws IOException -
+   */
+  public CompressedEntry get(byte[] content, int level, Compressor compressor) throws IOException {
+    String hash = sha256(content) + "-" + level;
+    used.add(hash);
+
+    Path file = folder.resolve(hash + SUFFIX);
+    CompressedEntry entry = read(file, content.length);
+    if (entry != null) {
+      hits.incrementAndGet();
+      bytesHit.addAndGet(content.length);
+      return entry;
+    }
+
+    misses.incrementAndGet();
+    bytesMissed.addAndGet(content.length);
+    entry = compressor.compress(content);
+    write(file, entry);
+    return entry;
+  }
+
+  /**
+   * Delete the cache files not used since this cache is created.
+   *
+   * @throws IOException -
+   */
+  public void prune() throws IOException {
+    List<Path> files;
+    try (Stream<Path> paths = Files.list(folder)) {
+      files = paths.filter(path -> path.getFileName().toString().endsWith(SUFFIX)).toList();
+    }
+
+    int deleted = 0;
+    for (Path file : files) {
+      String name = file.getFileName().toString();
+      if (!used.contains(name.substring(0, name.length() - SUFFIX.length()))) {
+        Files.deleteIfExists(file);
+        deleted++;
+      }
+    }
+    logger.info("Entry cache {}: {} hits, {} misses, {} stale files deleted", folder, hits, misses, deleted);
+  }
+
+  public int getHits() {
+    return hits.get();
+  }
+
+  public int getMisses() {
+    return misses.get();
+  }
+
+  /**
+   * @return the uncompressed bytes of the entries reused since created
+   */
+  public long getBytesHit() {
+    return bytesHit.get();
+  }
+
+  /**
+   * @return the uncompressed bytes of the entries compressed since created
+   */
+  public long getBytesMissed() {
+    return bytesMissed.get();
+  }
+
+  public Path getFolder() {
+    return folder;
+  }
+
+  /**
+   * @return null if not cached or broken
+   */
+  private static CompressedEntry read(Path file, long size) {
+    if (!Files.exists(file)) {
+      return null;
+    }
+    try (InputStream in = Files.newInputStream(file);
+        DataInputStream dis = new DataInputStream(in)) {
+      if (dis.readInt() != MAGIC) {
+        return null;
+      }
+      int method = dis.readUnsignedShort();
+      long crc = dis.readLong();
+      long cachedSize = dis.readLong();
+      if (cachedSize != size) {
+        return null;
+      }
+      byte[] data = dis.readAllBytes();
+      return new CompressedEntry(method, crc, cachedSize, data);
+    } catch (IOException e) {
+      logger.warn("Ignore broken cache file: {}", file);
+      return null;
+    }
+  }
+
+  private static void write(Path file, CompressedEntry entry) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(entry.getData().length + 32);
+    try (DataOutputStream dos = new DataOutputStream(bytes)) {
+      dos.writeInt(MAGIC);
+      dos.writeShort(entry.getMethod());
+      dos.writeLong(entry.getCrc());
+      dos.writeLong(entry.getSize());
+      dos.write(entry.getData());
+    }
+
+    // write a temp file then move, so a broken file is never seen by other threads or builds
+    Path temp = Files.createTempFile(file.getParent(), "entry", ".tmp");
+    try {
+      Files.write(temp, bytes.toByteArray());
+      try {
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+      }
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  static String sha256(byte[] content) {
+    try {
+      return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Compress the content not found in the cache
+   */
+  @FunctionalInterface
+  public interface Compressor {
+    CompressedEntry compress(byte[] content) throws IOException;
+  }
+}
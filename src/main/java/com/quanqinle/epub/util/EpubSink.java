@@ -0,0 +1,48 @@
+package com.quanqinle.epub.util;
+
+import com.quanqinle.epub.entity.ChapterBody;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Where the files of an epub are written to, such as a folder or a .epub file.
+ *
+ * @author quanqinle
+ */
+public interface EpubSink extends Closeable {
+
+  /**
+   * Write a file of the epub.
+   * <p>It could be called by several threads at the same time.
+   *
+   * @param entryName the relative path inside the epub, using / sign, such as "OEBPS/Text/chapter-001.xhtml"
+   * @param content the file content
+   * @throws IOException -
+   */
+  void write(String entryName, byte[] content) throws IOException;
+
+  /**
+   * Write a text file of the epub in UTF-8.
+   *
+   * @param entryName the relative path inside the epub, using / sign
+   * @param content the file content
+   * @throws IOException -
+   */
+  default void write(String entryName, String content) throws IOException {
+    write(entryName, content.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Write a chapter as a html file of the epub, see {@link EpubUtils#renderHtml(String, ChapterBody)}.
+   *
+   * @param entryName the relative path inside the epub, using / sign
+   * @param title chapter title
+   * @param body chapter body
+   * @throws IOException -
+   */
+  default void writeHtml(String entryName, String title, ChapterBody body) throws IOException {
+    write(entryName, EpubUtils.renderHtml(title, body));
+  }
+}
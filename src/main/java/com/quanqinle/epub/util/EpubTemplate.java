@@ -0,0 +1,245 @@
+package com.quanqinle.epub.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystemAlreadyExistsException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * The files of an epub template, loaded into memory once and shared by all the builds.
+ *
+ * <p>A template folder is loaded again only when any file in it is added, removed or modified,
+ * which is checked by the size and the modified time of the files, without reading them. The
+ * built-in template is read from the classpath, a folder or a jar.
+ *
+ * <p>The text files with placeholders are split into {@link TemplateText} once, on first use.
+ *
+ * @author quanqinle
+ */
+public class EpubTemplate {
+  private static final Logger logger = LoggerFactory.getLogger(EpubTemplate.class);
+
+  /** template folder -> loaded template */
+  private static final Map<Path, EpubTemplate> CACHE = new ConcurrentHashMap<>();
+  /** the built-in template in a jar, which never changes */
+  private static volatile EpubTemplate builtInJar;
+
+  /** where the template is loaded from */
+  private final String source;
+  /** entry name -> content, sorted by entry name */
+  private final Map<String, byte[]> files;
+  /** the size and modified time of all files, null if the template never changes */
+  private final String signature;
+  /** entry name -> split text */
+  private final Map<String, TemplateText> texts = new ConcurrentHashMap<>();
+
+  private EpubTemplate(String source, Map<String, byte[]> files, String signature) {
+    this.source = source;
+    this.files = Collections.unmodifiableMap(files);
+    this.signature = signature;
+  }
+
+  /**
+   * Get the template of a folder, loaded again if changed since last time.
+   *
+   * @param folder template folder
+   * @return template
+   * @throws IOException if fail to read the folder
+   */
+  public static EpubTemplate of(Path folder) throws IOException {
+    Path key = folder.toAbsolutePath().normalize();
+    String signature = signatureOf(key);
+    EpubTemplate cached = CACHE.get(key);
+    if (cached != null && cached.signature.equals(signature)) {
+      return cached;
+    }
+
+    EpubTemplate template = new EpubTemplate(key.toString(), readFiles(key), signature);
+    CACHE.put(key, template);
+    logger.info("template loaded: {}, {} files", key, template.files.size());
+    return template;
+  }
+
+  /**
+   * Get the built-in template in the resources of this project.
+   *
+   * @return template
+   * @throws IllegalStateException if the template is not found or can not be read
+   */
+  public static EpubTemplate builtIn() {
+    URL url = EpubTemplate.class.getClassLoader().getResource(Constant.TEMPLATE_FOLDER);
+    if (url == null) {
+      throw new IllegalStateException("Fail to find the epub source template: " + Constant.TEMPLATE_FOLDER);
+    }
+
+    if ("jar".equals(url.getProtocol())) {
+      if (builtInJar == null) {
+        synchronized (EpubTemplate.class) {
+          if (builtInJar == null) {
+            builtInJar = ofResource(url);
+          }
+        }
+      }
+      return builtInJar;
+    }
+    return ofResource(url);
+  }
+
+  /**
+   * Read the template in a folder or a jar.
+   *
+   * @param url the URL of the template folder, file: or jar:
+   * @return template
+   * @throws IllegalStateException if the template can not be read
+   */
+  static EpubTemplate ofResource(URL url) {
+    try {
+      URI uri = url.toURI();
+      return "jar".equals(uri.getScheme()) ? readJar(uri) : of(Path.of(uri));
+    } catch (URISyntaxException | IOException | RuntimeException e) {
+      throw new IllegalStateException("Fail to read the epub source template: " + url, e);
+    }
+  }
+
+  /**
+   * Forget all loaded templates.
+   */
+  public static void clearCache() {
+    CACHE.clear();
+  }
+
+  /**
+   * @return where the template is loaded from
+   */
+  public String getSource() {
+    return source;
+  }
+
+  /**
+   * @return entry names of all files, sorted, using / sign
+   */
+  public Set<String> getEntryNames() {
+    return files.keySet();
+  }
+
+  /**
+   * @param entryName entry name
+   * @return true if the file is in the template
+   */
+  public boolean contains(String entryName) {
+    return files.containsKey(entryName);
+  }
+
+  /**
+   * The content of a file. The array is shared, do not modify it.
+   *
+   * @param entryName entry name
+   * @return content
+   * @throws NoSuchFileException if the file is not in the template
+   */
+  public byte[] getBytes(String entryName) throws NoSuchFileException {
+    byte[] content = files.get(entryName);
+    if (content == null) {
+      throw new NoSuchFileException(entryName, null, "not in template " + source);
+    }
+    return content;
+  }
+
+  /**
+   * A text file in UTF-8, split into static text and placeholders.
+   *
+   * @param entryName entry name
+   * @return split text
+   * @throws NoSuchFileException if the file is not in the template
+   */
+  public TemplateText getText(String entryName) throws NoSuchFileException {
+    TemplateText text = texts.get(entryName);
+    if (text == null) {
+      text = TemplateText.compile(new String(getBytes(entryName), StandardCharsets.UTF_8));
+      texts.put(entryName, text);
+    }
+    return text;
+  }
+
+  /**
+   * @return entry name -> content of all the regular files in the folder, except the ones not
+   *     zipped in folder mode, see {@link EpubUtils#isSkipped(Path)}
+   */
+  private static Map<String, byte[]> readFiles(Path folder) throws IOException {
+    List<Path> paths;
+    try (Stream<Path> walk = Files.walk(folder)) {
+      paths = walk.filter(Files::isRegularFile).sorted().toList();
+    }
+
+    Map<String, byte[]> files = new LinkedHashMap<>();
+    for (Path path : paths) {
+      if (EpubUtils.isSkipped(path)) {
+        continue;
+      }
+      // IMPORTANT!! epub need / sign in entry name (NOT \ sign)
+      String entryName = folder.relativize(path).toString().replace("\\", "/");
+      files.put(entryName, Files.readAllBytes(path));
+    }
+    return files;
+  }
+
+  /**
+   * @return the entry name, size and modified time of all the regular files in the folder
+   */
+  private static String signatureOf(Path folder) throws IOException {
+    StringBuilder sb = new StringBuilder();
+    try (Stream<Path> walk = Files.walk(folder)) {
+      for (Path path : walk.sorted().toList()) {
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        if (attributes.isRegularFile()) {
+          sb.append(folder.relativize(path)).append('|')
+              .append(attributes.size()).append('|')
+              .append(attributes.lastModifiedTime().toMillis()).append('\n');
+        }
+      }
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+    return sb.toString();
+  }
+
+  private static EpubTemplate readJar(URI uri) throws IOException {
+    FileSystem fileSystem;
+    boolean opened = false;
+    try {
+      fileSystem = FileSystems.newFileSystem(uri, Map.of());
+      opened = true;
+    } catch (FileSystemAlreadyExistsException e) {
+      fileSystem = FileSystems.getFileSystem(uri);
+    }
+
+    try {
+      EpubTemplate template = new EpubTemplate(uri.toString(), readFiles(fileSystem.provider().getPath(uri)), null);
+      logger.info("template loaded: {}, {} files", uri, template.files.size());
+      return template;
+    } finally {
+      if (opened) {
+        fileSystem.close();
+      }
+    }
+  }
+}
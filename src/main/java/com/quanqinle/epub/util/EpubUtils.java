@@ -1,17 +1,26 @@
 package com.quanqinle.epub.util;
 
 import com.adobe.epubcheck.api.EpubCheck;
+import com.quanqinle.epub.entity.ChapterBody;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
-import java.util.zip.CRC32;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
 
 /**
  * epub utils
@@ -22,6 +31,18 @@ public class EpubUtils {
 
   public static final Logger logger = LoggerFactory.getLogger(EpubUtils.class);
 
+  /** the first file in an epub */
+  public static final String MIMETYPE_FILE_NAME = "mimetype";
+  /** the content of mimetype */
+  public static final String MIMETYPE_FILE_CONTENT = "application/epub+zip";
+
+  /** the end of a chapter html file, before the last line separator */
+  private static final String HTML_BOTTOM_PART = "</body>\r\n</html>";
+  /** the start of a paragraph */
+  private static final byte[] PARAGRAPH_START = "<p>".getBytes(StandardCharsets.UTF_8);
+  /** the most buffers in one gathering write, as IOV_MAX of most systems */
+  private static final int MAX_GATHERING_BUFFERS = 1024;
+
   /**
    * Zip folder to epub.
    *
@@ -31,73 +52,110 @@ public class EpubUtils {
    *
    * <p>$ zip -Xr9Dq my-book.epub *
    *
+   * <p>Compress by {@link CompressionPolicy#defaultPolicy()} in the calling thread.
+   *
    * @param epubSrcFolderPath the source of epub folder
    * @param epubFilePath the epub file
    * @throws IOException -
    */
   public static void zipEpub(Path epubSrcFolderPath, Path epubFilePath) throws IOException {
+    zipEpub(epubSrcFolderPath, epubFilePath, CompressionPolicy.defaultPolicy(), 1);
+  }
+
+  /**
+   * Zip folder to epub, the mimetype first and stored.
+   *
+   * <p>If threads is more than 1, the files are read and compressed by a thread pool, and written
+   * into the epub in the same order as sequentially. At most threads * 2 compressed files wait in
+   * memory for writing.
+   *
+   * @param epubSrcFolderPath the source of epub folder
+   * @param epubFilePath the epub file
+   * @param policy the level of each file
+   * @param threads the number of compressing threads, compress in the calling thread if less than 2
+   * @throws IOException -
+   */
+  public static void zipEpub(Path epubSrcFolderPath, Path epubFilePath, CompressionPolicy policy, int threads)
+      throws IOException {
     logger.debug("source folder = {}", epubSrcFolderPath);
     logger.debug("target epub = {}", epubFilePath);
 
-    String mimetypeFileName = "mimetype";
+    List<Path> files;
+    try (Stream<Path> paths = Files.walk(epubSrcFolderPath)) {
+      files = paths
+          .filter(Files::isRegularFile)
+          .filter(path -> !MIMETYPE_FILE_NAME.equals(path.getFileName().toString()))
+          .toList();
+    }
 
-    try (FileOutputStream fos = new FileOutputStream(String.valueOf(epubFilePath));
-        ZipOutputStream zos = new ZipOutputStream(fos)) {
+    try (RawZipWriter zip = new RawZipWriter(new BufferedOutputStream(Files.newOutputStream(epubFilePath)))) {
+      // IMPORTANT!! uncompressed entry
+      zip.write(MIMETYPE_FILE_NAME,
+          CompressedEntry.store(MIMETYPE_FILE_CONTENT.getBytes(StandardCharsets.US_ASCII)));
 
-      addMimetypeToEpub(zos);
+      if (threads < 2) {
+        for (Path file : files) {
+          if (!isSkipped(file)) {
+            String entryName = entryNameOf(epubSrcFolderPath, file);
+            zip.write(entryName, policy.compress(entryName, Files.readAllBytes(file)));
+          }
+        }
+        return;
+      }
 
-      Files.walk(epubSrcFolderPath)
-          .filter(Files::isRegularFile)
-          .filter(path -> !mimetypeFileName.equals(path.getFileName().toString()))
-          .forEach(
-              path -> {
-                Path relativePath = epubSrcFolderPath.relativize(path);
-                // IMPORTANT!! epub need / sign in entry name (NOT \ sign)
-                String entryName = relativePath.toString().replace("\\", "/");
-
-                try (FileInputStream fin = new FileInputStream(path.toFile().getPath())) {
-                  if (Files.isSymbolicLink(path) || Files.isHidden(path)) {
-                    // TODO
-                    assert true : "I am not sure if need to check these";
-                  } else {
-                    zos.putNextEntry(new ZipEntry(entryName));
-                    fin.transferTo(zos);
-                    zos.closeEntry();
-                  }
-                } catch (IOException e) {
-                  e.printStackTrace();
-                }
-              });
+      ExecutorService executor = Executors.newFixedThreadPool(threads);
+      try {
+        // compressed files waiting for writing, in order
+        Deque<Future<CompressedEntry>> pending = new ArrayDeque<>();
+        Deque<String> pendingNames = new ArrayDeque<>();
+        for (Path file : files) {
+          if (isSkipped(file)) {
+            continue;
+          }
+          String entryName = entryNameOf(epubSrcFolderPath, file);
+          pending.add(executor.submit(() -> policy.compress(entryName, Files.readAllBytes(file))));
+          pendingNames.add(entryName);
+          if (pending.size() >= threads * 2) {
+            zip.write(pendingNames.poll(), getCompressed(pending.poll()));
+          }
+        }
+        while (!pending.isEmpty()) {
+          zip.write(pendingNames.poll(), getCompressed(pending.poll()));
+        }
+      } finally {
+        executor.shutdownNow();
+      }
     }
   }
 
   /**
-   * Add mimetype file into epub, only store, do not compress.
-   *
-   * @param zos zip output stream
-   * @throws IOException -
+   * @return true if the file is not zipped, the same for the files of a template read by {@link EpubTemplate}
    */
-  private static void addMimetypeToEpub(ZipOutputStream zos) throws IOException {
-    String mimetypeFileName = "mimetype";
-    String mimetypeFileContent = "application/epub+zip";
-
-    ZipEntry entry = new ZipEntry(mimetypeFileName);
-
-    // IMPORTANT!! uncompressed entry
-    entry.setMethod(ZipEntry.STORED);
-
-    byte[] mimetypeBytes = mimetypeFileContent.getBytes();
-    entry.setSize(mimetypeBytes.length);
+  static boolean isSkipped(Path file) throws IOException {
+    // TODO
+    // I am not sure if need to check these
+    return Files.isSymbolicLink(file) || Files.isHidden(file);
+  }
 
-    CRC32 crc = new CRC32();
-    crc.update(mimetypeBytes);
-    long value = crc.getValue();
-    entry.setCrc(value);
+  /**
+   * IMPORTANT!! epub need / sign in entry name (NOT \ sign)
+   */
+  private static String entryNameOf(Path epubSrcFolderPath, Path file) {
+    return epubSrcFolderPath.relativize(file).toString().replace("\\", "/");
+  }
 
-    zos.putNextEntry(entry);
-    zos.write(mimetypeBytes);
-    // closeEntry() should be called after putNextEntry() each time
-    zos.closeEntry();
+  private static CompressedEntry getCompressed(Future<CompressedEntry> future) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted when zipping");
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException cause) {
+        throw cause;
+      }
+      throw new IOException("Fail to compress", e.getCause());
+    }
   }
 
   /**
@@ -123,10 +181,145 @@ public class EpubUtils {
    * @param htmlPath full name of the output file
    */
   public static void writeHtmlFile(String chapterName, List<String> bodyLines, Path htmlPath) {
-    List<String> chpLines = new ArrayList<>();
+    try {
+      writeHtml(chapterName, bodyLines, htmlPath);
+    } catch (Exception e) {
+      logger.error("Fail to save: {}", chapterName);
+      e.printStackTrace();
+    }
+  }
 
-    String topPart =
-            """
+  /**
+   * Write all lines of a chapter in a html file, and throw the error if failed.
+   *
+   * @param chapterName chapter title, such as "Chapter ONE A Dance with Dragons"
+   * @param bodyLines all lines of this chapter
+   * @param htmlPath full name of the output file
+   * @throws IOException if fail to write the file
+   */
+  public static void writeHtml(String chapterName, List<String> bodyLines, Path htmlPath)
+      throws IOException {
+    Files.write(htmlPath, renderHtml(chapterName, bodyLines));
+    logger.debug("Saved file: {}, chapter: {}, first line: {}", htmlPath.getFileName(), chapterName,
+            bodyLines.isEmpty() ? "" : bodyLines.get(0));
+  }
+
+  /**
+   * Render all lines of a chapter as the content of a html file, in UTF-8.
+   * <p>Each line ends with the line separator, the same as {@link Files#write(Path, Iterable, java.nio.file.OpenOption...)}.
+   *
+   * @param chapterName chapter title, such as "Chapter ONE A Dance with Dragons"
+   * @param bodyLines all lines of this chapter
+   * @return the html file content
+   */
+  public static byte[] renderHtml(String chapterName, List<String> bodyLines) {
+    String topPart = htmlTopPart(chapterName);
+    String lineSeparator = System.lineSeparator();
+
+    int length = topPart.length() + HTML_BOTTOM_PART.length() + 2 * lineSeparator.length();
+    for (String line : bodyLines) {
+      length += line.length() + lineSeparator.length();
+    }
+
+    StringBuilder sb = new StringBuilder(length);
+    sb.append(topPart).append(lineSeparator);
+    for (String line : bodyLines) {
+      sb.append(line).append(lineSeparator);
+    }
+    sb.append(HTML_BOTTOM_PART).append(lineSeparator);
+
+    return sb.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Render a chapter body as the content of a html file, in UTF-8. The same as {@link
+   * #renderHtml(String, List)} of {@link ChapterBody#toLines()}.
+   * <p>The text of span paragraphs is copied from the source file straight into the result.
+   *
+   * @param chapterName chapter title
+   * @param body the body of this chapter
+   * @return the html file content
+   */
+  public static byte[] renderHtml(String chapterName, ChapterBody body) {
+    ByteBuffer[] buffers = htmlBuffers(chapterName, body);
+    long length = 0;
+    for (ByteBuffer buffer : buffers) {
+      length += buffer.remaining();
+    }
+    if (length > Integer.MAX_VALUE - 8) {
+      throw new IllegalArgumentException("Chapter is too large: " + chapterName);
+    }
+
+    byte[] html = new byte[(int) length];
+    int position = 0;
+    for (ByteBuffer buffer : buffers) {
+      int remaining = buffer.remaining();
+      buffer.get(html, position, remaining);
+      position += remaining;
+    }
+    return html;
+  }
+
+  /**
+   * Write a chapter body as a html file into the channel, in UTF-8. The same bytes as {@link
+   * #renderHtml(String, ChapterBody)}.
+   * <p>The text of span paragraphs is written from the mapped source file by a gathering write,
+   * without copying it in the heap.
+   *
+   * @param chapterName chapter title
+   * @param body the body of this chapter
+   * @param out where to write
+   * @throws IOException -
+   */
+  public static void writeHtml(String chapterName, ChapterBody body, WritableByteChannel out) throws IOException {
+    ByteBuffer[] buffers = htmlBuffers(chapterName, body);
+    if (out instanceof GatheringByteChannel gathering) {
+      int offset = 0;
+      while (offset < buffers.length) {
+        int length = Math.min(buffers.length - offset, MAX_GATHERING_BUFFERS);
+        gathering.write(buffers, offset, length);
+        while (offset < buffers.length && !buffers[offset].hasRemaining()) {
+          offset++;
+        }
+      }
+    } else {
+      for (ByteBuffer buffer : buffers) {
+        while (buffer.hasRemaining()) {
+          out.write(buffer);
+        }
+      }
+    }
+  }
+
+  /**
+   * @return the buffers of the html file in order: top part, body lines, bottom part
+   */
+  private static ByteBuffer[] htmlBuffers(String chapterName, ChapterBody body) {
+    byte[] lineSeparator = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+    byte[] paragraphEnd = ("</p>" + System.lineSeparator()).getBytes(StandardCharsets.UTF_8);
+
+    List<ByteBuffer> buffers = new ArrayList<>(body.size() * 3 + 2);
+    buffers.add(ByteBuffer.wrap((htmlTopPart(chapterName) + System.lineSeparator()).getBytes(StandardCharsets.UTF_8)));
+    for (int i = 0; i < body.size(); i++) {
+      if (body.isParagraph(i)) {
+        buffers.add(ByteBuffer.wrap(PARAGRAPH_START));
+        buffers.add(body.getParagraph(i));
+        buffers.add(ByteBuffer.wrap(paragraphEnd));
+      } else {
+        buffers.add(ByteBuffer.wrap(body.getMarkup(i).getBytes(StandardCharsets.UTF_8)));
+        buffers.add(ByteBuffer.wrap(lineSeparator));
+      }
+    }
+    buffers.add(ByteBuffer.wrap((HTML_BOTTOM_PART + System.lineSeparator()).getBytes(StandardCharsets.UTF_8)));
+    return buffers.toArray(new ByteBuffer[0]);
+  }
+
+  /**
+   * @param chapterName chapter title
+   * @return the html from the xml declaration to &lt;body>
+   */
+  private static String htmlTopPart(String chapterName) {
+    return """
             <?xml version="1.0" encoding="utf-8"?>
             <!DOCTYPE html PUBLIC "-//W3C//DTD XHTML 1.1//EN"
               "http://www.w3.org/TR/xhtml11/DTD/xhtml11.dtd">
@@ -137,19 +330,6 @@ public class EpubUtils {
             </head>
             <body>
             """.replace("$TITLE", chapterName);
-    String bottomPart = "</body>\r\n</html>";
-
-    chpLines.add(topPart);
-    chpLines.addAll(bodyLines);
-    chpLines.add(bottomPart);
-
-    try {
-      Files.write(htmlPath, chpLines);
-      logger.debug("Saved file: {}, chapter: {}, first line: {}", htmlPath.getFileName(), chapterName, bodyLines.get(0));
-    } catch (Exception e) {
-      logger.error("Fail to save: {}", chapterName);
-      e.printStackTrace();
-    }
   }
 
 }
@@ -0,0 +1,70 @@
+package com.quanqinle.epub.util;
+
+import com.quanqinle.epub.entity.ChapterBody;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Write the files of an epub into a folder, which could be zipped by {@link EpubUtils#zipEpub(Path, Path)}.
+ *
+ * @author quanqinle
+ */
+public class FolderEpubSink implements EpubSink {
+  /** the root folder of the epub */
+  private final Path root;
+
+  /**
+   * Constructor
+   *
+   * @param root the root folder of the epub, such as outputDir/epub-temp
+   */
+  public FolderEpubSink(Path root) {
+    this.root = root;
+  }
+
+  public Path getRoot() {
+    return root;
+  }
+
+  @Override
+  public void write(String entryName, byte[] content) throws IOException {
+    Path path = root.resolve(entryName);
+    try {
+      Files.write(path, content);
+    } catch (NoSuchFileException e) {
+      Files.createDirectories(path.getParent());
+      Files.write(path, content);
+    }
+  }
+
+  /**
+   * Write the chapter by a gathering write, so the paragraphs go from the source file to the html
+   * file without a copy in the heap.
+   */
+  @Override
+  public void writeHtml(String entryName, String title, ChapterBody body) throws IOException {
+    Path path = root.resolve(entryName);
+    try (FileChannel channel = openForWrite(path)) {
+      EpubUtils.writeHtml(title, body, channel);
+    }
+  }
+
+  private static FileChannel openForWrite(Path path) throws IOException {
+    try {
+      return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+    } catch (NoSuchFileException e) {
+      Files.createDirectories(path.getParent());
+      return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+    }
+  }
+
+  @Override
+  public void close() {
+    // nothing to close
+  }
+}
@@ -0,0 +1,287 @@
+package com.quanqinle.epub.util;
+
+import com.quanqinle.epub.entity.ChapterBody;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Classify the lines of a book: replace and trim each line, skip blank lines, then tell a sub-book
+ * title, a chapter title or a paragraph.
+ *
+ * <p>A classifier has no state of its own, so one instance could classify several ranges of the
+ * source at the same time. Only the titles carry state for building chapters, which is done by the
+ * caller in order.
+ *
+ * @author quanqinle
+ */
+public class LineClassifier {
+  /** built from the replace map */
+  private final MultiReplacer lineReplacer;
+  /** sub-book titles, null if the book has no sub-book */
+  private final TitleMatcher subBookTitleMatcher;
+  private final TitleMatcher chapterTitleMatcher;
+
+  /**
+   * Constructor
+   *
+   * @param lineReplacer built from the replace map
+   * @param subBookTitleMatcher sub-book titles, null if the book has no sub-book
+   * @param chapterTitleMatcher chapter titles
+   */
+  public LineClassifier(MultiReplacer lineReplacer, TitleMatcher subBookTitleMatcher, TitleMatcher chapterTitleMatcher) {
+    this.lineReplacer = lineReplacer;
+    this.subBookTitleMatcher = subBookTitleMatcher;
+    this.chapterTitleMatcher = chapterTitleMatcher;
+  }
+
+  /**
+   * A non-blank line after classifying.
+   */
+  public static final class Line {
+    /** the number of the line in the lines classified, from 1 */
+    long lineNumber;
+    boolean subBookTitle;
+    boolean chapterTitle;
+    /** the text of a title, null if it is a paragraph */
+    String title;
+    /** the markup of a paragraph, null if it is a span or a title */
+    String markup;
+    /** the bytes of a span paragraph in the source file */
+    long spanStart = -1;
+    long spanEnd = -1;
+
+    /**
+     * @return the number of the line in the lines classified, from 1
+     */
+    public long getLineNumber() {
+      return lineNumber;
+    }
+
+    public boolean isSubBookTitle() {
+      return subBookTitle;
+    }
+
+    public boolean isChapterTitle() {
+      return chapterTitle;
+    }
+
+    /**
+     * @return the text of a title, null if it is a paragraph
+     */
+    public String getTitle() {
+      return title;
+    }
+
+    /**
+     * @return the UTF-8 bytes of the paragraph in the .xhtml, see {@link ChapterBody#getByteSize()}
+     */
+    public long getByteSize() {
+      return markup == null ? ChapterBody.paragraphByteSize(spanStart, spanEnd) : ChapterBody.markupByteSize(markup);
+    }
+
+    /**
+     * Add the paragraph into the body, as a span if possible.
+     *
+     * @param body chapter body
+     */
+    public void addTo(ChapterBody body) {
+      if (markup == null) {
+        body.addParagraph(spanStart, spanEnd);
+      } else {
+        body.addMarkup(markup);
+      }
+    }
+  }
+
+  /**
+   * Classify one line.
+   *
+   * @param line a line of the source
+   * @param out the result, only valid if returns true
+   * @return false if the line is blank
+   */
+  public boolean classify(SourceLine line, Line out) {
+    CharSequence text;
+    long spanStart = -1;
+    long spanEnd = -1;
+    if (!line.hasSpan() || (!lineReplacer.isEmpty() && lineReplacer.containsAny(line))) {
+      text = lineReplacer.replaceAndTrim(line.toString());
+    } else {
+      // trim like String.trim(). The trimmed chars are ASCII, so one byte each
+      int start = 0;
+      int end = line.length();
+      while (start < end && line.charAt(start) <= ' ') {
+        start++;
+      }
+      while (end > start && line.charAt(end - 1) <= ' ') {
+        end--;
+      }
+      spanStart = line.getStart() + start;
+      spanEnd = line.getEnd() - (line.length() - end);
+      text = line.subSequence(start, end);
+    }
+
+    if (isBlank(text)) {
+      return false;
+    }
+
+    out.subBookTitle = subBookTitleMatcher != null && subBookTitleMatcher.matches(text);
+    out.chapterTitle = chapterTitleMatcher.matches(text);
+    if (out.subBookTitle || out.chapterTitle) {
+      out.title = text.toString();
+      out.markup = null;
+    } else if (spanStart >= 0) {
+      out.title = null;
+      out.markup = null;
+      out.spanStart = spanStart;
+      out.spanEnd = spanEnd;
+    } else {
+      out.title = null;
+      out.markup = "<p>" + text + "</p>";
+    }
+    return true;
+  }
+
+  /**
+   * @return true if the text is empty or only contains white space, like {@link String#isBlank()}
+   */
+  private static boolean isBlank(CharSequence text) {
+    int i = 0;
+    while (i < text.length()) {
+      int c = Character.codePointAt(text, i);
+      if (!Character.isWhitespace(c)) {
+        return false;
+      }
+      i += Character.charCount(c);
+    }
+    return true;
+  }
+
+  /**
+   * Classify lines one by one, skipping blank lines.
+   *
+   * @param lines lines of the source
+   * @param counter counts all lines read, including blank lines
+   * @return non-blank lines. The Line is reused, only valid until the next one
+   */
+  public Iterable<Line> classifyAll(Iterable<SourceLine> lines, Runnable counter) {
+    return () -> {
+      Iterator<SourceLine> iterator = lines.iterator();
+      Line line = new Line();
+      return new Iterator<>() {
+        private boolean ready = false;
+        private long lineNumber = 0;
+
+        @Override
+        public boolean hasNext() {
+          while (!ready && iterator.hasNext()) {
+            counter.run();
+            line.lineNumber = ++lineNumber;
+            ready = classify(iterator.next(), line);
+          }
+          return ready;
+        }
+
+        @Override
+        public Line next() {
+          if (!hasNext()) {
+            throw new NoSuchElementException();
+          }
+          ready = false;
+          return line;
+        }
+      };
+    };
+  }
+
+  /**
+   * Classify all lines of a range into a batch.
+   *
+   * @param lines lines of a range of the source
+   * @return the non-blank lines
+   */
+  public Batch classifyRange(Iterable<SourceLine> lines) {
+    Batch batch = new Batch();
+    Line line = new Line();
+    for (SourceLine sourceLine : lines) {
+      batch.linesRead++;
+      line.lineNumber = batch.linesRead;
+      if (classify(sourceLine, line)) {
+        batch.add(line);
+      }
+    }
+    return batch;
+  }
+
+  /**
+   * The non-blank lines of a range, classified. Kept in arrays, without an object per line.
+   */
+  public static final class Batch {
+    private static final byte SUB_BOOK_TITLE = 1;
+    private static final byte CHAPTER_TITLE = 2;
+    private static final int INITIAL_CAPACITY = 256;
+
+    /** per line, the flags of titles */
+    private byte[] kinds = new byte[INITIAL_CAPACITY];
+    /** per line, the title, the markup of a paragraph, or null if a span */
+    private String[] texts = new String[INITIAL_CAPACITY];
+    private long[] spanStarts = new long[INITIAL_CAPACITY];
+    private long[] spanEnds = new long[INITIAL_CAPACITY];
+    /** per line, the number of the line in the range, from 1 */
+    private long[] lineNumbers = new long[INITIAL_CAPACITY];
+    private int size = 0;
+    /** lines read, including blank lines */
+    private long linesRead = 0;
+
+    private void add(Line line) {
+      if (size == kinds.length) {
+        int capacity = size * 2;
+        kinds = Arrays.copyOf(kinds, capacity);
+        texts = Arrays.copyOf(texts, capacity);
+        spanStarts = Arrays.copyOf(spanStarts, capacity);
+        spanEnds = Arrays.copyOf(spanEnds, capacity);
+        lineNumbers = Arrays.copyOf(lineNumbers, capacity);
+      }
+      kinds[size] = (byte) ((line.subBookTitle ? SUB_BOOK_TITLE : 0) | (line.chapterTitle ? CHAPTER_TITLE : 0));
+      texts[size] = kinds[size] != 0 ? line.title : line.markup;
+      spanStarts[size] = line.spanStart;
+      spanEnds[size] = line.spanEnd;
+      lineNumbers[size] = line.lineNumber;
+      size++;
+    }
+
+    /**
+     * @return the number of non-blank lines
+     */
+    public int size() {
+      return size;
+    }
+
+    /**
+     * @return lines read, including blank lines
+     */
+    public long getLinesRead() {
+      return linesRead;
+    }
+
+    /**
+     * Read a line of the batch.
+     *
+     * @param index line index
+     * @param firstLineNumber the number of the first line of the range
+     * @param out the line
+     */
+    public void get(int index, long firstLineNumber, Line out) {
+      out.lineNumber = firstLineNumber - 1 + lineNumbers[index];
+      out.subBookTitle = (kinds[index] & SUB_BOOK_TITLE) != 0;
+      out.chapterTitle = (kinds[index] & CHAPTER_TITLE) != 0;
+      boolean isTitle = kinds[index] != 0;
+      out.title = isTitle ? texts[index] : null;
+      out.markup = isTitle ? null : texts[index];
+      out.spanStart = spanStarts[index];
+      out.spanEnd = spanEnds[index];
+    }
+  }
+}
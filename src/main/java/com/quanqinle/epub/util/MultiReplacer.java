@@ -0,0 +1,228 @@
+package com.quanqinle.epub.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Replace all the strings of a map in one scan of a line.
+ *
+ * <p>The keys are built into a trie once. Then a line is scanned from left to right, and at each
+ * position the longest key starting there is replaced. Scanning continues just after the replaced
+ * key, so:
+ *
+ * <ul>
+ *   <li>the leftmost match wins, then the longest one if several keys start at the same position;
+ *   <li>the replaced text is never scanned again, i.e. a value can not be replaced by another entry.
+ * </ul>
+ *
+ * <p>This is different from chained {@link String#replace(CharSequence, CharSequence)} in map
+ * order only when the keys overlap each other, or a value contains another key.
+ *
+ * <p>Empty keys are ignored.
+ *
+ * @author quanqinle
+ */
+public class MultiReplacer {
+  /** sorted chars of the child nodes, per node. node 0 is the root */
+  private final char[][] childChars;
+  /** child node indexes, same order as {@link #childChars} */
+  private final int[][] childNodes;
+  /** the replacement if a key ends at this node, otherwise null */
+  private final String[] values;
+  /** bit set of the first chars of all keys, to skip most positions quickly */
+  private final long[] firstCharBits = new long[(Character.MAX_VALUE + 1) / Long.SIZE];
+
+  /**
+   * Constructor
+   *
+   * @param replaceMap old string -> new string, null is treated as empty
+   */
+  public MultiReplacer(Map<String, String> replaceMap) {
+    List<TreeMap<Character, Integer>> trie = new ArrayList<>();
+    List<String> nodeValues = new ArrayList<>();
+    trie.add(new TreeMap<>());
+    nodeValues.add(null);
+
+    if (replaceMap != null) {
+      for (Map.Entry<String, String> entry : replaceMap.entrySet()) {
+        String key = entry.getKey();
+        if (key == null || key.isEmpty()) {
+          continue;
+        }
+
+        int node = 0;
+        for (int i = 0; i < key.length(); i++) {
+          Integer child = trie.get(node).get(key.charAt(i));
+          if (child == null) {
+            child = trie.size();
+            trie.add(new TreeMap<>());
+            nodeValues.add(null);
+            trie.get(node).put(key.charAt(i), child);
+          }
+          node = child;
+        }
+        nodeValues.set(node, entry.getValue() == null ? "" : entry.getValue());
+
+        char first = key.charAt(0);
+        firstCharBits[first >>> 6] |= 1L << first;
+      }
+    }
+
+    int size = trie.size();
+    this.childChars = new char[size][];
+    this.childNodes = new int[size][];
+    this.values = nodeValues.toArray(new String[0]);
+    for (int node = 0; node < size; node++) {
+      TreeMap<Character, Integer> children = trie.get(node);
+      childChars[node] = new char[children.size()];
+      childNodes[node] = new int[children.size()];
+      int i = 0;
+      for (Map.Entry<Character, Integer> child : children.entrySet()) {
+        childChars[node][i] = child.getKey();
+        childNodes[node][i] = child.getValue();
+        i++;
+      }
+    }
+  }
+
+  /**
+   * @return true if there is nothing to replace
+   */
+  public boolean isEmpty() {
+    return childChars[0].length == 0;
+  }
+
+  /**
+   * @param line a line
+   * @return true if any key is in the line, i.e. {@link #replace(String)} would change it
+   */
+  public boolean containsAny(CharSequence line) {
+    int length = line.length();
+    for (int i = 0; i < length; i++) {
+      char c = line.charAt(i);
+      if ((firstCharBits[c >>> 6] & (1L << c)) == 0) {
+        continue;
+      }
+      int node = 0;
+      for (int j = i; j < length; j++) {
+        node = child(node, line.charAt(j));
+        if (node < 0) {
+          break;
+        }
+        if (values[node] != null) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Replace all the keys in the line.
+   *
+   * @param line a line
+   * @return the line itself if nothing replaced
+   */
+  public String replace(String line) {
+    StringBuilder sb = replaceToBuilder(line);
+    return sb == null ? line : sb.toString();
+  }
+
+  /**
+   * Replace all the keys in the line, then remove the leading and trailing whitespace like {@link
+   * String#trim()}.
+   *
+   * <p>At most one new String is created.
+   *
+   * @param line a line
+   * @return the new line
+   */
+  public String replaceAndTrim(String line) {
+    StringBuilder sb = replaceToBuilder(line);
+    if (sb == null) {
+      return line.trim();
+    }
+
+    int start = 0;
+    int end = sb.length();
+    while (start < end && sb.charAt(start) <= ' ') {
+      start++;
+    }
+    while (end > start && sb.charAt(end - 1) <= ' ') {
+      end--;
+    }
+    return sb.substring(start, end);
+  }
+
+  /**
+   * @return null if nothing replaced
+   */
+  private StringBuilder replaceToBuilder(String line) {
+    StringBuilder sb = null;
+    int length = line.length();
+    // line[copied, i) has not been appended to sb yet
+    int copied = 0;
+    int i = 0;
+    while (i < length) {
+      char c = line.charAt(i);
+      if ((firstCharBits[c >>> 6] & (1L << c)) == 0) {
+        i++;
+        continue;
+      }
+
+      // find the longest key starting at i
+      int matchEnd = -1;
+      String matchValue = null;
+      int node = 0;
+      for (int j = i; j < length; j++) {
+        node = child(node, line.charAt(j));
+        if (node < 0) {
+          break;
+        }
+        if (values[node] != null) {
+          matchEnd = j + 1;
+          matchValue = values[node];
+        }
+      }
+
+      if (matchEnd < 0) {
+        i++;
+        continue;
+      }
+
+      if (sb == null) {
+        sb = new StringBuilder(length + 16);
+      }
+      sb.append(line, copied, i).append(matchValue);
+      i = matchEnd;
+      copied = matchEnd;
+    }
+
+    if (sb != null) {
+      sb.append(line, copied, length);
+    }
+    return sb;
+  }
+
+  /**
+   * @return the child node, or -1 if not found
+   */
+  private int child(int node, char c) {
+    char[] chars = childChars[node];
+    int low = 0;
+    int high = chars.length - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      if (chars[mid] < c) {
+        low = mid + 1;
+      } else if (chars[mid] > c) {
+        high = mid - 1;
+      } else {
+        return childNodes[node][mid];
+      }
+    }
+    return -1;
+  }
+}
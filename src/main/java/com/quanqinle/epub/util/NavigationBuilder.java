@@ -0,0 +1,262 @@
+package com.quanqinle.epub.util;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Build the navigation lists of an epub:
+ *
+ * <ul>
+ *   <li>`&lt;navPoint>` list in `toc.ncx`
+ *   <li>`&lt;item>`, `&lt;itemref>` and `&lt;reference>` list in `content.opf`
+ *   <li>`&lt;p>&lt;a>` list in `toc.xhtml`
+ * </ul>
+ *
+ * <p>Each list is appended to a presized StringBuilder, so the cost is linear in the number of
+ * files. String.format is not used in the per-file methods.
+ *
+ * <p>Titles are escaped by {@link XmlEscaper}, so a title such as "Tom &amp; Jerry" is kept as is.
+ *
+ * <p>The lists could be rendered into a {@link TemplateText} as {@link TemplateText.Markup}, without
+ * copying them into Strings.
+ *
+ * @author quanqinle
+ */
+public class NavigationBuilder {
+  /** estimated chars of each list per file, besides the title and file name */
+  private static final int NAV_POINT_CHARS = 120;
+  private static final int ITEM_CHARS = 70;
+  private static final int ITEMREF_CHARS = 30;
+  private static final int REFERENCE_CHARS = 50;
+  private static final int TOC_ITEM_CHARS = 40;
+  private static final int TITLE_AND_NAME_CHARS = 50;
+
+  /** `&lt;navPoint>&lt;/navPoint>` list in `toc.ncx` */
+  private final StringBuilder navPoints;
+  /** `&lt;item>` list in `content.opf` */
+  private final StringBuilder items;
+  /** `&lt;itemref>` list in `content.opf` */
+  private final StringBuilder itemrefs;
+  /** `&lt;reference>` list in `content.opf` */
+  private final StringBuilder references;
+  /** `&lt;p>&lt;a>&lt;/a>&lt;/p>` list in `toc.xhtml` */
+  private final StringBuilder tocItems;
+
+  /** playOrder of the next navPoint, starting from 1 */
+  private int playOrder = 1;
+
+  /**
+   * Constructor
+   *
+   * @param expectedFiles the estimated number of files, to presize the lists
+   */
+  public NavigationBuilder(int expectedFiles) {
+    int files = Math.max(expectedFiles, 4);
+    this.navPoints = new StringBuilder(files * (NAV_POINT_CHARS + TITLE_AND_NAME_CHARS));
+    this.items = new StringBuilder(files * (ITEM_CHARS + TITLE_AND_NAME_CHARS));
+    this.itemrefs = new StringBuilder(files * (ITEMREF_CHARS + TITLE_AND_NAME_CHARS));
+    this.references = new StringBuilder(files * (REFERENCE_CHARS + TITLE_AND_NAME_CHARS));
+    this.tocItems = new StringBuilder(files * (TOC_ITEM_CHARS + TITLE_AND_NAME_CHARS));
+  }
+
+  /**
+   * Add a file which is already in the manifest and spine of the template, such as cover.xhtml.
+   * <p>Only navPoint, reference and toc item are added.
+   *
+   * @param type the type of reference, such as "cover", "toc"
+   * @param fileFullName file name with suffix
+   * @param title title
+   * @return this
+   */
+  public NavigationBuilder addTemplateFile(String type, String fileFullName, String title) {
+    appendNavPoint(title, fileFullName, true);
+    appendReference(type, fileFullName, title);
+    appendTocItem(fileFullName, title);
+    return this;
+  }
+
+  /**
+   * Add a generated .xhtml file.
+   *
+   * @param id the id in manifest and spine
+   * @param fileFullName file name with suffix
+   * @param title title
+   * @return this
+   */
+  public NavigationBuilder addFile(String id, String fileFullName, String title) {
+    appendNavPoint(title, fileFullName, true);
+    appendManifestAndSpine(id, fileFullName, title);
+    return this;
+  }
+
+  /**
+   * Add a generated .xhtml file, such as a sub-book, and leave its navPoint open.
+   * <p>The navPoints of the following files are nested in it, until {@link #closeNavPoint()}.
+   *
+   * @param id the id in manifest and spine
+   * @param fileFullName file name with suffix
+   * @param title title
+   * @return this
+   */
+  public NavigationBuilder addFileAndOpenNavPoint(String id, String fileFullName, String title) {
+    appendNavPoint(title, fileFullName, false);
+    appendManifestAndSpine(id, fileFullName, title);
+    return this;
+  }
+
+  /**
+   * Add a generated .xhtml file which is a part of the previous file, such as chapter-001-part2.xhtml.
+   * <p>Only item and itemref are added, so it shares the navPoint and toc item of the previous file.
+   *
+   * @param id the id in manifest and spine
+   * @param fileFullName file name with suffix
+   * @return this
+   */
+  public NavigationBuilder addPart(String id, String fileFullName) {
+    appendItemAndItemref(id, fileFullName);
+    return this;
+  }
+
+  /**
+   * Close the navPoint opened by {@link #addFileAndOpenNavPoint(String, String, String)}.
+   *
+   * @return this
+   */
+  public NavigationBuilder closeNavPoint() {
+    navPoints.append("</navPoint>\n");
+    return this;
+  }
+
+  private void appendNavPoint(String title, String fileFullName, boolean close) {
+    navPoints
+        .append("<navPoint id=\"navPoint-").append(playOrder)
+        .append("\" playOrder=\"").append(playOrder).append("\">\n")
+        .append("  <navLabel><text>");
+    appendText(navPoints, title);
+    navPoints
+        .append("</text></navLabel>\n")
+        .append("  <content src=\"Text/").append(fileFullName).append("\"/>\n");
+    if (close) {
+      closeNavPoint();
+    }
+    playOrder++;
+  }
+
+  private void appendManifestAndSpine(String id, String fileFullName, String title) {
+    appendItemAndItemref(id, fileFullName);
+    appendReference("text", fileFullName, title);
+    appendTocItem(fileFullName, title);
+  }
+
+  private void appendItemAndItemref(String id, String fileFullName) {
+    items
+        .append("<item href='Text/").append(fileFullName)
+        .append("' id='").append(id)
+        .append("' media-type='application/xhtml+xml' />\n");
+    itemrefs.append("<itemref idref='").append(id).append("' />\n");
+  }
+
+  private void appendReference(String type, String fileFullName, String title) {
+    references
+        .append("<reference type='").append(type)
+        .append("' href='Text/").append(fileFullName)
+        .append("' title='");
+    appendAttribute(references, title);
+    references.append("'/>\n");
+  }
+
+  private void appendTocItem(String fileFullName, String title) {
+    tocItems
+        .append("<p><a href='../Text/").append(fileFullName).append("'>");
+    appendText(tocItems, title);
+    tocItems.append("</a></p>\n");
+  }
+
+  private static void appendText(StringBuilder list, String text) {
+    try {
+      XmlEscaper.writeText(list, text);
+    } catch (IOException e) {
+      // never thrown by StringBuilder
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static void appendAttribute(StringBuilder list, String text) {
+    try {
+      XmlEscaper.writeAttribute(list, text);
+    } catch (IOException e) {
+      // never thrown by StringBuilder
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * @return `&lt;navPoint>&lt;/navPoint>` list in `toc.ncx`
+   */
+  public String getNavPoints() {
+    return navPoints.toString();
+  }
+
+  /**
+   * @return `&lt;item>` list in `content.opf`
+   */
+  public String getItems() {
+    return items.toString();
+  }
+
+  /**
+   * @return `&lt;itemref>` list in `content.opf`
+   */
+  public String getItemrefs() {
+    return itemrefs.toString();
+  }
+
+  /**
+   * @return `&lt;reference>` list in `content.opf`
+   */
+  public String getReferences() {
+    return references.toString();
+  }
+
+  /**
+   * @return `&lt;p>&lt;a>&lt;/a>&lt;/p>` list in `toc.xhtml`
+   */
+  public String getTocItems() {
+    return tocItems.toString();
+  }
+
+  /**
+   * @return `&lt;navPoint>&lt;/navPoint>` list in `toc.ncx`, not copied
+   */
+  public TemplateText.Markup getNavPointsMarkup() {
+    return TemplateText.markup(navPoints);
+  }
+
+  /**
+   * @return `&lt;item>` list in `content.opf`, not copied
+   */
+  public TemplateText.Markup getItemsMarkup() {
+    return TemplateText.markup(items);
+  }
+
+  /**
+   * @return `&lt;itemref>` list in `content.opf`, not copied
+   */
+  public TemplateText.Markup getItemrefsMarkup() {
+    return TemplateText.markup(itemrefs);
+  }
+
+  /**
+   * @return `&lt;reference>` list in `content.opf`, not copied
+   */
+  public TemplateText.Markup getReferencesMarkup() {
+    return TemplateText.markup(references);
+  }
+
+  /**
+   * @return `&lt;p>&lt;a>&lt;/a>&lt;/p>` list in `toc.xhtml`, not copied
+   */
+  public TemplateText.Markup getTocItemsMarkup() {
+    return TemplateText.markup(tocItems);
+  }
+}
@@ -0,0 +1,180 @@
+package com.quanqinle.epub.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.zip.ZipException;
+
+/**
+ * A minimal zip writer, which writes entries already compressed, see {@link CompressedEntry}.
+ *
+ * <p>{@link java.util.zip.ZipOutputStream} always compresses the data itself, so compressed data
+ * can not be reused or compressed by other threads.
+ *
+ * <p>The sizes and CRC are known before writing, so they are saved in the local file headers
+ * directly, without data descriptors. Zip64 is not supported: at most 65535 entries and 4GB.
+ *
+ * @author quanqinle
+ */
+public class RawZipWriter implements Closeable {
+  private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+  private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+  private static final int END_SIGNATURE = 0x06054b50;
+  /** version 2.0, needed by deflate */
+  private static final short VERSION = 20;
+  /** general purpose flag: names are UTF-8 */
+  private static final short FLAG_UTF8 = 0x800;
+  private static final long MAX_32_BITS = 0xFFFFFFFFL;
+  private static final int MAX_ENTRIES = 0xFFFF;
+
+  private final OutputStream out;
+  /** central directory, written at the end */
+  private final ByteArrayOutputStream centralDirectory = new ByteArrayOutputStream();
+  /** MS-DOS time and date of all entries */
+  private final short dosTime;
+  private final short dosDate;
+
+  /** bytes written */
+  private long offset = 0;
+  private int entries = 0;
+  /** the uncompressed size of all entries */
+  private long bytesWritten = 0;
+
+  /**
+   * Constructor
+   *
+   * @param out the zip stream, closed by {@link #close()}
+   */
+  public RawZipWriter(OutputStream out) {
+    this.out = out;
+    LocalDateTime now = LocalDateTime.now();
+    this.dosTime = (short) (now.getHour() << 11 | now.getMinute() << 5 | now.getSecond() >> 1);
+    this.dosDate = (short) ((now.getYear() - 1980) << 9 | now.getMonthValue() << 5 | now.getDayOfMonth());
+  }
+
+  /**
+   * Write an entry.
+   *
+   * @param name the entry name, using / sign
+   * @param entry the compressed data
+   * @throws IOException -
+   */
+  public void write(String name, CompressedEntry entry) throws IOException {
+    byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+    long compressedSize = entry.getData().length;
+    if (entries >= MAX_ENTRIES || offset > MAX_32_BITS
+        || compressedSize > MAX_32_BITS || entry.getSize() > MAX_32_BITS) {
+      throw new ZipException("Zip64 is not supported: " + name);
+    }
+
+    ByteBuffer local = header(30 + nameBytes.length);
+    local.putInt(LOCAL_HEADER_SIGNATURE)
+        .putShort(VERSION)
+        .putShort(FLAG_UTF8)
+        .putShort((short) entry.getMethod())
+        .putShort(dosTime)
+        .putShort(dosDate)
+        .putInt((int) entry.getCrc())
+        .putInt((int) compressedSize)
+        .putInt((int) entry.getSize())
+        .putShort((short) nameBytes.length)
+        .putShort((short) 0)
+        .put(nameBytes);
+
+    ByteBuffer central = header(46 + nameBytes.length);
+    central.putInt(CENTRAL_HEADER_SIGNATURE)
+        .putShort(VERSION)
+        .putShort(VERSION)
+        .putShort(FLAG_UTF8)
+        .putShort((short) entry.getMethod())
+        .putShort(dosTime)
+        .putShort(dosDate)
+        .putInt((int) entry.getCrc())
+        .putInt((int) compressedSize)
+        .putInt((int) entry.getSize())
+        .putShort((short) nameBytes.length)
+        // extra, comment, disk number, internal attributes, external attributes
+        .putShort((short) 0)
+        .putShort((short) 0)
+        .putShort((short) 0)
+        .putShort((short) 0)
+        .putInt(0)
+        .putInt((int) offset)
+        .put(nameBytes);
+
+    out.write(local.array());
+    out.write(entry.getData());
+    centralDirectory.write(central.array());
+    offset += local.capacity() + compressedSize;
+    entries++;
+    bytesWritten += entry.getSize();
+  }
+
+  /**
+   * @return entries written
+   */
+  public int getEntries() {
+    return entries;
+  }
+
+  /**
+   * @return the uncompressed size of all entries
+   */
+  public long getBytesWritten() {
+    return bytesWritten;
+  }
+
+  /**
+   * @return the size of the zip written so far, the whole zip once closed
+   */
+  public long getSize() {
+    return offset;
+  }
+
+  /**
+   * Write the central directory, then close the stream.
+   *
+   * @throws IOException -
+   */
+  @Override
+  public void close() throws IOException {
+    try (out) {
+      if (offset > MAX_32_BITS) {
+        throw new ZipException("Zip64 is not supported");
+      }
+      centralDirectory.writeTo(out);
+
+      ByteBuffer end = header(22);
+      end.putInt(END_SIGNATURE)
+          // disk numbers
+          .putShort((short) 0)
+          .putShort((short) 0)
+          .putShort((short) entries)
+          .putShort((short) entries)
+          .putInt(centralDirectory.size())
+          .putInt((int) offset)
+          // comment length
+          .putShort((short) 0);
+      out.write(end.array());
+      offset += centralDirectory.size() + end.capacity();
+    }
+  }
+
+  /**
+   * Close the stream without the central directory, so what is written is not a readable zip.
+   *
+   * @throws IOException -
+   */
+  public void abort() throws IOException {
+    out.close();
+  }
+
+  private static ByteBuffer header(int size) {
+    return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+  }
+}
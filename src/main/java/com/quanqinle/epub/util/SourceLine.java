@@ -0,0 +1,100 @@
+package com.quanqinle.epub.util;
+
+import java.util.Iterator;
+
+/**
+ * A line of the source text, and where its bytes are in the source file.
+ *
+ * <p>The object is reused by the iterator of {@link SourceReader#lines()}: it is only valid until
+ * the next line is read. Call {@link #toString()} to keep the text.
+ *
+ * @author quanqinle
+ */
+public class SourceLine implements CharSequence {
+  /** the chars of the line, without line terminators */
+  private CharSequence chars;
+  /** the offset of the first byte of the line in the source file, -1 if unknown */
+  private long start = -1;
+  /** the offset after the last byte of the line in the source file, -1 if unknown */
+  private long end = -1;
+
+  /**
+   * Set the line.
+   *
+   * @param chars the chars of the line
+   * @param start the offset of the first byte in the source file, -1 if the bytes can not be used
+   * @param end the offset after the last byte in the source file, -1 if the bytes can not be used
+   * @return this
+   */
+  SourceLine set(CharSequence chars, long start, long end) {
+    this.chars = chars;
+    this.start = start;
+    this.end = end;
+    return this;
+  }
+
+  /**
+   * @return true if the bytes of the line in the source file are its UTF-8 encoding
+   */
+  public boolean hasSpan() {
+    return start >= 0;
+  }
+
+  /**
+   * @return the offset of the first byte of the line in the source file, -1 if unknown
+   */
+  public long getStart() {
+    return start;
+  }
+
+  /**
+   * @return the offset after the last byte of the line in the source file, -1 if unknown
+   */
+  public long getEnd() {
+    return end;
+  }
+
+  @Override
+  public int length() {
+    return chars.length();
+  }
+
+  @Override
+  public char charAt(int index) {
+    return chars.charAt(index);
+  }
+
+  @Override
+  public CharSequence subSequence(int start, int end) {
+    return chars.subSequence(start, end);
+  }
+
+  @Override
+  public String toString() {
+    return chars.toString();
+  }
+
+  /**
+   * Wrap lines already decoded, which have no bytes in a source file.
+   *
+   * @param lines lines
+   * @return the same lines, one reused SourceLine per iterator
+   */
+  public static Iterable<SourceLine> of(Iterable<String> lines) {
+    return () -> {
+      Iterator<String> iterator = lines.iterator();
+      SourceLine line = new SourceLine();
+      return new Iterator<>() {
+        @Override
+        public boolean hasNext() {
+          return iterator.hasNext();
+        }
+
+        @Override
+        public SourceLine next() {
+          return line.set(iterator.next(), -1, -1);
+        }
+      };
+    };
+  }
+}
@@ -0,0 +1,602 @@
+package com.quanqinle.epub.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Read lines of a plain text file, which is memory-mapped and decoded lazily. A text from a stream,
+ * see {@link #read(InputStream, String)}, is kept in memory instead.
+ *
+ * <p>If the charset is not given, it is detected from some samples of the file:
+ *
+ * <ol>
+ *   <li>BOM of UTF-8, UTF-16LE or UTF-16BE;
+ *   <li>UTF-8, if the samples are valid UTF-8;
+ *   <li>GB18030 (a superset of GBK and GB2312), if the samples are valid GB18030;
+ *   <li>otherwise UTF-8.
+ * </ol>
+ *
+ * <p>Malformed bytes are replaced by U+FFFD, instead of failing the whole book.
+ *
+ * <p>Lines are split like {@link java.io.BufferedReader#readLine()}. Each {@link #iterator()} reads
+ * the file from the beginning again.
+ *
+ * <p>If the file is in UTF-8, {@link #lines()} also tells where the bytes of each line are, so the
+ * text could be written into the .xhtml by {@link #slice(long, long)}, without decoding and
+ * encoding it again.
+ *
+ * @author quanqinle
+ */
+public class SourceReader implements Iterable<String>, Closeable {
+  private static final Logger logger = LoggerFactory.getLogger(SourceReader.class);
+
+  /** the size of each sample for detecting charset */
+  private static final int SAMPLE_SIZE = 64 * 1024;
+  /** the max size of a mapped region */
+  private static final int MAX_REGION_SIZE = Integer.MAX_VALUE;
+  /** chars decoded each time */
+  private static final int CHAR_BUFFER_SIZE = 16 * 1024;
+
+  private static final byte[] BOM_UTF_8 = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+  private static final byte[] BOM_UTF_16LE = {(byte) 0xFF, (byte) 0xFE};
+  private static final byte[] BOM_UTF_16BE = {(byte) 0xFE, (byte) 0xFF};
+
+  /** the file channel, or the stream already read */
+  private final Closeable resource;
+  /** mapped regions of the file, split after a line feed, BOM excluded */
+  private final List<ByteBuffer> regions;
+  /** the offset of each region in the file */
+  private final long[] regionStarts;
+  private final Charset charset;
+  private final long size;
+
+  /**
+   * Maps a range of the source into a buffer.
+   */
+  private interface Mapper {
+    ByteBuffer map(long position, long size) throws IOException;
+  }
+
+  private SourceReader(Closeable resource, List<ByteBuffer> regions, long firstStart, Charset charset, long size) {
+    this.resource = resource;
+    this.regions = regions;
+    this.regionStarts = new long[regions.size()];
+    long start = firstStart;
+    for (int i = 0; i < regions.size(); i++) {
+      regionStarts[i] = start;
+      start += regions.get(i).limit();
+    }
+    this.charset = charset;
+    this.size = size;
+  }
+
+  /**
+   * Map the file and detect its charset.
+   *
+   * @param path plain text file
+   * @param charsetName the charset of the file, null or empty to detect it
+   * @return reader
+   * @throws IOException -
+   */
+  public static SourceReader open(Path path, String charsetName) throws IOException {
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+    try {
+      return create(channel, (position, size) -> channel.map(FileChannel.MapMode.READ_ONLY, position, size),
+          channel.size(), charsetName, path.toString());
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Read all bytes of the stream into memory, without a temp file, and detect its charset.
+   *
+   * @param in plain text, not closed by this method
+   * @param charsetName the charset of the text, null or empty to detect it
+   * @return reader
+   * @throws IOException -
+   */
+  public static SourceReader read(InputStream in, String charsetName) throws IOException {
+    ByteBuffer text = ByteBuffer.wrap(in.readAllBytes());
+    return create(() -> {}, (position, size) -> text.slice((int) position, (int) size),
+        text.limit(), charsetName, "stream");
+  }
+
+  /**
+   * Read all bytes of the channel into memory, without a temp file, and detect its charset.
+   *
+   * @param channel plain text, not closed by this method
+   * @param charsetName the charset of the text, null or empty to detect it
+   * @return reader
+   * @throws IOException -
+   */
+  public static SourceReader read(ReadableByteChannel channel, String charsetName) throws IOException {
+    return read(Channels.newInputStream(channel), charsetName);
+  }
+
+  /**
+   * Detect the charset, then map the source.
+   *
+   * @param resource closed by {@link #close()}
+   * @param mapper maps a range of the source
+   * @param size the source size in bytes
+   * @param charsetName the charset of the source, null or empty to detect it
+   * @param name the source name for logging
+   */
+  private static SourceReader create(Closeable resource, Mapper mapper, long size, String charsetName, String name)
+      throws IOException {
+    ByteBuffer head = mapper.map(0, Math.min(size, SAMPLE_SIZE));
+
+    Charset charset;
+    int bomLength = 0;
+    if (startsWith(head, BOM_UTF_8)) {
+      charset = StandardCharsets.UTF_8;
+      bomLength = BOM_UTF_8.length;
+    } else if (startsWith(head, BOM_UTF_16LE)) {
+      charset = StandardCharsets.UTF_16LE;
+      bomLength = BOM_UTF_16LE.length;
+    } else if (startsWith(head, BOM_UTF_16BE)) {
+      charset = StandardCharsets.UTF_16BE;
+      bomLength = BOM_UTF_16BE.length;
+    } else if (charsetName != null && !charsetName.isBlank()) {
+      charset = Charset.forName(charsetName);
+    } else {
+      charset = detectCharset(mapper, size);
+    }
+    if (charsetName != null && !charsetName.isBlank() && !charset.equals(Charset.forName(charsetName))) {
+      logger.warn("Use charset {} by BOM instead of {}", charset, charsetName);
+    }
+
+    List<ByteBuffer> regions = mapRegions(mapper, bomLength, size, charset);
+    logger.info("Read [{}], {} bytes, charset {}", name, size, charset);
+    return new SourceReader(resource, regions, bomLength, charset, size);
+  }
+
+  /**
+   * Map the file into regions of at most {@link #MAX_REGION_SIZE} bytes. Each region except the
+   * last one ends with a line feed, so that no char is split into two regions.
+   */
+  private static List<ByteBuffer> mapRegions(Mapper mapper, long start, long size, Charset charset)
+      throws IOException {
+    List<ByteBuffer> regions = new ArrayList<>();
+    while (size - start > MAX_REGION_SIZE) {
+      if (!isAsciiCompatible(charset)) {
+        throw new IOException("File larger than 2GB is not supported in charset " + charset);
+      }
+      ByteBuffer region = mapper.map(start, MAX_REGION_SIZE);
+      int end = region.limit();
+      while (end > 0 && region.get(end - 1) != '\n') {
+        end--;
+      }
+      if (end == 0) {
+        throw new IOException("A line is longer than 2GB");
+      }
+      regions.add(region.limit(end).slice());
+      start += end;
+    }
+    regions.add(mapper.map(start, size - start));
+    return regions;
+  }
+
+  /**
+   * Detect charset by the samples at the beginning, middle and end of the file.
+   */
+  private static Charset detectCharset(Mapper mapper, long size) throws IOException {
+    List<ByteBuffer> samples = new ArrayList<>();
+    for (long position : new long[] {0, size / 2, size - SAMPLE_SIZE}) {
+      if (position < 0 || (position > 0 && position < SAMPLE_SIZE)) {
+        continue;
+      }
+      ByteBuffer sample = mapper.map(position, Math.min(size - position, SAMPLE_SIZE));
+      if (position > 0) {
+        // start at a new line, not in the middle of a char
+        while (sample.hasRemaining() && sample.get() != '\n') {
+          // skip
+        }
+      }
+      samples.add(sample.slice());
+    }
+
+    if (samples.stream().allMatch(sample -> isValid(sample, StandardCharsets.UTF_8))) {
+      return StandardCharsets.UTF_8;
+    }
+    Charset gb18030 = Charset.forName("GB18030");
+    if (samples.stream().allMatch(sample -> isValid(sample, gb18030))) {
+      return gb18030;
+    }
+    logger.warn("Fail to detect charset, use UTF-8");
+    return StandardCharsets.UTF_8;
+  }
+
+  /**
+   * @return true if the sample can be decoded without error, except a char cut at the end
+   */
+  private static boolean isValid(ByteBuffer sample, Charset charset) {
+    CharsetDecoder decoder = charset.newDecoder()
+        .onMalformedInput(CodingErrorAction.REPORT)
+        .onUnmappableCharacter(CodingErrorAction.REPORT);
+    ByteBuffer in = sample.duplicate();
+    CharBuffer out = CharBuffer.allocate(CHAR_BUFFER_SIZE);
+    while (true) {
+      CoderResult result = decoder.decode(in, out, false);
+      if (result.isError()) {
+        return false;
+      }
+      if (result.isUnderflow()) {
+        // the remaining bytes are a char cut by the sample
+        return in.remaining() < 4;
+      }
+      out.clear();
+    }
+  }
+
+  private static boolean isAsciiCompatible(Charset charset) {
+    return !charset.name().startsWith("UTF-16") && !charset.name().startsWith("UTF-32");
+  }
+
+  private static boolean startsWith(ByteBuffer buffer, byte[] prefix) {
+    if (buffer.limit() < prefix.length) {
+      return false;
+    }
+    for (int i = 0; i < prefix.length; i++) {
+      if (buffer.get(i) != prefix[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public Charset getCharset() {
+    return charset;
+  }
+
+  /**
+   * @return the file size in bytes
+   */
+  public long getSize() {
+    return size;
+  }
+
+  /**
+   * Read lines from the beginning of the file.
+   *
+   * @return lines without line terminators
+   */
+  @Override
+  public Iterator<String> iterator() {
+    return new LineIterator(regions);
+  }
+
+  /**
+   * Read lines from the beginning of the file, with the offsets of their bytes if the file is in
+   * UTF-8.
+   *
+   * @return lines without line terminators. The SourceLine is reused, see {@link SourceLine}
+   */
+  public Iterable<SourceLine> lines() {
+    return lines(regions, regionStarts);
+  }
+
+  private Iterable<SourceLine> lines(List<ByteBuffer> buffers, long[] starts) {
+    if (StandardCharsets.UTF_8.equals(charset)) {
+      return () -> new Utf8LineIterator(buffers, starts);
+    }
+    return SourceLine.of(() -> new LineIterator(buffers));
+  }
+
+  /**
+   * Split the file at line boundaries into about the given number of ranges, to read them
+   * concurrently.
+   * <p>Only split if a byte '\n' is always a line feed in the charset, such as UTF-8 and GB18030.
+   * Otherwise, such as UTF-16, the whole file is one range.
+   *
+   * @param parts the number of ranges wanted
+   * @return the lines of each range, in order. Reading them one by one is the same as {@link
+   *     #lines()}
+   */
+  public List<Iterable<SourceLine>> split(int parts) {
+    long begin = regionStarts[0];
+    if (parts < 2 || !isAsciiCompatible(charset) || size - begin < parts) {
+      return List.of(lines());
+    }
+
+    List<Long> bounds = new ArrayList<>();
+    bounds.add(begin);
+    for (int k = 1; k < parts; k++) {
+      long target = begin + (size - begin) * k / parts;
+      if (target <= bounds.get(bounds.size() - 1)) {
+        continue;
+      }
+      long bound = nextLineStart(target);
+      if (bound >= size) {
+        break;
+      }
+      bounds.add(bound);
+    }
+    bounds.add(size);
+
+    List<Iterable<SourceLine>> ranges = new ArrayList<>(bounds.size() - 1);
+    for (int k = 0; k + 1 < bounds.size(); k++) {
+      long start = bounds.get(k);
+      long end = bounds.get(k + 1);
+      if (start == end) {
+        continue;
+      }
+      List<ByteBuffer> buffers = new ArrayList<>();
+      List<Long> starts = new ArrayList<>();
+      for (int i = 0; i < regions.size(); i++) {
+        long regionStart = regionStarts[i];
+        long regionEnd = regionStart + regions.get(i).limit();
+        if (regionEnd <= start || regionStart >= end) {
+          continue;
+        }
+        long from = Math.max(start, regionStart);
+        long to = Math.min(end, regionEnd);
+        buffers.add(regions.get(i).slice((int) (from - regionStart), (int) (to - from)));
+        starts.add(from);
+      }
+      ranges.add(lines(buffers, starts.stream().mapToLong(Long::longValue).toArray()));
+    }
+    return ranges;
+  }
+
+  /**
+   * @return the offset after the first '\n' at or after the offset, or the file size if none
+   */
+  private long nextLineStart(long offset) {
+    for (int i = 0; i < regions.size(); i++) {
+      ByteBuffer region = regions.get(i);
+      long regionStart = regionStarts[i];
+      if (regionStart + region.limit() <= offset) {
+        continue;
+      }
+      for (int j = (int) Math.max(0, offset - regionStart); j < region.limit(); j++) {
+        if (region.get(j) == '\n') {
+          return regionStart + j + 1;
+        }
+      }
+    }
+    return size;
+  }
+
+  /**
+   * The bytes of a line, or a part of it.
+   * <p>The buffer is a view of the mapped file, which is still readable after {@link #close()}.
+   *
+   * @param start the offset of the first byte in the file, such as {@link SourceLine#getStart()}
+   * @param end the offset after the last byte, in the same line
+   * @return a new read-only buffer of the bytes
+   */
+  public ByteBuffer slice(long start, long end) {
+    int index = regions.size() - 1;
+    while (index > 0 && regionStarts[index] > start) {
+      index--;
+    }
+    return regions.get(index).slice((int) (start - regionStarts[index]), (int) (end - start)).asReadOnlyBuffer();
+  }
+
+  @Override
+  public void close() throws IOException {
+    resource.close();
+  }
+
+  /**
+   * Split lines by bytes, then decode each line. The bytes of a valid UTF-8 line are its offsets.
+   */
+  private static class Utf8LineIterator implements Iterator<SourceLine> {
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+        .onMalformedInput(CodingErrorAction.REPORT)
+        .onUnmappableCharacter(CodingErrorAction.REPORT);
+    private final SourceLine line = new SourceLine();
+    private CharBuffer chars = CharBuffer.allocate(CHAR_BUFFER_SIZE);
+    /** the bytes to read, each one ends after a line feed except the last one */
+    private final List<ByteBuffer> regions;
+    /** the offset of each buffer in the file */
+    private final long[] regionStarts;
+
+    private int regionIndex = 0;
+    /** the bytes of the current region, position at the next line */
+    private ByteBuffer in;
+    private boolean ready = false;
+
+    Utf8LineIterator(List<ByteBuffer> regions, long[] regionStarts) {
+      this.regions = regions;
+      this.regionStarts = regionStarts;
+      this.in = regions.get(0).duplicate();
+    }
+
+    @Override
+    public boolean hasNext() {
+      if (!ready) {
+        ready = readLine();
+      }
+      return ready;
+    }
+
+    @Override
+    public SourceLine next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      ready = false;
+      return line;
+    }
+
+    private boolean readLine() {
+      while (!in.hasRemaining()) {
+        if (regionIndex + 1 >= regions.size()) {
+          return false;
+        }
+        regionIndex++;
+        in = regions.get(regionIndex).duplicate();
+      }
+
+      int start = in.position();
+      int limit = in.limit();
+      int i = start;
+      while (i < limit && in.get(i) != '\n' && in.get(i) != '\r') {
+        i++;
+      }
+      int next = i;
+      if (i < limit) {
+        next = in.get(i) == '\r' && i + 1 < limit && in.get(i + 1) == '\n' ? i + 2 : i + 1;
+      }
+
+      ByteBuffer bytes = in.limit(i);
+      if (chars.capacity() < i - start) {
+        chars = CharBuffer.allocate(i - start);
+      }
+      chars.clear();
+      decoder.reset();
+      CoderResult result = decoder.decode(bytes, chars, true);
+      if (!result.isError()) {
+        result = decoder.flush(chars);
+      }
+      long base = regionStarts[regionIndex];
+      if (result.isError()) {
+        // keep the malformed line, like LineIterator, but its bytes can not be copied into UTF-8 output
+        bytes.limit(i).position(start);
+        line.set(StandardCharsets.UTF_8.decode(bytes).toString(), -1, -1);
+      } else {
+        line.set(chars.flip(), base + start, base + i);
+      }
+
+      in.limit(limit).position(next);
+      return true;
+    }
+  }
+
+  /**
+   * Decode the mapped regions chunk by chunk, and split lines.
+   */
+  private class LineIterator implements Iterator<String> {
+    private final CharsetDecoder decoder = charset.newDecoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final CharBuffer chars = CharBuffer.allocate(CHAR_BUFFER_SIZE).flip();
+    /** the bytes to decode, each one ends after a line feed except the last one */
+    private final List<ByteBuffer> regions;
+
+    private int regionIndex = 0;
+    private ByteBuffer in;
+    /** all bytes are decoded */
+    private boolean decoded = false;
+    /** the previous line ends with \r, so skip the next \n */
+    private boolean skipLF = false;
+    private String nextLine;
+
+    LineIterator(List<ByteBuffer> regions) {
+      this.regions = regions;
+      this.in = regions.get(0).duplicate();
+    }
+
+    @Override
+    public boolean hasNext() {
+      if (nextLine == null) {
+        nextLine = readLine();
+      }
+      return nextLine != null;
+    }
+
+    @Override
+    public String next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      String line = nextLine;
+      nextLine = null;
+      return line;
+    }
+
+    private String readLine() {
+      StringBuilder sb = null;
+      while (true) {
+        if (!chars.hasRemaining() && !fill()) {
+          return sb == null ? null : sb.toString();
+        }
+
+        if (skipLF) {
+          skipLF = false;
+          if (chars.get(chars.position()) == '\n') {
+            chars.position(chars.position() + 1);
+            continue;
+          }
+        }
+
+        char[] array = chars.array();
+        int start = chars.position();
+        int limit = chars.limit();
+        int i = start;
+        while (i < limit && array[i] != '\n' && array[i] != '\r') {
+          i++;
+        }
+
+        if (i < limit) {
+          String line;
+          if (sb == null) {
+            line = new String(array, start, i - start);
+          } else {
+            line = sb.append(array, start, i - start).toString();
+          }
+          skipLF = array[i] == '\r';
+          chars.position(i + 1);
+          return line;
+        }
+
+        if (sb == null) {
+          sb = new StringBuilder(Math.max(80, 2 * (limit - start)));
+        }
+        sb.append(array, start, limit - start);
+        chars.position(limit);
+      }
+    }
+
+    /**
+     * Decode more chars into the empty buffer.
+     *
+     * @return false if no more chars
+     */
+    private boolean fill() {
+      chars.clear();
+      while (!decoded && chars.position() == 0) {
+        if (!in.hasRemaining() && regionIndex + 1 < regions.size()) {
+          regionIndex++;
+          in = regions.get(regionIndex).duplicate();
+        }
+
+        boolean endOfInput = regionIndex + 1 == regions.size();
+        CoderResult result = decoder.decode(in, chars, endOfInput);
+        if (endOfInput && result.isUnderflow()) {
+          decoder.flush(chars);
+          decoded = true;
+        } else if (result.isUnderflow() && in.hasRemaining()) {
+          // never happens, since a region ends with a line feed. Skip the broken bytes anyway
+          in.position(in.limit());
+        }
+      }
+      chars.flip();
+      return chars.hasRemaining();
+    }
+  }
+}
@@ -0,0 +1,254 @@
+package com.quanqinle.epub.util;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A text file of the template, compiled once into static text and placeholder slots, then rendered
+ * into a Writer in one pass.
+ *
+ * <p>A slot is a name in square brackets in one line, such as [BOOK'S TITLE] or [manifest item
+ * list]. When rendered, a slot is replaced by the value of its name, or written as is if there is
+ * no such name. Values are never scanned for slots again.
+ *
+ * <p>A value is escaped by where its slot is: in an attribute value of a tag, the quotes are
+ * escaped too; elsewhere only &amp;, &lt; and &gt; are. A {@link Markup} value is written as is,
+ * such as a list of &lt;item> made by {@link NavigationBuilder}.
+ *
+ * @author quanqinle
+ */
+public class TemplateText {
+  /** the longest name of a slot, longer text in brackets is static */
+  private static final int MAX_NAME_LENGTH = 64;
+  /** chars copied at a time when writing a Markup */
+  private static final int CHUNK_SIZE = 8192;
+
+  /** static text at even indexes, slot names at odd indexes */
+  private final String[] parts;
+  /** per slot, true if it is in an attribute value */
+  private final boolean[] inAttribute;
+  /** the total length of the static text */
+  private final int staticLength;
+
+  private TemplateText(List<String> parts, List<Boolean> inAttribute) {
+    this.parts = parts.toArray(new String[0]);
+    this.inAttribute = new boolean[inAttribute.size()];
+    for (int i = 0; i < this.inAttribute.length; i++) {
+      this.inAttribute[i] = inAttribute.get(i);
+    }
+    int length = 0;
+    for (int i = 0; i < this.parts.length; i += 2) {
+      length += this.parts[i].length();
+    }
+    this.staticLength = length;
+  }
+
+  /**
+   * A value written without escaping.
+   */
+  public static final class Markup {
+    private final CharSequence markup;
+
+    private Markup(CharSequence markup) {
+      this.markup = markup;
+    }
+
+    /**
+     * Write the markup in chunks, so a StringBuilder is never copied into a whole new String.
+     */
+    void writeTo(Writer out) throws IOException {
+      if (markup instanceof String string) {
+        out.write(string);
+        return;
+      }
+      if (!(markup instanceof StringBuilder sb)) {
+        out.append(markup);
+        return;
+      }
+      char[] chunk = new char[Math.min(CHUNK_SIZE, sb.length())];
+      for (int start = 0; start < sb.length(); start += chunk.length) {
+        int end = Math.min(start + chunk.length, sb.length());
+        sb.getChars(start, end, chunk, 0);
+        out.write(chunk, 0, end - start);
+      }
+    }
+
+    int length() {
+      return markup.length();
+    }
+
+    @Override
+    public String toString() {
+      return markup.toString();
+    }
+  }
+
+  /**
+   * A value written as is, not escaped.
+   * <p>The markup is read when rendering, so do not change it before that.
+   *
+   * @param markup XML markup, such as "&lt;item ... />"
+   * @return value
+   */
+  public static Markup markup(CharSequence markup) {
+    return new Markup(markup);
+  }
+
+  /**
+   * Split the text into static text and slots.
+   *
+   * @param content the content of the template file
+   * @return the compiled text
+   */
+  public static TemplateText compile(String content) {
+    List<String> parts = new ArrayList<>();
+    List<Boolean> inAttribute = new ArrayList<>();
+
+    // where the scanner is: in a tag, in a quoted attribute value, in a comment
+    boolean inTag = false;
+    char quote = 0;
+    boolean inComment = false;
+    // content[copied, i) has not been added to parts yet
+    int copied = 0;
+    int i = 0;
+    while (i < content.length()) {
+      char c = content.charAt(i);
+      if (c == '[') {
+        int end = slotEnd(content, i);
+        if (end >= 0) {
+          parts.add(content.substring(copied, i));
+          parts.add(content.substring(i + 1, end));
+          inAttribute.add(quote != 0);
+          copied = end + 1;
+          i = end + 1;
+          continue;
+        }
+      }
+
+      if (inComment) {
+        if (content.startsWith("-->", i)) {
+          inComment = false;
+          i += 2;
+        }
+      } else if (quote != 0) {
+        if (c == quote) {
+          quote = 0;
+        }
+      } else if (inTag) {
+        if (c == '"' || c == '\'') {
+          quote = c;
+        } else if (c == '>') {
+          inTag = false;
+        }
+      } else if (c == '<') {
+        if (content.startsWith("<!--", i)) {
+          inComment = true;
+          i += 3;
+        } else {
+          inTag = true;
+        }
+      }
+      i++;
+    }
+    parts.add(content.substring(copied));
+    return new TemplateText(parts, inAttribute);
+  }
+
+  /**
+   * @return the index of ']' closing the slot starting at start, or -1 if it is not a slot
+   */
+  private static int slotEnd(String content, int start) {
+    int limit = Math.min(content.length(), start + MAX_NAME_LENGTH + 2);
+    for (int i = start + 1; i < limit; i++) {
+      switch (content.charAt(i)) {
+        case ']':
+          return i == start + 1 ? -1 : i;
+        case '[', '<', '>', '\r', '\n':
+          return -1;
+        default:
+          break;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * @return the names of the slots, in order, duplicated if a name appears more than once
+   */
+  public List<String> getSlotNames() {
+    List<String> names = new ArrayList<>();
+    for (int i = 1; i < parts.length; i += 2) {
+      names.add(parts[i]);
+    }
+    return names;
+  }
+
+  /**
+   * Render the text into the Writer.
+   *
+   * @param out where to write, not closed
+   * @param values slot name without brackets -> value, a CharSequence to escape or a {@link Markup}
+   * @throws IOException -
+   */
+  public void render(Writer out, Map<String, ?> values) throws IOException {
+    out.write(parts[0]);
+    for (int i = 1; i < parts.length; i += 2) {
+      Object value = values.get(parts[i]);
+      if (value instanceof Markup markup) {
+        markup.writeTo(out);
+      } else if (value instanceof CharSequence text) {
+        if (inAttribute[i / 2]) {
+          XmlEscaper.writeAttribute(out, text);
+        } else {
+          XmlEscaper.writeText(out, text);
+        }
+      } else if (value == null) {
+        out.append('[').append(parts[i]).append(']');
+      } else {
+        throw new IllegalArgumentException("Unsupported value of [" + parts[i] + "]: " + value.getClass());
+      }
+      out.write(parts[i + 1]);
+    }
+  }
+
+  /**
+   * Render the text into a String.
+   *
+   * @param values slot name without brackets -> value, a CharSequence to escape or a {@link Markup}
+   * @return the rendered text
+   */
+  public String fill(Map<String, ?> values) {
+    StringWriter out = new StringWriter(estimateLength(values));
+    try {
+      render(out, values);
+    } catch (IOException e) {
+      // never thrown by StringWriter
+      throw new UncheckedIOException(e);
+    }
+    return out.toString();
+  }
+
+  /**
+   * @param values the values to render
+   * @return about the length of the rendered text, before escaping
+   */
+  public int estimateLength(Map<String, ?> values) {
+    long length = staticLength;
+    for (int i = 1; i < parts.length; i += 2) {
+      Object value = values.get(parts[i]);
+      if (value instanceof Markup markup) {
+        length += markup.length();
+      } else if (value instanceof CharSequence text) {
+        length += text.length();
+      } else {
+        length += parts[i].length() + 2;
+      }
+    }
+    return (int) Math.min(length, Integer.MAX_VALUE - 8);
+  }
+}
@@ -0,0 +1,175 @@
+package com.quanqinle.epub.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import java.util.stream.Collectors;
+
+/**
+ * Check if a line is a title, such as a chapter title or a sub-book title.
+ *
+ * <p>The regex list is compiled only once, into a single alternation. {@link String#matches(String)}
+ * compiles the pattern again on every call, which is very expensive for millions of lines. If a
+ * regex after the first has a back reference, which would be numbered by the whole alternation,
+ * the regex list is compiled one by one instead.
+ *
+ * <p>If every regex starts with a literal character, such as "第" in "^第.{1,10}章", lines not
+ * starting with one of these characters are rejected without running the regex.
+ *
+ * @author quanqinle
+ */
+public class TitleMatcher {
+  /** chars which make the first char of a regex NOT a literal */
+  private static final String REGEX_META_CHARS = "\\.[]{}()<>*+-=!?^$|";
+  /** chars which make the previous char optional */
+  private static final String REGEX_OPTIONAL_QUANTIFIERS = "?*{";
+
+  /** the whole line must match one of them, usually one alternation. empty if the regex list is empty */
+  private final Pattern[] patterns;
+  /** the possible first chars of a title. null if unknown, then every line runs the regex */
+  private final String firstChars;
+
+  /**
+   * Constructor
+   *
+   * @param regexList the regex list of titles, one line matching any of them is a title
+   */
+  public TitleMatcher(List<String> regexList) {
+    if (regexList == null || regexList.isEmpty()) {
+      this.patterns = new Pattern[0];
+      this.firstChars = null;
+      return;
+    }
+
+    this.patterns = compile(regexList);
+    this.firstChars = findFirstChars(regexList);
+  }
+
+  /**
+   * Check if the whole line matches one of the regex list.
+   *
+   * <p>The same result as {@code regexList.stream().anyMatch(line::matches)}.
+   *
+   * @param line a line of the book
+   * @return true if it is a title
+   */
+  public boolean matches(CharSequence line) {
+    if (patterns.length == 0 || line.length() == 0) {
+      return false;
+    }
+    if (firstChars != null && firstChars.indexOf(line.charAt(0)) < 0) {
+      return false;
+    }
+    for (Pattern pattern : patterns) {
+      if (pattern.matcher(line).matches()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Combine the regex list into one alternation: (?:regex1)|(?:regex2)|...
+   *
+   * @return the alternation, or each regex compiled if they cannot be combined
+   */
+  private static Pattern[] compile(List<String> regexList) {
+    if (regexList.size() == 1) {
+      return new Pattern[] {Pattern.compile(regexList.get(0))};
+    }
+    if (regexList.stream().skip(1).anyMatch(TitleMatcher::hasBackReference)) {
+      // \1 of the 2nd regex would refer to the 1st group of the alternation, silently
+      return compileEach(regexList);
+    }
+
+    String alternation =
+        regexList.stream().map(regex -> "(?:" + regex + ")").collect(Collectors.joining("|"));
+    try {
+      return new Pattern[] {Pattern.compile(alternation)};
+    } catch (PatternSyntaxException e) {
+      // such as a group name used in two regexes. Compile them one by one, so a real syntax error
+      // points to its own regex, not the alternation
+      return compileEach(regexList);
+    }
+  }
+
+  private static Pattern[] compileEach(List<String> regexList) {
+    return regexList.stream().map(Pattern::compile).toArray(Pattern[]::new);
+  }
+
+  /**
+   * @return true if the regex has a back reference, such as "\1" or "\k&lt;name>"
+   */
+  private static boolean hasBackReference(String regex) {
+    for (int i = 0; i < regex.length() - 1; i++) {
+      if (regex.charAt(i) != '\\') {
+        continue;
+      }
+      char next = regex.charAt(++i);
+      if ((next >= '1' && next <= '9') || (next == 'k' && regex.startsWith("<", i + 1))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Find the literal first char of each regex, such as "第" in "^第.{1,10}章". A regex with a
+   * top-level "|", such as "^第.{1,10}章|^序章.*", has the first char of each alternative.
+   *
+   * @return all the first chars, or null if any alternative does not start with a literal char
+   */
+  private static String findFirstChars(List<String> regexList) {
+    StringBuilder chars = new StringBuilder();
+    for (String regex : regexList) {
+      for (String alternative : splitAlternatives(regex)) {
+        String body = alternative.startsWith("^") ? alternative.substring(1) : alternative;
+        if (body.isEmpty()) {
+          return null;
+        }
+
+        char first = body.charAt(0);
+        if (REGEX_META_CHARS.indexOf(first) >= 0 || Character.isHighSurrogate(first)) {
+          return null;
+        }
+        if (body.length() > 1 && REGEX_OPTIONAL_QUANTIFIERS.indexOf(body.charAt(1)) >= 0) {
+          return null;
+        }
+        chars.append(first);
+      }
+    }
+    return chars.toString();
+  }
+
+  /**
+   * Split the regex at each "|" which is not escaped, nor in a character class or a group.
+   *
+   * @return the alternatives, the regex itself if none
+   */
+  private static List<String> splitAlternatives(String regex) {
+    List<String> alternatives = new ArrayList<>();
+    int depth = 0;
+    boolean inClass = false;
+    int start = 0;
+    for (int i = 0; i < regex.length(); i++) {
+      char c = regex.charAt(i);
+      if (c == '\\') {
+        i++;
+      } else if (inClass) {
+        inClass = c != ']';
+      } else if (c == '[') {
+        inClass = true;
+      } else if (c == '(') {
+        depth++;
+      } else if (c == ')') {
+        depth--;
+      } else if (c == '|' && depth == 0) {
+        alternatives.add(regex.substring(start, i));
+        start = i + 1;
+      }
+    }
+    alternatives.add(regex.substring(start));
+    return alternatives;
+  }
+}
@@ -0,0 +1,63 @@
+package com.quanqinle.epub.util;
+
+import java.io.IOException;
+
+/**
+ * Escape text for XML, written straight into a Writer or StringBuilder without building a new String.
+ *
+ * @author quanqinle
+ */
+public final class XmlEscaper {
+
+  private XmlEscaper() {}
+
+  /**
+   * Write the text as XML character data: &amp;, &lt; and &gt; are escaped.
+   *
+   * @param out where to write
+   * @param text text
+   * @throws IOException -
+   */
+  public static void writeText(Appendable out, CharSequence text) throws IOException {
+    write(out, text, false);
+  }
+
+  /**
+   * Write the text as an XML attribute value, quoted by ' or ": the quotes are escaped too.
+   *
+   * @param out where to write
+   * @param text text
+   * @throws IOException -
+   */
+  public static void writeAttribute(Appendable out, CharSequence text) throws IOException {
+    write(out, text, true);
+  }
+
+  private static void write(Appendable out, CharSequence text, boolean attribute) throws IOException {
+    int length = text.length();
+    // text[copied, i) has not been written yet
+    int copied = 0;
+    for (int i = 0; i < length; i++) {
+      String escape = escapeOf(text.charAt(i), attribute);
+      if (escape != null) {
+        out.append(text, copied, i).append(escape);
+        copied = i + 1;
+      }
+    }
+    out.append(text, copied, length);
+  }
+
+  /**
+   * @return the escape of the char, or null if not escaped
+   */
+  private static String escapeOf(char c, boolean attribute) {
+    return switch (c) {
+      case '&' -> "&amp;";
+      case '<' -> "&lt;";
+      case '>' -> "&gt;";
+      case '"' -> attribute ? "&quot;" : null;
+      case '\'' -> attribute ? "&apos;" : null;
+      default -> null;
+    };
+  }
+}
@@ -0,0 +1,189 @@
+package com.quanqinle.epub.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write the files of an epub straight into a .epub file, without any temp folder.
+ * <p>The mimetype is written first and stored, as the epub specification requires.
+ * <p>The files are compressed by the calling threads, only writing into the .epub is serialized.
+ * <p>The level of each file is chosen by a {@link CompressionPolicy}.
+ * <p>The .epub is complete only once {@link #finish()} is called, closing it without is aborting it.
+ *
+ * @author quanqinle
+ */
+public class ZipEpubSink implements EpubSink {
+  private static final Logger logger = LoggerFactory.getLogger(ZipEpubSink.class);
+
+  private final RawZipWriter zip;
+  /** reuse the compressed files of the previous build. null if not used */
+  private final EntryCache cache;
+  /** the level of each file */
+  private final CompressionPolicy policy;
+  /** guarded by {@link #zip} */
+  private boolean closed = false;
+  /** files whose compressed data is reused from {@link #cache} */
+  private final AtomicInteger reusedEntries = new AtomicInteger();
+  /** the uncompressed bytes of the files reused */
+  private final AtomicLong reusedBytes = new AtomicLong();
+
+  /**
+   * Constructor. Create the .epub file and write the mimetype into it.
+   *
+   * @param epubFilePath the .epub file
+   * @throws IOException -
+   */
+  public ZipEpubSink(Path epubFilePath) throws IOException {
+    this(epubFilePath, null);
+  }
+
+  /**
+   * Constructor. Create the .epub file and write the mimetype into it.
+   *
+   * @param epubFilePath the .epub file
+   * @param cache reuse the compressed files in it, null if not used
+   * @throws IOException -
+   */
+  public ZipEpubSink(Path epubFilePath, EntryCache cache) throws IOException {
+    this(epubFilePath, cache, CompressionPolicy.defaultPolicy());
+  }
+
+  /**
+   * Constructor. Create the .epub file and write the mimetype into it.
+   *
+   * @param epubFilePath the .epub file
+   * @param cache reuse the compressed files in it, null if not used
+   * @param policy the level of each file
+   * @throws IOException -
+   */
+  public ZipEpubSink(Path epubFilePath, EntryCache cache, CompressionPolicy policy) throws IOException {
+    this(new BufferedOutputStream(Files.newOutputStream(epubFilePath)), cache, policy);
+    logger.debug("target epub = {}", epubFilePath);
+  }
+
+  /**
+   * Constructor. Write the mimetype into the stream.
+   *
+   * @param out the stream of the .epub, it will be closed by {@link #finish()} or {@link #close()}
+   * @param cache reuse the compressed files in it, null if not used
+   * @param policy the level of each file
+   * @throws IOException -
+   */
+  public ZipEpubSink(OutputStream out, EntryCache cache, CompressionPolicy policy) throws IOException {
+    this.zip = new RawZipWriter(out);
+    this.cache = cache;
+    this.policy = policy;
+    // IMPORTANT!! uncompressed entry
+    zip.write(EpubUtils.MIMETYPE_FILE_NAME,
+        CompressedEntry.store(EpubUtils.MIMETYPE_FILE_CONTENT.getBytes(StandardCharsets.US_ASCII)));
+  }
+
+  @Override
+  public void write(String entryName, byte[] content) throws IOException {
+    if (EpubUtils.MIMETYPE_FILE_NAME.equals(entryName)) {
+      // already written
+      return;
+    }
+
+    int level = policy.levelOf(entryName);
+    CompressedEntry entry;
+    if (cache == null) {
+      entry = CompressedEntry.compress(content, level);
+    } else {
+      boolean[] compressed = {false};
+      entry = cache.get(content, level, data -> {
+        compressed[0] = true;
+        return CompressedEntry.compress(data, level);
+      });
+      if (!compressed[0]) {
+        reusedEntries.incrementAndGet();
+        reusedBytes.addAndGet(content.length);
+      }
+    }
+    synchronized (zip) {
+      zip.write(entryName, entry);
+    }
+  }
+
+  /**
+   * @return files whose compressed data is reused from the cache, not compressed again
+   */
+  public int getReusedEntries() {
+    return reusedEntries.get();
+  }
+
+  /**
+   * @return the uncompressed bytes of the files reused
+   */
+  public long getReusedBytes() {
+    return reusedBytes.get();
+  }
+
+  /**
+   * @return files written into the .epub
+   */
+  public int getEntries() {
+    synchronized (zip) {
+      return zip.getEntries();
+    }
+  }
+
+  /**
+   * @return the uncompressed size of all files written
+   */
+  public long getBytesWritten() {
+    synchronized (zip) {
+      return zip.getBytesWritten();
+    }
+  }
+
+  /**
+   * @return the size of the .epub, only complete once finished
+   */
+  public long getSize() {
+    synchronized (zip) {
+      return zip.getSize();
+    }
+  }
+
+  /**
+   * Write the central directory and close the .epub. Nothing happens if already closed.
+   *
+   * @throws IOException -
+   */
+  public void finish() throws IOException {
+    synchronized (zip) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      zip.close();
+    }
+  }
+
+  /**
+   * Close the .epub. If not finished, such as on a failure, the central directory is not written,
+   * so a partial .epub is never a readable zip. Nothing happens if already closed.
+   *
+   * @throws IOException -
+   */
+  @Override
+  public void close() throws IOException {
+    synchronized (zip) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      zip.abort();
+    }
+  }
+}
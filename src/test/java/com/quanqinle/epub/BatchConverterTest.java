@@ -0,0 +1,92 @@
+package com.quanqinle.epub;
+
+import com.quanqinle.epub.entity.BatchResult;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchConverterTest {
+
+  @TempDir
+  Path tempDir;
+
+  @Test
+  void convert() throws IOException {
+    Files.writeString(tempDir.resolve("book.txt"), """
+        前言
+        第一章 开始
+        第一段
+        第二章 结束
+        第二段
+        """);
+    for (String title : List.of("book1", "book2")) {
+      Files.writeString(tempDir.resolve(title + ".yaml"), """
+          srcTxtPath: "book.txt"
+          outputDir: "out"
+          bookTitle: "%s"
+          directZip: true
+          """.formatted(title));
+    }
+    Files.writeString(tempDir.resolve("bad.yaml"), """
+        srcTxtPath: "book.txt"
+        outputDir: "out"
+        chapterTitleRegexList:
+          - "^第(.{1,10}章"
+        """);
+    Files.writeString(tempDir.resolve("manifest.txt"), """
+        # books
+        book1.yaml
+        bad.yaml
+        book2.yaml
+        """);
+
+    List<Path> bookInfoFiles = BatchConverter.findBookInfoFiles(tempDir.resolve("manifest.txt"));
+    List<BatchResult> results = new BatchConverter(2).convert(bookInfoFiles);
+
+    assertEquals(3, results.size());
+    assertTrue(results.get(0).isSuccess());
+    assertFalse(results.get(1).isSuccess());
+    assertFalse(results.get(1).getError().isEmpty());
+    assertTrue(results.get(2).isSuccess());
+    assertTrue(Files.exists(tempDir.resolve("out/book1.epub")));
+    assertTrue(Files.exists(tempDir.resolve("out/book2.epub")));
+  }
+
+  @Test
+  void shareEntryStore() throws IOException {
+    Files.writeString(tempDir.resolve("book.txt"), """
+        前言
+        第一章 开始
+        第一段
+        第二章 结束
+        第二段
+        """);
+    for (String title : List.of("edition1", "edition2")) {
+      Files.writeString(tempDir.resolve(title + ".yaml"), """
+          srcTxtPath: "book.txt"
+          outputDir: "out"
+          bookTitle: "%s"
+          entryStore: "store"
+          """.formatted(title));
+    }
+
+    // one thread, so the second edition reuses the files of the first one
+    List<BatchResult> results = new BatchConverter(1).convert(BatchConverter.findBookInfoFiles(tempDir));
+
+    assertEquals(2, results.size());
+    assertTrue(results.get(0).isSuccess());
+    assertTrue(results.get(1).isSuccess());
+    assertEquals(0, results.get(0).getReport().getReusedEntries());
+    int reused = results.get(1).getReport().getReusedEntries();
+    assertTrue(reused >= 3, "reused " + reused);
+    assertTrue(reused < results.get(1).getReport().getEntries());
+    assertTrue(Files.exists(tempDir.resolve("out/edition2.epub")));
+    assertFalse(Files.exists(tempDir.resolve("out/edition2.epub.cache")));
+  }
+}
@@ -3,12 +3,24 @@ package com.quanqinle.epub;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.dataformat.yaml.YAMLMapper;
 import com.quanqinle.epub.entity.BookInfo;
+import com.quanqinle.epub.entity.ChapterBody;
+import com.quanqinle.epub.entity.ChapterTable;
+import com.quanqinle.epub.util.ChapterWriter;
+import com.quanqinle.epub.util.FolderEpubSink;
+import com.quanqinle.epub.util.SourceReader;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -50,4 +62,240 @@ class ConvertTxtToHtmlsTest {
     parse.convert();
   }
 
+  @ParameterizedTest
+  @ValueSource(booleans = {false, true})
+  void parseInParallel(boolean hasManyBooks, @TempDir Path tempDir) throws IOException {
+    StringBuilder text = new StringBuilder("前言\r\n\r\n  序言第一段\n");
+    for (int i = 1; i <= 200; i++) {
+      if (i % 50 == 1) {
+        text.append("第").append(i / 50 + 1).append("卷 卷名\n");
+      }
+      text.append("第").append(i).append("章 标题\r\n");
+      for (int j = 0; j < i % 7; j++) {
+        text.append(j % 3 == 0 ? "　　全角缩进的段落" : "  段落 & 内容").append(j).append("\n\n");
+      }
+    }
+    Path txt = Files.writeString(tempDir.resolve("book.txt"), text, StandardCharsets.UTF_8);
+
+    BookInfo sequential = newBook(hasManyBooks);
+    BookInfo parallel = newBook(hasManyBooks);
+    try (SourceReader source = SourceReader.open(txt, null)) {
+      assertEquals(16, source.split(16).size());
+      ConvertTxtToHtmls expected = new ConvertTxtToHtmls(sequential, new FolderEpubSink(tempDir));
+      expected.parse(source, 1, 1);
+      ConvertTxtToHtmls actual = new ConvertTxtToHtmls(parallel, new FolderEpubSink(tempDir));
+      actual.parse(source, 4, 16);
+
+      assertEquals(expected.getLinesRead(), actual.getLinesRead());
+      assertEquals(expected.getChapters(), actual.getChapters());
+      assertEquals(describe(sequential.getChapterTable()), describe(parallel.getChapterTable()));
+    }
+  }
+
+  @ParameterizedTest
+  @ValueSource(booleans = {false, true})
+  void writeWhileStreaming(boolean hasManyBooks, @TempDir Path tempDir) throws IOException {
+    StringBuilder text = new StringBuilder("前言\n序言第一段\n");
+    for (int i = 1; i <= 20; i++) {
+      if (i % 10 == 1) {
+        text.append("第").append(i / 10 + 1).append("卷 卷名\n");
+      }
+      text.append("第").append(i).append("章 标题\n段落").append(i).append("\n");
+    }
+    Path txt = Files.writeString(tempDir.resolve("book.txt"), text, StandardCharsets.UTF_8);
+
+    BookInfo whole = newBook(hasManyBooks);
+    BookInfo streamed = newBook(hasManyBooks);
+    streamed.setStreaming(true);
+    try (SourceReader source = SourceReader.open(txt, null)) {
+      new ConvertTxtToHtmls(whole, new FolderEpubSink(tempDir.resolve("whole"))).convert(source);
+      new ConvertTxtToHtmls(streamed, new FolderEpubSink(tempDir.resolve("streamed"))).convert(source);
+    }
+
+    ChapterTable table = streamed.getChapterTable();
+    assertEquals(whole.getChapterTable().size(), table.size());
+    assertEquals(hasManyBooks ? 23 : 21, table.size());
+    Path wholeFolder = tempDir.resolve("whole").resolve(ChapterWriter.TEXT_FOLDER);
+    Path streamedFolder = tempDir.resolve("streamed").resolve(ChapterWriter.TEXT_FOLDER);
+    for (int i = 0; i < table.size(); i++) {
+      assertNull(table.getBody(i), table.getFullName(i));
+      assertEquals(Files.readString(wholeFolder.resolve(table.getFullName(i))),
+          Files.readString(streamedFolder.resolve(table.getFullName(i))), table.getFullName(i));
+    }
+    assertTrue(Files.readString(streamedFolder.resolve(table.getFullName(table.size() - 1)))
+        .contains("<p>段落20</p>"));
+  }
+
+  @ParameterizedTest
+  @ValueSource(booleans = {false, true})
+  void keepChaptersWithSameTitle(boolean hasManyBooks, @TempDir Path tempDir) throws IOException {
+    Path txt = Files.writeString(tempDir.resolve("book.txt"), """
+        前言
+        第一卷 春
+        第一章 开始
+        春的第一段
+        第二章 番外
+
+        春的番外
+        第二卷 秋
+        第一章 开始
+        秋的第一段
+        第二章 番外
+        秋的番外
+        """, StandardCharsets.UTF_8);
+
+    BookInfo book = newBook(hasManyBooks);
+    try (SourceReader source = SourceReader.open(txt, null)) {
+      new ConvertTxtToHtmls(book, new FolderEpubSink(tempDir)).parse(source, 1, 1);
+    }
+
+    ChapterTable table = book.getChapterTable();
+    List<String> expected = hasManyBooks
+        ? List.of(
+            "FRONT_MATTER 0 [1, 2) 引言 -> front_matter.xhtml",
+            "VOLUME 1 [2, 3) 第一卷 春 -> book-1.xhtml",
+            "CHAPTER 1 [3, 5) 第一章 开始 -> book-1_chapter-001.xhtml",
+            "CHAPTER 1 [5, 8) 第二章 番外 -> book-1_chapter-002.xhtml",
+            "VOLUME 2 [8, 9) 第二卷 秋 -> book-2.xhtml",
+            "CHAPTER 2 [9, 11) 第一章 开始 -> book-2_chapter-001.xhtml",
+            "CHAPTER 2 [11, 13) 第二章 番外 -> book-2_chapter-002.xhtml")
+        : List.of(
+            "FRONT_MATTER 0 [1, 3) 引言 -> front_matter.xhtml",
+            "CHAPTER 0 [3, 5) 第一章 开始 -> chapter-001.xhtml",
+            "CHAPTER 0 [5, 9) 第二章 番外 -> chapter-002.xhtml",
+            "CHAPTER 0 [9, 11) 第一章 开始 -> chapter-003.xhtml",
+            "CHAPTER 0 [11, 13) 第二章 番外 -> chapter-004.xhtml");
+    List<String> actual = new ArrayList<>();
+    for (int i = 0; i < table.size(); i++) {
+      actual.add(table.getKind(i) + " " + table.getVolume(i)
+          + " [" + table.getFirstLine(i) + ", " + table.getEndLine(i) + ") "
+          + table.getTitle(i) + " -> " + table.getFullName(i));
+    }
+    assertEquals(expected, actual);
+    List<String> lastLines = table.getBody(table.size() - 1).toLines();
+    assertEquals("<p>秋的番外</p>", lastLines.get(lastLines.size() - 1));
+  }
+
+  @ParameterizedTest
+  @ValueSource(booleans = {false, true})
+  void splitLongChapters(boolean byBytes, @TempDir Path tempDir) throws IOException {
+    StringBuilder text = new StringBuilder("第一章 长\n");
+    for (int i = 1; i <= 10; i++) {
+      text.append("段落").append(i).append("\n");
+    }
+    text.append("第二章 短\n段落\n");
+    Path txt = Files.writeString(tempDir.resolve("book.txt"), text, StandardCharsets.UTF_8);
+
+    BookInfo whole = newBook(false);
+    whole.setMaxHtmlBytes(0);
+    BookInfo split = newBook(false);
+    if (byBytes) {
+      // the title and 3 paragraphs: "<h1>第一章 长</h1>" and "<p>段落N</p>", each with a line separator
+      split.setMaxHtmlBytes(ChapterBody.markupByteSize("<h1>第一章 长</h1>") + 3 * ChapterBody.markupByteSize("<p>段落1</p>"));
+    } else {
+      split.setMaxHtmlParagraphs(4);
+    }
+    try (SourceReader source = SourceReader.open(txt, null)) {
+      new ConvertTxtToHtmls(whole, new FolderEpubSink(tempDir)).parse(source, 1, 1);
+      new ConvertTxtToHtmls(split, new FolderEpubSink(tempDir)).parse(source, 1, 1);
+    }
+
+    ChapterTable table = split.getChapterTable();
+    List<String> files = new ArrayList<>();
+    List<String> lines = new ArrayList<>();
+    for (int i = 0; i < table.size(); i++) {
+      files.add(table.getKind(i) + " [" + table.getFirstLine(i) + ", " + table.getEndLine(i) + ") "
+          + table.getTitle(i) + " -> " + table.getFullName(i));
+      lines.addAll(table.getBody(i).toLines());
+    }
+    assertEquals(List.of(
+        "CHAPTER [1, 5) 第一章 长 -> chapter-001.xhtml",
+        "PART [5, 9) 第一章 长 -> chapter-001-part2.xhtml",
+        "PART [9, 12) 第一章 长 -> chapter-001-part3.xhtml",
+        "CHAPTER [12, 14) 第二章 短 -> chapter-002.xhtml"), files);
+    List<String> wholeLines = new ArrayList<>();
+    for (int i = 0; i < whole.getChapterTable().size(); i++) {
+      wholeLines.addAll(whole.getChapterTable().getBody(i).toLines());
+    }
+    assertEquals(wholeLines, lines);
+  }
+
+  @Test
+  void detectChapterTitles(@TempDir Path tempDir) throws IOException {
+    Path txt = Files.writeString(tempDir.resolve("book.txt"), """
+        简介
+
+        第1章
+
+        第一段
+
+        第2章
+
+        第二段
+
+        第3章
+
+        第三段
+        """, StandardCharsets.UTF_8);
+
+    BookInfo book = newBook(false);
+    try (SourceReader source = SourceReader.open(txt, null)) {
+      ConvertTxtToHtmls converter = new ConvertTxtToHtmls(book, new FolderEpubSink(tempDir));
+      converter.detectChapterTitles(source);
+      converter.parse(source, 1, 1);
+    }
+
+    ChapterTable table = book.getChapterTable();
+    assertEquals(4, table.size());
+    assertEquals(ChapterTable.Kind.FRONT_MATTER, table.getKind(0));
+    assertEquals("第1章", table.getTitle(1));
+    assertEquals("第3章", table.getTitle(3));
+  }
+
+  @Test
+  void keepConfiguredTitlesOutOfSample(@TempDir Path tempDir) throws IOException {
+    StringBuilder text = new StringBuilder("简介\n");
+    for (int i = 1; i <= 3; i++) {
+      text.append("第").append(i).append("章\n\n段落\n\n");
+    }
+    // the last title is far beyond the sample lines of its range
+    text.append("段落\n".repeat(12_000)).append("第四章 结局\n最后一段\n");
+    Path txt = Files.writeString(tempDir.resolve("book.txt"), text, StandardCharsets.UTF_8);
+
+    BookInfo book = newBook(false);
+    List<String> configured = book.getChapterTitleRegexList();
+    try (SourceReader source = SourceReader.open(txt, null)) {
+      ConvertTxtToHtmls converter = new ConvertTxtToHtmls(book, new FolderEpubSink(tempDir));
+      converter.detectChapterTitles(source);
+      converter.parse(source, 1, 1);
+    }
+
+    assertEquals(configured, book.getChapterTitleRegexList().subList(0, configured.size()));
+    assertTrue(book.getChapterTitleRegexList().size() > configured.size());
+    ChapterTable table = book.getChapterTable();
+    assertEquals(5, table.size());
+    assertEquals("第3章", table.getTitle(3));
+    assertEquals("第四章 结局", table.getTitle(4));
+  }
+
+  private static BookInfo newBook(boolean hasManyBooks) {
+    BookInfo book = new BookInfo();
+    book.setHasManyBooks(hasManyBooks);
+    book.setReplaceMap(Map.of("　", ""));
+    return book;
+  }
+
+  /**
+   * @return kind, title, file name, line range and lines of each file
+   */
+  private static List<String> describe(ChapterTable table) {
+    List<String> lines = new ArrayList<>();
+    for (int i = 0; i < table.size(); i++) {
+      lines.add(table.getKind(i) + " " + table.getVolume(i) + " " + table.getTitle(i) + " -> " + table.getFullName(i)
+          + " [" + table.getFirstLine(i) + ", " + table.getEndLine(i) + ")");
+      lines.addAll(table.getBody(i).toLines());
+    }
+    return lines;
+  }
+
 }
@@ -0,0 +1,119 @@
+package com.quanqinle.epub;
+
+import com.quanqinle.epub.entity.BookInfo;
+import com.quanqinle.epub.entity.BuildReport;
+import com.quanqinle.epub.entity.ValidationMessage;
+import com.quanqinle.epub.entity.ValidationReport;
+import com.quanqinle.epub.metrics.BuildListener;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author quanqinle
+ */
+class EpubValidatorTest {
+  private static EpubValidator validator;
+
+  @BeforeAll
+  static void setUp() {
+    validator = new EpubValidator(2);
+  }
+
+  @AfterAll
+  static void tearDown() {
+    validator.close();
+  }
+
+  @Test
+  void warmUp() {
+    ValidationReport report = validator.warmUp();
+    assertTrue(report.isValid(), () -> report.getMessages().toString());
+  }
+
+  @Test
+  void validateConcurrently(@TempDir Path tempDir) throws IOException {
+    List<CompletableFuture<ValidationReport>> futures = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      futures.add(validator.submit(makeBook(tempDir, "book" + i, i % 2 == 0).getEpubPath()));
+    }
+
+    for (CompletableFuture<ValidationReport> future : futures) {
+      ValidationReport report = future.join();
+      assertEquals(0, report.getFatalErrorCount(), () -> report.getMessages().toString());
+      assertEquals(0, report.getErrorCount(), () -> report.getMessages().toString());
+      assertEquals(report.getWarningCount(), report.getMessages().size());
+
+      // the built-in template has Copyright.xhtml, but not in content.opf
+      ValidationMessage message = report.getMessages().stream()
+          .filter(m -> "OPF-003".equals(m.getId()))
+          .findFirst()
+          .orElseThrow(() -> new AssertionError(report.getMessages()));
+      assertEquals("WARNING", message.getSeverity());
+      assertTrue(message.getPath().endsWith(".epub"), message.getPath());
+      assertTrue(message.getMessage().contains("Copyright.xhtml"), message.getMessage());
+    }
+  }
+
+  @Test
+  void validateAfterMake(@TempDir Path tempDir) throws IOException {
+    BookInfo book = newBook(tempDir, "validated", true);
+    book.setValidate(true);
+
+    List<ValidationReport> notified = new CopyOnWriteArrayList<>();
+    BuildReport report = new MakeEpubFromTemplate(book)
+        .setValidator(validator)
+        .addListener(new BuildListener() {
+          @Override
+          public void validationFinished(BookInfo bookInfo, ValidationReport validation) {
+            notified.add(validation);
+          }
+        })
+        .make();
+
+    ValidationReport validation = report.getValidation().join();
+    assertEquals(List.of(validation), notified);
+    assertEquals(report.getEpubPath(), validation.getEpubPath());
+    assertFalse(validation.hasErrors(), () -> validation.getMessages().toString());
+  }
+
+  @Test
+  void noValidationByDefault(@TempDir Path tempDir) throws IOException {
+    BuildReport report = makeBook(tempDir, "unvalidated", false);
+    assertNull(report.getValidation());
+  }
+
+  private static BuildReport makeBook(Path tempDir, String title, boolean directZip) throws IOException {
+    return new MakeEpubFromTemplate(newBook(tempDir, title, directZip)).make();
+  }
+
+  private static BookInfo newBook(Path tempDir, String title, boolean directZip) throws IOException {
+    BookInfo book = new BookInfo();
+    book.setSrcTxtPath(Files.writeString(tempDir.resolve(title + ".txt"), """
+        前言
+
+        第一章 开始
+        第一段
+        第二章 结束
+        第二段
+        """));
+    book.setOutputDir(tempDir.resolve("out"));
+    book.setBookTitle(title);
+    book.setLanguage("zh");
+    book.setCreateDate("2022-01-01");
+    book.setTempFolder("epub-" + title);
+    book.setDirectZip(directZip);
+    return book;
+  }
+}
@@ -3,14 +3,35 @@ package com.quanqinle.epub;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.dataformat.yaml.YAMLMapper;
 import com.quanqinle.epub.entity.BookInfo;
+import com.quanqinle.epub.entity.BuildReport;
+import com.quanqinle.epub.entity.StageReport;
+import com.quanqinle.epub.metrics.BuildListener;
+import com.quanqinle.epub.metrics.BuildStage;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
 
 /**
  * @author quanqinle
@@ -66,4 +87,127 @@ class MakeEpubFromTemplateTest {
     }
   }
 
+  @ParameterizedTest
+  @ValueSource(booleans = {false, true})
+  void makeReport(boolean directZip, @TempDir Path tempDir) throws IOException {
+    BookInfo book = new BookInfo();
+    book.setSrcTxtPath(Files.writeString(tempDir.resolve("book.txt"), """
+        前言
+
+        第一章 开始
+        第一段
+        第二章 结束
+        第二段
+        """));
+    book.setOutputDir(tempDir.resolve("out"));
+    book.setBookTitle("report");
+    book.setDirectZip(directZip);
+
+    List<BuildStage> started = new ArrayList<>();
+    List<StageReport> finished = new ArrayList<>();
+    List<BuildReport> reports = new ArrayList<>();
+    BuildReport report = new MakeEpubFromTemplate(book)
+        .addListener(new BuildListener() {
+          @Override
+          public void stageStarted(BookInfo bookInfo, BuildStage stage) {
+            started.add(stage);
+          }
+
+          @Override
+          public void stageFinished(BookInfo bookInfo, StageReport stageReport) {
+            finished.add(stageReport);
+          }
+
+          @Override
+          public void buildFinished(BuildReport buildReport) {
+            reports.add(buildReport);
+          }
+        })
+        .make();
+
+    assertEquals(List.of(report), reports);
+    assertEquals(report.getStages(), finished);
+    assertEquals(started, finished.stream().map(StageReport::getStage).toList());
+    assertEquals(directZip ? BuildStage.GEN_BODY_HTMLS : BuildStage.COPY_TEMPLATE, started.get(0));
+    assertEquals(BuildStage.ZIP_EPUB, started.get(started.size() - 1));
+    assertNotNull(report.getStage(BuildStage.MAKE_NAVIGATION));
+
+    assertEquals(6, report.getLinesRead());
+    // front matter and 2 chapters
+    assertEquals(3, report.getChapters());
+    assertEquals(Files.size(report.getEpubPath()), report.getCompressedSize());
+    assertTrue(report.getEntries() > report.getChapters());
+    assertTrue(report.getBytesWritten() > report.getCompressedSize());
+    assertTrue(report.getNanos() >= report.getStages().stream().mapToLong(StageReport::getNanos).sum());
+  }
+
+  @Test
+  void deletePartialEpubOnFailure(@TempDir Path tempDir) throws IOException {
+    BookInfo book = new BookInfo();
+    book.setSrcTxtPath(Files.writeString(tempDir.resolve("book.txt"), """
+        第一章 开始
+        第一段
+        """));
+    book.setOutputDir(tempDir.resolve("out"));
+    book.setBookTitle("failure");
+    book.setDirectZip(true);
+    // a folder, so reading the cover fails after the chapters are written
+    book.setCoverJpgFullPath(Files.createDirectory(tempDir.resolve("cover.jpg")));
+    MakeEpubFromTemplate makeEpub = new MakeEpubFromTemplate(book);
+
+    assertThrows(IOException.class, makeEpub::make);
+    assertFalse(Files.exists(makeEpub.getEpubPath()));
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    assertThrows(IOException.class, () -> makeEpub.make(
+        new ByteArrayInputStream("第一章 开始\n第一段\n".getBytes(StandardCharsets.UTF_8)), out));
+    // the chapters are written, but not the central directory
+    assertTrue(out.size() > 0);
+    Path partial = Files.write(tempDir.resolve("partial.epub"), out.toByteArray());
+    assertThrows(IOException.class, () -> new ZipFile(partial.toFile()).close());
+  }
+
+  @Test
+  void makeFromStreamToStream(@TempDir Path tempDir) throws IOException {
+    String text = """
+        前言
+        第一章 开始
+        第一段
+        第二章 结束
+        第二段
+        """;
+    BookInfo book = new BookInfo();
+    book.setSrcTxtPath(Files.writeString(tempDir.resolve("book.txt"), text));
+    book.setOutputDir(tempDir.resolve("out"));
+    book.setBookTitle("stream");
+    book.setDirectZip(true);
+    MakeEpubFromTemplate makeEpub = new MakeEpubFromTemplate(book);
+    BuildReport fileReport = makeEpub.make();
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    BuildReport report = makeEpub.make(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)), out);
+
+    assertNull(report.getEpubPath());
+    assertEquals(out.size(), report.getCompressedSize());
+    assertEquals(fileReport.getEntries(), report.getEntries());
+    assertEquals(fileReport.getBytesWritten(), report.getBytesWritten());
+    assertEquals(fileReport.getChapters(), report.getChapters());
+
+    Map<String, byte[]> expected = new LinkedHashMap<>();
+    try (ZipFile zip = new ZipFile(fileReport.getEpubPath().toFile())) {
+      for (ZipEntry entry : Collections.list(zip.entries())) {
+        expected.put(entry.getName(), zip.getInputStream(entry).readAllBytes());
+      }
+    }
+    try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+      for (String name : expected.keySet()) {
+        ZipEntry entry = zip.getNextEntry();
+        assertNotNull(entry, name);
+        assertEquals(name, entry.getName());
+        assertArrayEquals(expected.get(name), zip.readAllBytes(), name);
+      }
+      assertNull(zip.getNextEntry());
+    }
+  }
+
 }
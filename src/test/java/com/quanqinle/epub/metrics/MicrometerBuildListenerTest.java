@@ -0,0 +1,46 @@
+package com.quanqinle.epub.metrics;
+
+import com.quanqinle.epub.entity.BookInfo;
+import com.quanqinle.epub.entity.BuildReport;
+import com.quanqinle.epub.entity.StageReport;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MicrometerBuildListenerTest {
+
+  @Test
+  void record() {
+    SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    MicrometerBuildListener listener = new MicrometerBuildListener(registry);
+    BookInfo book = new BookInfo();
+
+    StageReport parse = new StageReport(BuildStage.GEN_BODY_HTMLS, 3_000_000, -1);
+    StageReport zip = new StageReport(BuildStage.ZIP_EPUB, 1_000_000, -1);
+    listener.stageFinished(book, parse);
+    listener.stageFinished(book, zip);
+
+    BuildReport report = new BuildReport("book", Path.of("book.epub"));
+    report.getStages().add(parse);
+    report.getStages().add(zip);
+    report.setNanos(5_000_000);
+    report.setLinesRead(1000);
+    report.setChapters(10);
+    report.setBytesWritten(2000);
+    report.setCompressedSize(800);
+    listener.buildFinished(report);
+
+    assertEquals(3, registry.get("makeepub.stage").tag("stage", "GEN_BODY_HTMLS").timer()
+        .totalTime(TimeUnit.MILLISECONDS));
+    assertEquals(5, registry.get("makeepub.build").timer().totalTime(TimeUnit.MILLISECONDS));
+    assertEquals(1000, registry.get("makeepub.lines").summary().totalAmount());
+    assertEquals(10, registry.get("makeepub.chapters").summary().totalAmount());
+    assertEquals(800, registry.get("makeepub.epub.size").summary().totalAmount());
+    // allocation is not available
+    assertNull(registry.find("makeepub.allocated").summary());
+  }
+}
@@ -0,0 +1,96 @@
+package com.quanqinle.epub.server;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConversionServerTest {
+  private static ConversionServer server;
+  private static ConversionClient client;
+
+  @TempDir
+  Path tempDir;
+
+  @BeforeAll
+  static void setUp() throws IOException {
+    server = new ConversionServer(0, 2, 4);
+    server.start();
+    client = new ConversionClient(URI.create("http://127.0.0.1:" + server.getAddress().getPort()));
+  }
+
+  @AfterAll
+  static void tearDown() {
+    server.close();
+  }
+
+  @Test
+  void convert() throws IOException, InterruptedException {
+    Path txt = Files.writeString(tempDir.resolve("source.txt"), """
+        前言
+        第一章 开始
+        第一段
+        第二章 结束
+        第二段
+        """);
+    Path yaml = Files.writeString(tempDir.resolve("book.yaml"), """
+        srcTxtPath: "missing.txt"
+        outputDir: "out"
+        bookTitle: "served"
+        directZip: true
+        """);
+
+    HttpResponse<String> response = client.convert(yaml, txt);
+
+    assertEquals(200, response.statusCode(), response.body());
+    JsonNode result = new ObjectMapper().readTree(response.body());
+    assertEquals(tempDir.resolve("out/served.epub").toString(), result.get("epubPath").asText());
+    assertEquals(3, result.get("chapters").asInt());
+    assertTrue(result.get("stages").has("GEN_BODY_HTMLS"), response.body());
+    assertTrue(Files.exists(tempDir.resolve("out/served.epub")));
+
+    JsonNode health = new ObjectMapper().readTree(client.health().body());
+    assertEquals(2, health.get("workers").asInt());
+  }
+
+  @Test
+  void deleteTempFolder() throws IOException, InterruptedException {
+    Path txt = Files.writeString(tempDir.resolve("source.txt"), """
+        第一章 开始
+        第一段
+        """);
+    Path yaml = Files.writeString(tempDir.resolve("book.yaml"), """
+        srcTxtPath: "missing.txt"
+        outputDir: "out"
+        bookTitle: "in-folder"
+        """);
+
+    HttpResponse<String> response = client.convert(yaml, txt);
+
+    assertEquals(200, response.statusCode(), response.body());
+    try (Stream<Path> files = Files.list(tempDir.resolve("out"))) {
+      assertEquals(List.of(tempDir.resolve("out/in-folder.epub")), files.toList());
+    }
+  }
+
+  @Test
+  void badBookInfo() throws IOException, InterruptedException {
+    Path yaml = Files.writeString(tempDir.resolve("bad.yaml"), "bookTitle: [unclosed\n");
+
+    HttpResponse<String> response = client.convert(yaml, null);
+
+    assertEquals(400, response.statusCode(), response.body());
+  }
+}
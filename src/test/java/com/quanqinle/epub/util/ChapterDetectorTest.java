@@ -0,0 +1,98 @@
+package com.quanqinle.epub.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChapterDetectorTest {
+
+  @Test
+  void detectChineseNumbering() {
+    List<String> lines = new ArrayList<>(List.of("简介", ""));
+    for (int i = 1; i <= 5; i++) {
+      lines.addAll(List.of("第" + i + "章", "", "他走进了房间，看了看窗外。", "天色已晚。", ""));
+    }
+    lines.addAll(List.of("尾声", "", "完。"));
+
+    ChapterDetector.Detection detection = ChapterDetector.detect(lines);
+
+    assertNotNull(detection);
+    assertEquals(5, detection.getMatches());
+    TitleMatcher matcher = new TitleMatcher(detection.getRegexList());
+    assertTrue(matcher.matches("第3章"));
+    assertTrue(matcher.matches("第十二章 重逢"));
+    assertTrue(matcher.matches("尾声"));
+    assertFalse(matcher.matches("他走进了房间，看了看窗外。"));
+    assertFalse(matcher.matches("简介"));
+  }
+
+  @Test
+  void detectLatinChapters() {
+    List<String> lines = new ArrayList<>(List.of("Prologue", "", "It was a dark night.", ""));
+    for (String number : List.of("One", "Two", "Three", "Four")) {
+      lines.addAll(List.of("Chapter " + number, "", "She opened the door.", "Nobody was there.", ""));
+    }
+
+    ChapterDetector.Detection detection = ChapterDetector.detect(lines);
+
+    assertNotNull(detection);
+    TitleMatcher matcher = new TitleMatcher(detection.getRegexList());
+    assertTrue(matcher.matches("CHAPTER 12: The End"));
+    assertTrue(matcher.matches("Prologue"));
+    assertFalse(matcher.matches("She opened the door."));
+  }
+
+  @Test
+  void preferChaptersToPronounI() {
+    List<String> lines = new ArrayList<>();
+    for (int i = 1; i <= 10; i++) {
+      lines.addAll(List.of("Chapter " + i, "", "I opened the door.", "", "I saw nobody.", "",
+          "She was gone.", "", "I waited.", "", "I left.", ""));
+    }
+
+    ChapterDetector.Detection detection = ChapterDetector.detect(lines);
+
+    assertNotNull(detection);
+    assertEquals(10, detection.getMatches());
+    TitleMatcher matcher = new TitleMatcher(detection.getRegexList());
+    assertTrue(matcher.matches("Chapter 3"));
+    assertFalse(matcher.matches("I opened the door."));
+    assertFalse(matcher.matches("I waited."));
+  }
+
+  @Test
+  void detectRomanNumerals() {
+    List<String> lines = new ArrayList<>();
+    for (String number : List.of("I", "II", "III", "IV")) {
+      lines.addAll(List.of(number + ".", "", "I was alone that night.", "The rain kept falling.", ""));
+    }
+
+    ChapterDetector.Detection detection = ChapterDetector.detect(lines);
+
+    assertNotNull(detection);
+    assertEquals(4, detection.getMatches());
+    TitleMatcher matcher = new TitleMatcher(detection.getRegexList());
+    assertTrue(matcher.matches("XII"));
+    assertTrue(matcher.matches("IX: The Storm"));
+    assertFalse(matcher.matches("I was alone that night."));
+  }
+
+  @Test
+  void rejectParagraphs() {
+    List<String> prose = new ArrayList<>();
+    for (int i = 1; i <= 20; i++) {
+      prose.add("这是没有章节标题的一段正文。");
+    }
+    assertNull(ChapterDetector.detect(prose));
+
+    // a numbered list is too dense to be chapter titles
+    List<String> list = new ArrayList<>();
+    for (int i = 1; i <= 20; i++) {
+      list.add(i + ". 第" + i + "项");
+    }
+    assertNull(ChapterDetector.detect(list));
+  }
+}
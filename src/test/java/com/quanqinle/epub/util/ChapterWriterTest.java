@@ -0,0 +1,88 @@
+package com.quanqinle.epub.util;
+
+import com.quanqinle.epub.entity.ChapterBody;
+import com.quanqinle.epub.entity.FileInfo;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChapterWriterTest {
+
+  @TempDir
+  Path tempDir;
+
+  @Test
+  void writeInParallel() throws IOException {
+    List<FileInfo> files = new ArrayList<>();
+    try (ChapterWriter writer = new ChapterWriter(new FolderEpubSink(tempDir), 4)) {
+      for (int i = 1; i <= 50; i++) {
+        FileInfo fileInfo = new FileInfo(String.format("chapter-%03d", i), "第" + i + "章",
+                List.of("<h1>第" + i + "章</h1>", "<p>内容" + i + "</p>"));
+        fileInfo.setFullPath(tempDir.resolve(ChapterWriter.TEXT_FOLDER).resolve(fileInfo.getFullName()));
+        files.add(fileInfo);
+        writer.submit(fileInfo, true);
+      }
+      writer.await();
+    }
+
+    for (FileInfo fileInfo : files) {
+      assertNull(fileInfo.getLines());
+      assertTrue(Files.readString(fileInfo.getFullPath()).contains("<title>" + fileInfo.getDescribe() + "</title>"));
+    }
+  }
+
+  @Test
+  void releaseBodyWhenRendered() throws IOException {
+    FileInfo fileInfo = new FileInfo("chapter-001", "第1章",
+        new ChapterBody(null).addMarkup("<h1>第1章</h1>").addMarkup("<p>内容</p>"));
+
+    try (ChapterWriter writer = new ChapterWriter(new FolderEpubSink(tempDir), 2)) {
+      writer.submit(fileInfo, true);
+      writer.await();
+    }
+
+    assertNull(fileInfo.getBody());
+    assertEquals("第1章", fileInfo.getDescribe());
+    assertTrue(Files.readString(tempDir.resolve(ChapterWriter.TEXT_FOLDER).resolve("chapter-001.xhtml"))
+        .contains("<p>内容</p>"));
+  }
+
+  @Test
+  void throwFirstError() throws IOException {
+    FileInfo fileInfo = new FileInfo("chapter-001", "第1章", List.of("<p>内容</p>"));
+    // a file blocks creating the folder
+    Files.writeString(tempDir.resolve("OEBPS"), "");
+
+    try (ChapterWriter writer = new ChapterWriter(new FolderEpubSink(tempDir), 2)) {
+      writer.submit(fileInfo, false);
+      assertThrows(IOException.class, writer::await);
+    }
+  }
+
+  @Test
+  void throwRuntimeError() {
+    EpubSink sink = new EpubSink() {
+      @Override
+      public void write(String entryName, byte[] content) {
+        throw new IllegalStateException("fail to write " + entryName);
+      }
+
+      @Override
+      public void close() {}
+    };
+    FileInfo fileInfo = new FileInfo("chapter-001", "第1章", List.of("<p>内容</p>"));
+
+    try (ChapterWriter writer = new ChapterWriter(sink, 2)) {
+      writer.submit(fileInfo, false);
+      IOException e = assertThrows(IOException.class, writer::await);
+      assertInstanceOf(IllegalStateException.class, e.getCause());
+    }
+  }
+}
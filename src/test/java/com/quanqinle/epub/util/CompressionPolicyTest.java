@@ -0,0 +1,48 @@
+package com.quanqinle.epub.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompressionPolicyTest {
+
+  @Test
+  void defaultPolicy() {
+    CompressionPolicy policy = CompressionPolicy.defaultPolicy();
+
+    assertEquals(CompressionPolicy.STORE, policy.levelOf("mimetype"));
+    assertEquals(CompressionPolicy.STORE, policy.levelOf("OEBPS/Images/cover.jpg"));
+    assertEquals(CompressionPolicy.STORE, policy.levelOf("OEBPS/Images/Map.PNG"));
+    assertEquals(Deflater.DEFAULT_COMPRESSION, policy.levelOf("OEBPS/Text/chapter-001.xhtml"));
+    assertEquals(Deflater.DEFAULT_COMPRESSION, policy.levelOf("OEBPS/Fonts.d/font"));
+  }
+
+  @Test
+  void withLevels() {
+    CompressionPolicy policy = CompressionPolicy.defaultPolicy().withLevels(Map.of("XHTML", 9, "ttf", 0));
+
+    assertEquals(9, policy.levelOf("OEBPS/Text/chapter-001.xhtml"));
+    assertEquals(CompressionPolicy.STORE, policy.levelOf("OEBPS/Fonts/kai.ttf"));
+    assertEquals(CompressionPolicy.STORE, policy.levelOf("OEBPS/Images/cover.jpg"));
+    assertThrows(IllegalArgumentException.class, () -> policy.withLevels(Map.of("css", 10)));
+  }
+
+  @Test
+  void compress() {
+    byte[] content = "<p>一些正文内容</p>".repeat(100).getBytes();
+    CompressionPolicy policy = CompressionPolicy.defaultPolicy();
+
+    CompressedEntry jpg = policy.compress("cover.jpg", content);
+    assertEquals(ZipEntry.STORED, jpg.getMethod());
+    assertSame(content, jpg.getData());
+
+    CompressedEntry xhtml = policy.compress("chapter.xhtml", content);
+    assertEquals(ZipEntry.DEFLATED, xhtml.getMethod());
+    assertEquals(content.length, xhtml.getSize());
+    assertTrue(xhtml.getData().length < content.length);
+  }
+}
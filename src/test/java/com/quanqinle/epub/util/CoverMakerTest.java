@@ -0,0 +1,125 @@
+package com.quanqinle.epub.util;
+
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CoverMakerTest {
+
+  @Test
+  void downscaleLargeCover() throws IOException {
+    CoverMaker maker = new CoverMaker(4);
+    byte[] png = image(3000, 2000, "png");
+
+    byte[] jpg = maker.optimize(png, 1600, 0.85f);
+
+    BufferedImage result = read(jpg);
+    assertEquals(1600, result.getWidth());
+    assertEquals(1067, result.getHeight());
+    assertEquals((byte) 0xD8, jpg[1]);
+
+    // made once
+    assertSame(jpg, maker.optimize(png, 1600, 0.85f));
+    assertEquals(1, maker.getHits());
+    assertNotSame(jpg, maker.optimize(png, 800, 0.85f));
+  }
+
+  @Test
+  void keepSmallJpeg() throws IOException {
+    byte[] jpg = image(400, 600, "jpg");
+
+    assertSame(jpg, new CoverMaker(4).optimize(jpg, 1600, 0.85f));
+    assertSame(jpg, new CoverMaker(4).optimize(jpg, 0, 0.85f));
+  }
+
+  @Test
+  void keepUnreadableCover() throws IOException {
+    byte[] notImage = "not an image".getBytes();
+
+    assertSame(notImage, new CoverMaker(4).optimize(notImage, 1600, 0.85f));
+  }
+
+  @Test
+  void applyExifOrientation() throws IOException {
+    byte[] jpg = image(2000, 1000, "jpg");
+    // APP1 with the orientation 6, i.e. rotate 90° clockwise, inserted after SOI
+    byte[] exif = {
+      (byte) 0xFF, (byte) 0xE1, 0, 34,
+      'E', 'x', 'i', 'f', 0, 0,
+      'M', 'M', 0, 42, 0, 0, 0, 8,
+      0, 1,
+      0x01, 0x12, 0, 3, 0, 0, 0, 1, 0, 6, 0, 0,
+      0, 0, 0, 0
+    };
+    byte[] rotated = new byte[jpg.length + exif.length];
+    System.arraycopy(jpg, 0, rotated, 0, 2);
+    System.arraycopy(exif, 0, rotated, 2, exif.length);
+    System.arraycopy(jpg, 2, rotated, 2 + exif.length, jpg.length - 2);
+    assertEquals(6, CoverMaker.exifOrientation(rotated));
+    assertEquals(1, CoverMaker.exifOrientation(jpg));
+
+    BufferedImage result = read(new CoverMaker(4).optimize(rotated, 1000, 0.85f));
+
+    assertEquals(500, result.getWidth());
+    assertEquals(1000, result.getHeight());
+  }
+
+  @Test
+  void ignoreCorruptExif() throws IOException {
+    byte[] jpg = image(200, 100, "jpg");
+    // APP1 whose IFD offset is negative
+    byte[] exif = {
+      (byte) 0xFF, (byte) 0xE1, 0, 34,
+      'E', 'x', 'i', 'f', 0, 0,
+      'M', 'M', 0, 42, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xF0,
+      0, 1,
+      0x01, 0x12, 0, 3, 0, 0, 0, 1, 0, 6, 0, 0,
+      0, 0, 0, 0
+    };
+    byte[] corrupt = new byte[jpg.length + exif.length];
+    System.arraycopy(jpg, 0, corrupt, 0, 2);
+    System.arraycopy(exif, 0, corrupt, 2, exif.length);
+    System.arraycopy(jpg, 2, corrupt, 2 + exif.length, jpg.length - 2);
+
+    assertEquals(1, CoverMaker.exifOrientation(corrupt));
+    // the APP1 is cut off before the IFD offset
+    assertEquals(1, CoverMaker.exifOrientation(Arrays.copyOf(corrupt, 18)));
+  }
+
+  @Test
+  void generateCover() throws IOException {
+    CoverMaker maker = new CoverMaker(4);
+
+    byte[] jpg = maker.generate("A Very Long Title Which Is Wrapped Into Lines", "Author", 900, 0.85f);
+
+    assertNotNull(jpg);
+    BufferedImage result = read(jpg);
+    assertEquals(600, result.getWidth());
+    assertEquals(900, result.getHeight());
+    assertSame(jpg, maker.generate("A Very Long Title Which Is Wrapped Into Lines", "Author", 900, 0.85f));
+  }
+
+  private static byte[] image(int width, int height, String format) throws IOException {
+    BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    Graphics2D g = image.createGraphics();
+    g.setColor(Color.ORANGE);
+    g.fillRect(0, 0, width / 2, height);
+    g.dispose();
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ImageIO.write(image, format, bytes);
+    return bytes.toByteArray();
+  }
+
+  private static BufferedImage read(byte[] image) throws IOException {
+    return ImageIO.read(new ByteArrayInputStream(image));
+  }
+}
@@ -0,0 +1,83 @@
+package com.quanqinle.epub.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EpubTemplateTest {
+
+  @Test
+  void builtIn() throws IOException {
+    EpubTemplate template = EpubTemplate.builtIn();
+
+    assertSame(template, EpubTemplate.builtIn());
+    assertTrue(template.getEntryNames().containsAll(Set.of(
+        "mimetype", "META-INF/container.xml", "OEBPS/content.opf", "OEBPS/Images/cover.jpg")));
+    assertTrue(template.getText("OEBPS/toc.ncx").getSlotNames().contains("navPoint LIST"));
+    assertSame(template.getText("OEBPS/toc.ncx"), template.getText("OEBPS/toc.ncx"));
+    assertThrows(NoSuchFileException.class, () -> template.getBytes("OEBPS/missing.xhtml"));
+  }
+
+  @Test
+  void reloadWhenChanged(@TempDir Path tempDir) throws IOException {
+    Path cover = tempDir.resolve("OEBPS/Text/cover.xhtml");
+    Files.createDirectories(cover.getParent());
+    Files.writeString(cover, "[BOOK'S TITLE]");
+    EpubTemplate template = EpubTemplate.of(tempDir);
+    assertSame(template, EpubTemplate.of(tempDir.resolve(".")));
+
+    Files.writeString(cover, "<h1>[BOOK'S TITLE]</h1>");
+    Files.setLastModifiedTime(cover, FileTime.fromMillis(Files.getLastModifiedTime(cover).toMillis() + 2000));
+    EpubTemplate changed = EpubTemplate.of(tempDir);
+    assertNotSame(template, changed);
+    assertEquals("<h1>t</h1>", changed.getText("OEBPS/Text/cover.xhtml").fill(Map.of("BOOK'S TITLE", "t")));
+
+    Files.writeString(tempDir.resolve("mimetype"), "application/epub+zip");
+    EpubTemplate added = EpubTemplate.of(tempDir);
+    assertNotSame(changed, added);
+    assertEquals(List.of("OEBPS/Text/cover.xhtml", "mimetype"), List.copyOf(added.getEntryNames()));
+  }
+
+  @Test
+  void skipHiddenFilesAndLinks(@TempDir Path tempDir) throws IOException {
+    Path cover = Files.createDirectories(tempDir.resolve("OEBPS/Text")).resolve("cover.xhtml");
+    Files.writeString(cover, "[BOOK'S TITLE]");
+    Files.writeString(tempDir.resolve("OEBPS/.DS_Store"), "");
+    Files.createSymbolicLink(tempDir.resolve("OEBPS/Text/link.xhtml"), cover);
+
+    assertEquals(Set.of("OEBPS/Text/cover.xhtml"), EpubTemplate.of(tempDir).getEntryNames());
+  }
+
+  @Test
+  void readFromJar(@TempDir Path tempDir) throws IOException {
+    Path jar = tempDir.resolve("template.jar");
+    try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(jar))) {
+      put(zip, "template/mimetype", "application/epub+zip");
+      put(zip, "template/OEBPS/Text/cover.xhtml", "[BOOK'S TITLE]");
+    }
+
+    EpubTemplate template = EpubTemplate.ofResource(new URL("jar:" + jar.toUri() + "!/template"));
+    assertEquals(Set.of("mimetype", "OEBPS/Text/cover.xhtml"), template.getEntryNames());
+    assertEquals("application/epub+zip", new String(template.getBytes("mimetype"), StandardCharsets.US_ASCII));
+  }
+
+  private static void put(ZipOutputStream zip, String name, String content) throws IOException {
+    zip.putNextEntry(new ZipEntry(name));
+    zip.write(content.getBytes(StandardCharsets.UTF_8));
+    zip.closeEntry();
+  }
+}
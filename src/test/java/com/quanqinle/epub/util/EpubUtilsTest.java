@@ -1,9 +1,21 @@
 package com.quanqinle.epub.util;
 
+import com.quanqinle.epub.entity.ChapterBody;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
 import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class EpubUtilsTest {
@@ -20,6 +32,64 @@ class EpubUtilsTest {
     }
   }
 
+  @Test
+  void zipEpubInParallel(@TempDir Path tempDir) throws IOException {
+    Path folder = tempDir.resolve("book");
+    Files.createDirectories(folder.resolve("OEBPS/Text"));
+    Files.createDirectories(folder.resolve("OEBPS/Images"));
+    Files.writeString(folder.resolve("mimetype"), EpubUtils.MIMETYPE_FILE_CONTENT);
+    Files.write(folder.resolve("OEBPS/Images/cover.jpg"), new byte[] {(byte) 0xFF, (byte) 0xD8, 1, 2, 3});
+    for (int i = 1; i <= 50; i++) {
+      Files.writeString(folder.resolve("OEBPS/Text/chapter-%03d.xhtml".formatted(i)), "<p>第" + i + "章</p>".repeat(i * 10));
+    }
+
+    Path sequential = tempDir.resolve("sequential.epub");
+    Path parallel = tempDir.resolve("parallel.epub");
+    EpubUtils.zipEpub(folder, sequential);
+    EpubUtils.zipEpub(folder, parallel, CompressionPolicy.defaultPolicy(), 4);
+
+    try (ZipFile expected = new ZipFile(sequential.toFile()); ZipFile actual = new ZipFile(parallel.toFile())) {
+      List<? extends ZipEntry> entries = Collections.list(actual.entries());
+      assertEquals(52, entries.size());
+      assertEquals(EpubUtils.MIMETYPE_FILE_NAME, entries.get(0).getName());
+      assertEquals(ZipEntry.STORED, entries.get(0).getMethod());
+      assertEquals(ZipEntry.STORED, actual.getEntry("OEBPS/Images/cover.jpg").getMethod());
+
+      List<String> expectedNames = new ArrayList<>();
+      expected.stream().forEach(entry -> expectedNames.add(entry.getName()));
+      assertEquals(expectedNames, entries.stream().map(ZipEntry::getName).toList());
+      for (ZipEntry entry : entries) {
+        assertArrayEquals(expected.getInputStream(expected.getEntry(entry.getName())).readAllBytes(),
+            actual.getInputStream(entry).readAllBytes(), entry.getName());
+      }
+    }
+  }
+
+  @Test
+  void renderChapterBody(@TempDir Path tempDir) throws IOException {
+    Path txt = Files.writeString(tempDir.resolve("book.txt"), "第1章\n　　内容 & <b>\n");
+    try (SourceReader source = SourceReader.open(txt, null)) {
+      ChapterBody body = new ChapterBody(source);
+      for (SourceLine line : source.lines()) {
+        if (line.toString().startsWith("第")) {
+          body.addMarkup("<h1>" + line + "</h1>");
+        } else {
+          body.addParagraph(line.getStart(), line.getEnd());
+        }
+      }
+      body.addMarkup("<p>结束</p>");
+
+      byte[] expected = EpubUtils.renderHtml("第1章", List.of("<h1>第1章</h1>", "<p>　　内容 & <b></p>", "<p>结束</p>"));
+      assertArrayEquals(expected, EpubUtils.renderHtml("第1章", body));
+
+      Path html = tempDir.resolve("chapter.xhtml");
+      try (FileChannel channel = FileChannel.open(html, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+        EpubUtils.writeHtml("第1章", body, channel);
+      }
+      assertArrayEquals(expected, Files.readAllBytes(html));
+    }
+  }
+
   @Test
   void validateEpubFile() {
     Path epubFilePath = Paths.get("D:", "my-book.epub");
@@ -0,0 +1,57 @@
+package com.quanqinle.epub.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MultiReplacerTest {
+
+  @Test
+  void replace() {
+    MultiReplacer replacer = new MultiReplacer(Map.of("　", "", "广告", "", "，", ","));
+
+    assertEquals("第一章,开始", replacer.replace("　第一章，广告开始"));
+    assertEquals("no match", replacer.replace("no match"));
+  }
+
+  @Test
+  void replaceAndTrim() {
+    MultiReplacer replacer = new MultiReplacer(Map.of("　", " "));
+
+    assertEquals("段落", replacer.replaceAndTrim("　　段落　"));
+    assertEquals("段落", replacer.replaceAndTrim("  段落  "));
+    assertEquals("", replacer.replaceAndTrim("　　"));
+  }
+
+  @Test
+  void longestMatchAtLeftmostPosition() {
+    Map<String, String> replaceMap = new LinkedHashMap<>();
+    replaceMap.put("ab", "1");
+    replaceMap.put("abc", "2");
+    replaceMap.put("bcd", "3");
+    MultiReplacer replacer = new MultiReplacer(replaceMap);
+
+    assertEquals("2d", replacer.replace("abcd"));
+    assertEquals("x1x", replacer.replace("xabx"));
+  }
+
+  @Test
+  void replacedTextIsNotScannedAgain() {
+    Map<String, String> replaceMap = new LinkedHashMap<>();
+    replaceMap.put("a", "b");
+    replaceMap.put("b", "c");
+    MultiReplacer replacer = new MultiReplacer(replaceMap);
+
+    assertEquals("bc", replacer.replace("ab"));
+  }
+
+  @Test
+  void emptyMap() {
+    assertTrue(new MultiReplacer(null).isEmpty());
+    assertTrue(new MultiReplacer(Map.of("", "x")).isEmpty());
+    assertEquals("abc", new MultiReplacer(null).replaceAndTrim(" abc "));
+  }
+}
@@ -0,0 +1,140 @@
+package com.quanqinle.epub.util;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NavigationBuilderTest {
+
+  /** the formats used with String.format before NavigationBuilder */
+  private static final String FORMAT_NAV_POINT =
+      """
+      <navPoint id="navPoint-%s" playOrder="%s">
+        <navLabel><text>%s</text></navLabel>
+        <content src="Text/%s"/>
+      </navPoint>
+      """;
+  private static final String FORMAT_ITEM =
+      "<item href='Text/%s' id='%s' media-type='application/xhtml+xml' />\n";
+  private static final String FORMAT_ITEMREF = "<itemref idref='%s' />\n";
+  private static final String FORMAT_REFERENCE =
+      "<reference type='%s' href='Text/%s' title='%s'/>\n";
+  private static final String FORMAT_TOC_ITEM = "<p><a href='../Text/%s'>%s</a></p>\n";
+
+  @Test
+  void addFile() {
+    NavigationBuilder navigation = new NavigationBuilder(2)
+        .addTemplateFile("cover", "cover.xhtml", "封面")
+        .addFile("chapter-001", "chapter-001.xhtml", "第一章");
+
+    assertEquals(
+        String.format(FORMAT_NAV_POINT, 1, 1, "封面", "cover.xhtml")
+            + String.format(FORMAT_NAV_POINT, 2, 2, "第一章", "chapter-001.xhtml"),
+        navigation.getNavPoints());
+    assertEquals(String.format(FORMAT_ITEM, "chapter-001.xhtml", "chapter-001"), navigation.getItems());
+    assertEquals(String.format(FORMAT_ITEMREF, "chapter-001"), navigation.getItemrefs());
+    assertEquals(
+        String.format(FORMAT_REFERENCE, "cover", "cover.xhtml", "封面")
+            + String.format(FORMAT_REFERENCE, "text", "chapter-001.xhtml", "第一章"),
+        navigation.getReferences());
+    assertEquals(
+        String.format(FORMAT_TOC_ITEM, "cover.xhtml", "封面")
+            + String.format(FORMAT_TOC_ITEM, "chapter-001.xhtml", "第一章"),
+        navigation.getTocItems());
+  }
+
+  @Test
+  void nestedNavPoint() {
+    NavigationBuilder navigation = new NavigationBuilder(2)
+        .addFileAndOpenNavPoint("book-1", "book-1.xhtml", "第一卷")
+        .addFile("book-1_chapter-001", "book-1_chapter-001.xhtml", "第一章")
+        .closeNavPoint();
+
+    assertEquals(
+        String.format(FORMAT_NAV_POINT, 1, 1, "第一卷", "book-1.xhtml").split("</navPoint>")[0]
+            + String.format(FORMAT_NAV_POINT, 2, 2, "第一章", "book-1_chapter-001.xhtml")
+            + "</navPoint>\n",
+        navigation.getNavPoints());
+  }
+
+  @Test
+  void addPart() {
+    NavigationBuilder navigation = new NavigationBuilder(2)
+        .addFile("chapter-001", "chapter-001.xhtml", "第一章")
+        .addPart("chapter-001-part2", "chapter-001-part2.xhtml");
+
+    assertEquals(String.format(FORMAT_NAV_POINT, 1, 1, "第一章", "chapter-001.xhtml"), navigation.getNavPoints());
+    assertEquals(
+        String.format(FORMAT_ITEM, "chapter-001.xhtml", "chapter-001")
+            + String.format(FORMAT_ITEM, "chapter-001-part2.xhtml", "chapter-001-part2"),
+        navigation.getItems());
+    assertEquals(
+        String.format(FORMAT_ITEMREF, "chapter-001") + String.format(FORMAT_ITEMREF, "chapter-001-part2"),
+        navigation.getItemrefs());
+    assertEquals(String.format(FORMAT_TOC_ITEM, "chapter-001.xhtml", "第一章"), navigation.getTocItems());
+  }
+
+  @Test
+  void escapeTitle() {
+    NavigationBuilder navigation = new NavigationBuilder(1)
+        .addFile("chapter-001", "chapter-001.xhtml", "Tom & Jerry's <b>");
+
+    assertEquals(
+        String.format(FORMAT_NAV_POINT, 1, 1, "Tom &amp; Jerry's &lt;b&gt;", "chapter-001.xhtml"),
+        navigation.getNavPoints());
+    assertEquals(
+        String.format(FORMAT_REFERENCE, "text", "chapter-001.xhtml", "Tom &amp; Jerry&apos;s &lt;b&gt;"),
+        navigation.getReferences());
+    assertEquals(
+        String.format(FORMAT_TOC_ITEM, "chapter-001.xhtml", "Tom &amp; Jerry's &lt;b&gt;"),
+        navigation.getTocItems());
+  }
+
+  /**
+   * Compare with String.concat + String.format for 100/1k/10k chapters.
+   *
+   * <p>Run it by: mvn test -Pbenchmark
+   */
+  @Test
+  @Tag("benchmark")
+  void benchmark() {
+    for (int chapters : new int[] {100, 1_000, 10_000}) {
+      for (int round = 0; round < 3; round++) {
+        long start = System.nanoTime();
+        String navPointList = "";
+        String itemList = "";
+        String itemrefList = "";
+        String referenceList = "";
+        String tocItemList = "";
+        for (int i = 1; i <= chapters; i++) {
+          String name = String.format("chapter-%05d", i);
+          String fullName = name + ".xhtml";
+          String title = "第" + i + "章 章节名";
+          navPointList = navPointList.concat(String.format(FORMAT_NAV_POINT, i, i, title, fullName));
+          itemList = itemList.concat(String.format(FORMAT_ITEM, fullName, name));
+          itemrefList = itemrefList.concat(String.format(FORMAT_ITEMREF, name));
+          referenceList = referenceList.concat(String.format(FORMAT_REFERENCE, "text", fullName, title));
+          tocItemList = tocItemList.concat(String.format(FORMAT_TOC_ITEM, fullName, title));
+        }
+        long concatNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        NavigationBuilder navigation = new NavigationBuilder(chapters);
+        for (int i = 1; i <= chapters; i++) {
+          String name = String.format("chapter-%05d", i);
+          navigation.addFile(name, name + ".xhtml", "第" + i + "章 章节名");
+        }
+        String builderNavPoints = navigation.getNavPoints();
+        long builderNanos = System.nanoTime() - start;
+
+        assertEquals(navPointList, builderNavPoints);
+        assertEquals(itemList + itemrefList + referenceList + tocItemList,
+            navigation.getItems() + navigation.getItemrefs() + navigation.getReferences() + navigation.getTocItems());
+        System.out.printf(
+            "%d chapters, round %d: String.concat %d ms, NavigationBuilder %d ms%n",
+            chapters, round, concatNanos / 1_000_000, builderNanos / 1_000_000);
+      }
+    }
+  }
+}
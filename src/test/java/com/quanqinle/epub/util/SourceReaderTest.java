@@ -0,0 +1,147 @@
+package com.quanqinle.epub.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SourceReaderTest {
+
+  private static final String TEXT = "第一章 开始\r\n　　正文，一些内容。\n\n第二章 结束\r最后一行";
+  private static final List<String> LINES =
+      List.of("第一章 开始", "　　正文，一些内容。", "", "第二章 结束", "最后一行");
+
+  @TempDir Path tempDir;
+
+  @Test
+  void detectUtf8() throws IOException {
+    Path file = write(TEXT.getBytes(StandardCharsets.UTF_8));
+    try (SourceReader reader = SourceReader.open(file, null)) {
+      assertEquals(StandardCharsets.UTF_8, reader.getCharset());
+      assertEquals(LINES, readAll(reader));
+    }
+  }
+
+  @Test
+  void detectGb18030() throws IOException {
+    Charset gb18030 = Charset.forName("GB18030");
+    Path file = write(TEXT.getBytes(gb18030));
+    try (SourceReader reader = SourceReader.open(file, "")) {
+      assertEquals(gb18030, reader.getCharset());
+      assertEquals(LINES, readAll(reader));
+    }
+  }
+
+  @Test
+  void skipBom() throws IOException {
+    byte[] text = TEXT.getBytes(StandardCharsets.UTF_16LE);
+    byte[] bytes = new byte[text.length + 2];
+    bytes[0] = (byte) 0xFF;
+    bytes[1] = (byte) 0xFE;
+    System.arraycopy(text, 0, bytes, 2, text.length);
+
+    try (SourceReader reader = SourceReader.open(write(bytes), null)) {
+      assertEquals(StandardCharsets.UTF_16LE, reader.getCharset());
+      assertEquals(LINES, readAll(reader));
+    }
+  }
+
+  @Test
+  void readStream() throws IOException {
+    Charset gb18030 = Charset.forName("GB18030");
+    byte[] bytes = TEXT.getBytes(gb18030);
+    try (SourceReader reader = SourceReader.read(new ByteArrayInputStream(bytes), null)) {
+      assertEquals(gb18030, reader.getCharset());
+      assertEquals(bytes.length, reader.getSize());
+      assertEquals(LINES, readAll(reader));
+    }
+  }
+
+  @Test
+  void givenCharset() throws IOException {
+    Path file = write(TEXT.getBytes(Charset.forName("GBK")));
+    try (SourceReader reader = SourceReader.open(file, "GBK")) {
+      assertEquals(LINES, readAll(reader));
+      // read again from the beginning
+      assertEquals(LINES, readAll(reader));
+    }
+  }
+
+  @Test
+  void longLines() throws IOException {
+    String longLine = "长".repeat(50_000);
+    Path file = write((longLine + "\n" + longLine + "\n").getBytes(StandardCharsets.UTF_8));
+    try (SourceReader reader = SourceReader.open(file, null)) {
+      assertEquals(List.of(longLine, longLine), readAll(reader));
+    }
+  }
+
+  @Test
+  void emptyFile() throws IOException {
+    try (SourceReader reader = SourceReader.open(write(new byte[0]), null)) {
+      assertEquals(List.of(), readAll(reader));
+    }
+  }
+
+  @Test
+  void lineSpans() throws IOException {
+    byte[] text = TEXT.getBytes(StandardCharsets.UTF_8);
+    byte[] malformed = {'\n', (byte) 0xE4, (byte) 0xB8, 'x', '\n'};
+    byte[] bytes = new byte[3 + text.length + malformed.length];
+    bytes[0] = (byte) 0xEF;
+    bytes[1] = (byte) 0xBB;
+    bytes[2] = (byte) 0xBF;
+    System.arraycopy(text, 0, bytes, 3, text.length);
+    System.arraycopy(malformed, 0, bytes, 3 + text.length, malformed.length);
+
+    try (SourceReader reader = SourceReader.open(write(bytes), null)) {
+      List<String> lines = new ArrayList<>();
+      for (SourceLine line : reader.lines()) {
+        lines.add(line.toString());
+        if (line.hasSpan()) {
+          ByteBuffer span = reader.slice(line.getStart(), line.getEnd());
+          assertEquals(line.toString(), StandardCharsets.UTF_8.decode(span).toString());
+        } else {
+          assertEquals("\uFFFDx", line.toString());
+        }
+      }
+      List<String> expected = new ArrayList<>(LINES);
+      expected.add("\uFFFDx");
+      assertEquals(expected, lines);
+      assertEquals(readAll(reader), lines);
+    }
+  }
+
+  @Test
+  void splitAtLines() throws IOException {
+    for (Charset charset : List.of(StandardCharsets.UTF_8, Charset.forName("GB18030"), StandardCharsets.UTF_16LE)) {
+      try (SourceReader reader = SourceReader.open(write(TEXT.getBytes(charset)), charset.name())) {
+        List<Iterable<SourceLine>> ranges = reader.split(4);
+        assertEquals(charset.equals(StandardCharsets.UTF_16LE), ranges.size() == 1);
+        List<String> lines = new ArrayList<>();
+        ranges.forEach(range -> range.forEach(line -> lines.add(line.toString())));
+        assertEquals(LINES, lines);
+      }
+    }
+  }
+
+  private Path write(byte[] bytes) throws IOException {
+    return Files.write(tempDir.resolve("book.txt"), bytes);
+  }
+
+  private static List<String> readAll(SourceReader reader) {
+    List<String> lines = new ArrayList<>();
+    reader.forEach(lines::add);
+    return lines;
+  }
+}
@@ -0,0 +1,59 @@
+package com.quanqinle.epub.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TemplateTextTest {
+
+  @Test
+  void compileAndFill() {
+    TemplateText text = TemplateText.compile(
+        "<dc:title>[BOOK'S TITLE]</dc:title><![CDATA[x]]>[unknown] [] [BOOK'S TITLE]\n[not\na slot]");
+
+    assertEquals(List.of("BOOK'S TITLE", "x", "unknown", "BOOK'S TITLE"), text.getSlotNames());
+    assertEquals("<dc:title>[ISBN]</dc:title><![CDATA[x]]>[unknown] [] [ISBN]\n[not\na slot]",
+        text.fill(Map.of("BOOK'S TITLE", "[ISBN]", "ISBN", "never")));
+  }
+
+  @Test
+  void escapeByContext() {
+    TemplateText text = TemplateText.compile(
+        "<?xml version=\"1.0\"?>\n"
+            + "<!-- it's [T] -->\n"
+            + "<meta name=\"t\" content=\"[T]\"/><a title='[T]'>[T]</a>");
+
+    assertEquals("<?xml version=\"1.0\"?>\n"
+            + "<!-- it's A &amp; B's &lt;\"x\"&gt; -->\n"
+            + "<meta name=\"t\" content=\"A &amp; B&apos;s &lt;&quot;x&quot;&gt;\"/>"
+            + "<a title='A &amp; B&apos;s &lt;&quot;x&quot;&gt;'>A &amp; B's &lt;\"x\"&gt;</a>",
+        text.fill(Map.of("T", "A & B's <\"x\">")));
+  }
+
+  @Test
+  void renderMarkup() throws IOException {
+    TemplateText text = TemplateText.compile("<manifest>\n[manifest item list]</manifest>");
+    StringBuilder items = new StringBuilder();
+    for (int i = 0; i < 2000; i++) {
+      items.append("<item href='Text/chapter-").append(i).append(".xhtml' id='c").append(i).append("'/>\n");
+    }
+
+    StringWriter out = new StringWriter();
+    Map<String, Object> values = Map.of("manifest item list", TemplateText.markup(items));
+    text.render(out, values);
+
+    assertEquals("<manifest>\n" + items + "</manifest>", out.toString());
+    assertEquals(out.toString().length(), text.estimateLength(values));
+  }
+
+  @Test
+  void unsupportedValue() {
+    TemplateText text = TemplateText.compile("[N]");
+    assertThrows(IllegalArgumentException.class, () -> text.fill(Map.of("N", 1)));
+  }
+}
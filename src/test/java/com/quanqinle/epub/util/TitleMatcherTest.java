@@ -0,0 +1,111 @@
+package com.quanqinle.epub.util;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TitleMatcherTest {
+
+  private static final List<String> CHAPTER_REGEX_LIST =
+      List.of("^第.{1,10}章.{1,20}[^完]", "^第.{1,10}节.{1,20}[^完]", "^初章.{1,20}[^完]");
+
+  @Test
+  void matches() {
+    TitleMatcher matcher = new TitleMatcher(CHAPTER_REGEX_LIST);
+
+    assertTrue(matcher.matches("第一章 章节名1"));
+    assertTrue(matcher.matches("第十二节 章节名"));
+    assertTrue(matcher.matches("初章 开始了"));
+    assertFalse(matcher.matches("第二章完"));
+    assertFalse(matcher.matches("他说：第一章 不是标题"));
+    assertFalse(matcher.matches(""));
+  }
+
+  @Test
+  void sameAsStringMatches() {
+    List<String> regexList = List.of("^第.{1,10}卷.{1,20}[^完]", "(?i)^chapter \\d+.*", "[0-9]+\\..*");
+    TitleMatcher matcher = new TitleMatcher(regexList);
+
+    for (String line : List.of("第一卷 卷名", "CHAPTER 12 Dragons", "12. Dragons", "Chapter", "第一卷完")) {
+      assertEquals(regexList.stream().anyMatch(line::matches), matcher.matches(line), line);
+    }
+  }
+
+  @Test
+  void matchesAlternatives() {
+    List<String> regexList = List.of("^第.{1,10}章|^序章.*", "尾声|终[章|卷].*");
+    TitleMatcher matcher = new TitleMatcher(regexList);
+
+    assertTrue(matcher.matches("序章 开始"));
+    for (String line : List.of("序章 开始", "第一章", "尾声", "终卷 结局", "|卷", "引子")) {
+      assertEquals(regexList.stream().anyMatch(line::matches), matcher.matches(line), line);
+    }
+  }
+
+  @Test
+  void matchesBackReferences() {
+    List<String> regexList = List.of("(a)\\1", "(b)\\1", "(?<c>c)\\k<c>");
+    TitleMatcher matcher = new TitleMatcher(regexList);
+
+    assertTrue(matcher.matches("bb"));
+    for (String line : List.of("aa", "bb", "cc", "ab", "b")) {
+      assertEquals(regexList.stream().anyMatch(line::matches), matcher.matches(line), line);
+    }
+  }
+
+  @Test
+  void emptyRegexList() {
+    assertFalse(new TitleMatcher(List.of()).matches("第一章 章节名1"));
+    assertFalse(new TitleMatcher(null).matches("第一章 章节名1"));
+  }
+
+  /**
+   * Compare the line-classification throughput with {@link String#matches(String)}.
+   *
+   * <p>Run it by: mvn test -Pbenchmark
+   */
+  @Test
+  @Tag("benchmark")
+  void benchmark() {
+    List<String> lines = new ArrayList<>();
+    for (int i = 0; i < 200_000; i++) {
+      lines.add(i % 100 == 0 ? "第" + i + "章 章节名" : "　　这是第" + i + "行，一些正文内容，一些正文内容。");
+    }
+    TitleMatcher matcher = new TitleMatcher(CHAPTER_REGEX_LIST);
+
+    for (int round = 0; round < 3; round++) {
+      long start = System.nanoTime();
+      int expected = 0;
+      for (String line : lines) {
+        for (String regex : CHAPTER_REGEX_LIST) {
+          if (line.matches(regex)) {
+            expected++;
+            break;
+          }
+        }
+      }
+      long stringMatchesNanos = System.nanoTime() - start;
+
+      start = System.nanoTime();
+      int actual = 0;
+      for (String line : lines) {
+        if (matcher.matches(line)) {
+          actual++;
+        }
+      }
+      long titleMatcherNanos = System.nanoTime() - start;
+
+      assertEquals(expected, actual);
+      System.out.printf(
+          "round %d: String.matches %d ms, TitleMatcher %d ms, %.1fx%n",
+          round,
+          stringMatchesNanos / 1_000_000,
+          titleMatcherNanos / 1_000_000,
+          (double) stringMatchesNanos / titleMatcherNanos);
+    }
+  }
+}
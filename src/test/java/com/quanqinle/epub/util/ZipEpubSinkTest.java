@@ -0,0 +1,101 @@
+package com.quanqinle.epub.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ZipEpubSinkTest {
+
+  @TempDir
+  Path tempDir;
+
+  @Test
+  void write() throws IOException {
+    Path epub = tempDir.resolve("book.epub");
+    try (ZipEpubSink sink = new ZipEpubSink(epub)) {
+      sink.write("OEBPS/Text/chapter-001.xhtml", "<p>第一章</p>".repeat(100));
+      sink.write("OEBPS/Images/cover.jpg", new byte[] {1, 2, 3});
+      sink.finish();
+    }
+
+    try (ZipFile zip = new ZipFile(epub.toFile())) {
+      List<? extends ZipEntry> entries = Collections.list(zip.entries());
+      assertEquals("mimetype", entries.get(0).getName());
+      assertEquals(ZipEntry.STORED, entries.get(0).getMethod());
+      assertEquals("application/epub+zip",
+          new String(zip.getInputStream(entries.get(0)).readAllBytes(), StandardCharsets.US_ASCII));
+      assertEquals("<p>第一章</p>".repeat(100),
+          new String(zip.getInputStream(entries.get(1)).readAllBytes(), StandardCharsets.UTF_8));
+      assertArrayEquals(new byte[] {1, 2, 3}, zip.getInputStream(entries.get(2)).readAllBytes());
+    }
+  }
+
+  @Test
+  void finishOnce() throws IOException {
+    Path epub = tempDir.resolve("book.epub");
+    long size;
+    try (ZipEpubSink sink = new ZipEpubSink(epub)) {
+      sink.write("OEBPS/Text/chapter-001.xhtml", "<p>第一章</p>");
+      sink.finish();
+      size = sink.getSize();
+      sink.finish();
+    }
+
+    assertEquals(size, epub.toFile().length());
+    try (ZipFile zip = new ZipFile(epub.toFile())) {
+      assertEquals(2, zip.size());
+    }
+  }
+
+  @Test
+  void abortIfNotFinished() throws IOException {
+    Path epub = tempDir.resolve("book.epub");
+    assertThrows(IllegalStateException.class, () -> {
+      try (ZipEpubSink sink = new ZipEpubSink(epub)) {
+        sink.write("OEBPS/Text/chapter-001.xhtml", "<p>第一章</p>");
+        throw new IllegalStateException("a stage fails");
+      }
+    });
+
+    assertThrows(ZipException.class, () -> new ZipFile(epub.toFile()).close());
+  }
+
+  @Test
+  void reuseCachedEntries() throws IOException {
+    Path cacheFolder = tempDir.resolve("cache");
+
+    EntryCache cache = new EntryCache(cacheFolder);
+    try (ZipEpubSink sink = new ZipEpubSink(tempDir.resolve("v1.epub"), cache)) {
+      sink.write("OEBPS/Text/chapter-001.xhtml", "<p>第一章</p>");
+      sink.write("OEBPS/Text/chapter-002.xhtml", "<p>第二章</p>");
+      sink.finish();
+    }
+    assertEquals(0, cache.getHits());
+    assertEquals(2, cache.getMisses());
+
+    cache = new EntryCache(cacheFolder);
+    try (ZipEpubSink sink = new ZipEpubSink(tempDir.resolve("v2.epub"), cache)) {
+      sink.write("OEBPS/Text/chapter-001.xhtml", "<p>第一章</p>");
+      sink.write("OEBPS/Text/chapter-002.xhtml", "<p>第二章 改</p>");
+      sink.finish();
+    }
+    cache.prune();
+    assertEquals(1, cache.getHits());
+    assertEquals(1, cache.getMisses());
+
+    try (ZipFile zip = new ZipFile(tempDir.resolve("v2.epub").toFile())) {
+      assertEquals("<p>第二章 改</p>", new String(
+          zip.getInputStream(zip.getEntry("OEBPS/Text/chapter-002.xhtml")).readAllBytes(), StandardCharsets.UTF_8));
+    }
+  }
+}